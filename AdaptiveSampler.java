@@ -0,0 +1,195 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Samples an expression adaptively: the visible x-range is cut into a coarse grid of segments,
+ * and a segment is split in half whenever the expression's value at its midpoint is further
+ * than a tolerance, measured in pixels, from the straight line between its endpoints.
+ * Straight parts of a curve get a handful of points and steep or curved parts get many.
+ * A segment whose points are all above or below the viewport is not refined if the interval
+ * bounds of the expression over it prove that the whole segment is off screen; otherwise it is,
+ * since a narrow spike between the points could reach into view.
+ * Splitting stops at a maximum depth, and each coarse segment has its own share of a point budget,
+ * which it splits evenly between its halves, so that a steep left half cannot starve the right one.
+ * The coarse segments are refined in parallel on a ForkJoinPool.
+ */
+public class AdaptiveSampler {
+    static final int INITIAL_SEGMENTS = 64;
+    static final double DEFAULT_TOLERANCE = 0.25;
+    static final int DEFAULT_MAX_DEPTH = 14;
+    static final int DEFAULT_MAX_POINTS = 8192;
+
+    private final double tolerance;
+    private final int maxDepth;
+    private final int maxPoints;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new AdaptiveSampler with the default tolerance, depth and point budget.
+     */
+    public AdaptiveSampler() {
+        this(DEFAULT_TOLERANCE, DEFAULT_MAX_DEPTH, DEFAULT_MAX_POINTS, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new AdaptiveSampler.
+     * @param tolerance how far, in pixels, a midpoint may be from the chord before a segment is split
+     * @param maxDepth how many times a coarse segment may be halved
+     * @param maxPoints roughly how many points a curve may have in total
+     * @param pool the pool to refine segments on
+     */
+    public AdaptiveSampler(double tolerance, int maxDepth, int maxPoints, ForkJoinPool pool) {
+        this.tolerance = tolerance;
+        this.maxDepth = maxDepth;
+        this.maxPoints = maxPoints;
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a sampler whose point budget and depth follow the width of a viewport, so that
+     * curves get at most about samplesPerPixel points per pixel and are never split finer than that.
+     * @param viewport the viewport that will be sampled
+     * @param samplesPerPixel the most points to place per pixel of width
+     * @param pool the pool to refine segments on
+     * @return the sampler
+     */
+    public static AdaptiveSampler forViewport(Viewport viewport, double samplesPerPixel, ForkJoinPool pool) {
+        final int maxPoints = (int) Math.ceil(viewport.getWidth() * samplesPerPixel);
+        // each leaf segment contributes 2 points, so a coarse segment at depth d holds 2^(d+1) points
+        final double pointsPerSegment = (double) maxPoints / INITIAL_SEGMENTS;
+        final int maxDepth = Math.max(1, (int) Math.ceil(Math.log(pointsPerSegment / 2) / Math.log(2)));
+        return new AdaptiveSampler(DEFAULT_TOLERANCE, maxDepth, maxPoints, pool);
+    }
+
+    /**
+     * Samples the expression across the viewport's x-range.
+     * @param expression the expression to sample
+     * @param derivative the derivative of the expression, used as a slope hint; may be null
+     * @param viewport the visible range and its size in pixels
+     * @return the sampled curve
+     */
+    public SampledCurve sample(Expression expression, Expression derivative, Viewport viewport) {
+        final double step = (viewport.getMaxX() - viewport.getMinX()) / INITIAL_SEGMENTS;
+        final SegmentTask[] tasks = new SegmentTask[INITIAL_SEGMENTS];
+        for (int i = 0; i < INITIAL_SEGMENTS; i++) {
+            final double a = viewport.getMinX() + i * step;
+            final double b = i == INITIAL_SEGMENTS - 1 ? viewport.getMaxX() : a + step;
+            tasks[i] = new SegmentTask(expression, derivative, a, b, viewport);
+        }
+        final PointBuffer[] buffers = pool.invoke(new RecursiveTask<PointBuffer[]>() {
+            @Override
+            protected PointBuffer[] compute() {
+                invokeAll(tasks);
+                final PointBuffer[] buffers = new PointBuffer[tasks.length];
+                for (int i = 0; i < tasks.length; i++) {
+                    buffers[i] = tasks[i].join();
+                }
+                return buffers;
+            }
+        });
+        int size = 1;
+        for (PointBuffer buffer : buffers) {
+            size += buffer.size;
+        }
+        final double[] xs = new double[size];
+        final double[] ys = new double[size];
+        int offset = 0;
+        for (PointBuffer buffer : buffers) {
+            System.arraycopy(buffer.xs, 0, xs, offset, buffer.size);
+            System.arraycopy(buffer.ys, 0, ys, offset, buffer.size);
+            offset += buffer.size;
+        }
+        xs[offset] = viewport.getMaxX();
+        ys[offset] = expression.evaluate(viewport.getMaxX());
+        return new SampledCurve(xs, ys);
+    }
+
+    /**
+     * Refines one coarse segment. The points of [a, b) are emitted in order; b itself belongs to the next segment.
+     */
+    private class SegmentTask extends RecursiveTask<PointBuffer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Expression expression, derivative;
+        private final double a, b;
+        private final double pixelsPerY, minY, maxY;
+        private final int budget = Math.max(2, maxPoints / INITIAL_SEGMENTS);
+        private final PointBuffer buffer = new PointBuffer();
+
+        SegmentTask(Expression expression, Expression derivative, double a, double b, Viewport viewport) {
+            this.expression = expression;
+            this.derivative = derivative;
+            this.a = a;
+            this.b = b;
+            this.pixelsPerY = viewport.pixelsPerY();
+            this.minY = viewport.getMinY();
+            this.maxY = viewport.getMaxY();
+        }
+
+        @Override
+        protected PointBuffer compute() {
+            refine(a, expression.evaluate(a), slope(a), b, expression.evaluate(b), slope(b), 0, budget);
+            return buffer;
+        }
+
+        private double slope(double x) {
+            return derivative == null ? 0 : derivative.evaluate(x);
+        }
+
+        /**
+         * @param budget how many points [a, b) may have, at least 2; the left half gets half of it,
+         *               and the right half whatever the left half leaves
+         * @return how many points were emitted
+         */
+        private int refine(double a, double fa, double da, double b, double fb, double db, int depth, int budget) {
+            final double middle = 0.5 * (a + b);
+            final double fm = expression.evaluate(middle);
+            if (depth < maxDepth && budget >= 4 && shouldSplit(a, fa, da, fm, b, fb, db)) {
+                final double dm = slope(middle);
+                final int left = refine(a, fa, da, middle, fm, dm, depth + 1, budget / 2);
+                return left + refine(middle, fm, dm, b, fb, db, depth + 1, budget - left);
+            }
+            buffer.add(a, fa);
+            buffer.add(middle, fm);
+            return 2;
+        }
+
+        private boolean shouldSplit(double a, double fa, double da, double fm, double b, double fb, double db) {
+            final boolean finiteA = Double.isFinite(fa), finiteM = Double.isFinite(fm), finiteB = Double.isFinite(fb);
+            if (!finiteA || !finiteM || !finiteB) {
+                return finiteA || finiteM || finiteB; // narrow down where the curve leaves its domain
+            }
+            if ((fa > maxY && fm > maxY && fb > maxY) || (fa < minY && fm < minY && fb < minY)) {
+                final Interval bounds = expression.evaluateInterval(a, b);
+                return !(bounds.isEmpty() || bounds.getLo() > maxY || bounds.getHi() < minY); // unless provably off screen
+            }
+            if (Math.abs(fm - 0.5 * (fa + fb)) * pixelsPerY > tolerance) {
+                return true;
+            }
+            // Tangents that drift apart mean the curve bends even if the midpoint happens to lie on the chord.
+            // For a parabola the midpoint is (b-a)*(db-da)/8 from the chord, so both tests agree there.
+            return derivative != null && Double.isFinite(da) && Double.isFinite(db)
+                    && Math.abs(da - db) * (b - a) / 8 * pixelsPerY > tolerance;
+        }
+    }
+
+    /**
+     * A growable pair of x and y arrays.
+     */
+    private static class PointBuffer {
+        private double[] xs = new double[16];
+        private double[] ys = new double[16];
+        private int size;
+
+        void add(double x, double y) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+    }
+}
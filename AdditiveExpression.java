@@ -1,7 +1,10 @@
+import java.io.IOException;
+
 public class AdditiveExpression extends OperationHandler implements Expression {
     private final Expression leftChild;
     private final Expression rightChild;
     private final char operator;
+    private final int hash;
 
     /**
      * Creates a new AdditiveExpression with the given left and right children and operator.
@@ -10,9 +13,46 @@ public class AdditiveExpression extends OperationHandler implements Expression {
      * @param operator the operator
      */
     public AdditiveExpression (Expression left, Expression right, char operator) {
+        super(left, right);
         this.leftChild = left;
         this.rightChild = right;
         this.operator = operator;
+        this.hash = (operator * 31 + left.hashCode()) * 31 + right.hashCode();
+    }
+
+    /**
+     * Creates a new AdditiveExpression specialized for its operator, so that evaluating it
+     * does not switch on the operator character.
+     * @param left the part of the expression to the left of the operator
+     * @param right the part of the expression to the right of the operator
+     * @param operator the operator, + or -
+     * @return the new expression
+     */
+    static AdditiveExpression create(Expression left, Expression right, char operator) {
+        final AdditiveExpression node = operator == '+' ? new Sum(left, right) : new Difference(left, right);
+        // the generic node checks its height when evaluated, for trees too deep to recurse over
+        return node.isDeep() ? new AdditiveExpression(left, right, operator) : node;
+    }
+
+    /**
+     * @return the part of the expression to the left of the operator
+     */
+    Expression getLeftChild() {
+        return leftChild;
+    }
+
+    /**
+     * @return the part of the expression to the right of the operator
+     */
+    Expression getRightChild() {
+        return rightChild;
+    }
+
+    /**
+     * @return the operator
+     */
+    char getOperator() {
+        return operator;
     }
     /**
      * Creates and returns a deep copy of the expression.
@@ -23,7 +63,10 @@ public class AdditiveExpression extends OperationHandler implements Expression {
      */
     @Override
     public Expression deepCopy() {
-        return new AdditiveExpression(leftChild.deepCopy(), rightChild.deepCopy(), operator);
+        if (isDeep()) {
+            return ExpressionTraversal.deepCopy(this);
+        }
+        return AdditiveExpression.create(leftChild.deepCopy(), rightChild.deepCopy(), operator);
     }
 
     /**
@@ -37,7 +80,23 @@ public class AdditiveExpression extends OperationHandler implements Expression {
      */
     @Override
     public String convertToString(int indentLevel) {
-        return opToString(indentLevel, operator, leftChild, rightChild);
+        return convertToString(this, indentLevel);
+    }
+
+    /**
+     * Appends the String representation of this expression to out, as convertToString would produce it.
+     *
+     * @param out where to append the String representation
+     * @param indentLevel how many tab characters should appear at the beginning of each line.
+     * @throws IOException if out throws it
+     */
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        if (isDeep()) {
+            ExpressionTraversal.appendTo(this, out, indentLevel);
+            return;
+        }
+        appendOperation(out, indentLevel, operator, leftChild, rightChild);
     }
 
     /**
@@ -48,9 +107,106 @@ public class AdditiveExpression extends OperationHandler implements Expression {
      */
     @Override
     public double evaluate(double x) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluate(this, x);
+        }
         return operation(leftChild, rightChild, operator, x);
     }
 
+    /**
+     * Computes the value of this expression with the variables read from env.
+     *
+     * @param env the value of every variable, indexed by slot
+     * @return the value of this expression.
+     */
+    @Override
+    public double evaluate(double[] env) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluate(this, env);
+        }
+        return operation(leftChild, rightChild, operator, env);
+    }
+
+    /**
+     * Computes the value of this expression at each of the given values of x.
+     *
+     * @param xs the values of the independent variable x
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double[] xs, double[] out) {
+        if (isDeep()) {
+            ExpressionTraversal.evaluate(this, xs, out);
+            return;
+        }
+        operation(leftChild, rightChild, operator, xs, out);
+    }
+
+    /**
+     * Computes the value of this expression at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double from, double step, int n, double[] out) {
+        if (isDeep()) {
+            ExpressionTraversal.evaluate(this, from, step, n, out);
+            return;
+        }
+        operation(leftChild, rightChild, operator, from, step, n, out);
+    }
+
+    /**
+     * Given the value of the independent variable x, compute the value of this expression
+     * and of its derivative together.
+     *
+     * @param x the value of the independent variable x
+     * @return the value of this expression and of its derivative
+     */
+    @Override
+    public DualNumber evaluateWithDerivative(double x) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluateWithDerivative(this, x);
+        }
+        return dualOperation(leftChild, rightChild, operator, x);
+    }
+
+    /**
+     * Computes the value of this expression and of its derivative at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param values where to store the values of the expression
+     * @param derivatives where to store the values of the derivative
+     */
+    @Override
+    public void evaluateWithDerivative(double from, double step, int n, double[] values, double[] derivatives) {
+        if (isDeep()) {
+            ExpressionTraversal.evaluateWithDerivative(this, from, step, n, values, derivatives);
+            return;
+        }
+        dualOperation(leftChild, rightChild, operator, from, step, n, values, derivatives);
+    }
+
+    /**
+     * Computes bounds of the values of this expression for every x in [lo, hi].
+     *
+     * @param lo the smallest value of the independent variable x
+     * @param hi the largest value of the independent variable x
+     * @return bounds of the values of this expression
+     */
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluateInterval(this, lo, hi);
+        }
+        return intervalOperation(leftChild, rightChild, operator, lo, hi);
+    }
+
     /**
      * Produce a new, fully independent (i.e., there should be no shared subtrees) Expression
      * representing the derivative of this expression.
@@ -59,6 +215,104 @@ public class AdditiveExpression extends OperationHandler implements Expression {
      */
     @Override
     public Expression differentiate() {
-        return new AdditiveExpression(leftChild.differentiate(), rightChild.differentiate(), operator);
+        if (isDeep()) {
+            return ExpressionTraversal.differentiate(this);
+        }
+        return differentiate(ExpressionTraversal.operandsOf(this, 0));
+    }
+
+    /**
+     * The rule of differentiate(), reading the children and their derivatives from operands.
+     * @param operands the children of this node and their derivatives
+     * @return the derivative of this expression
+     */
+    Expression differentiate(ExpressionTraversal.Operands operands) {
+        return AdditiveExpression.create(operands.derivative(0), operands.derivative(1), operator);
+    }
+
+    /**
+     * Produce a new, fully independent Expression representing the partial derivative of this
+     * expression with respect to the variable in the given slot, by the same rules as differentiate().
+     *
+     * @param slot the slot of the variable to differentiate by
+     * @return the partial derivative of this expression
+     */
+    @Override
+    public Expression differentiate(int slot) {
+        if (isDeep()) {
+            return ExpressionTraversal.differentiate(this, slot);
+        }
+        return differentiate(ExpressionTraversal.operandsOf(this, slot));
+    }
+
+    /**
+     * Two expressions are equal if they have the same structure: the same operator and equal children.
+     *
+     * @param o the object to compare with
+     * @return whether o is structurally equal to this expression
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AdditiveExpression) || hashCode() != o.hashCode()) {
+            return false;
+        }
+        if (isDeep()) {
+            return ExpressionTraversal.equals(this, o);
+        }
+        final AdditiveExpression other = (AdditiveExpression) o;
+        return operator == other.operator && leftChild.equals(other.leftChild)
+                && rightChild.equals(other.rightChild);
+    }
+
+    /**
+     * Computed when the node is built, from the hash codes its children hold, so it costs the same for any tree.
+     *
+     * @return a hash code consistent with equals
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+
+    /**
+     * left + right
+     */
+    private static final class Sum extends AdditiveExpression {
+        Sum(Expression left, Expression right) {
+            super(left, right, '+');
+        }
+
+        @Override
+        public double evaluate(double x) {
+            return super.leftChild.evaluate(x) + super.rightChild.evaluate(x);
+        }
+
+        @Override
+        public double evaluate(double[] env) {
+            return super.leftChild.evaluate(env) + super.rightChild.evaluate(env);
+        }
+    }
+
+    /**
+     * left - right
+     */
+    private static final class Difference extends AdditiveExpression {
+        Difference(Expression left, Expression right) {
+            super(left, right, '-');
+        }
+
+        @Override
+        public double evaluate(double x) {
+            return super.leftChild.evaluate(x) - super.rightChild.evaluate(x);
+        }
+
+        @Override
+        public double evaluate(double[] env) {
+            return super.leftChild.evaluate(env) - super.rightChild.evaluate(env);
+        }
     }
 }
@@ -0,0 +1,325 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Evaluates a file of expressions, one per line, over a grid of x without the GUI, and writes the results
+ * either as a binary columnar file or as CSV. The grid has points x = from + i*step for i in [0, points),
+ * where step = (to - from)/(points - 1). Each expression is compiled and evaluated with the batch evaluate API;
+ * its derivative, if asked for, comes from dual-number evaluation, so no derivative tree is built.
+ * The file is read and written CHUNK_BYTES of output at a time, and the expressions of a chunk are parsed
+ * and evaluated in parallel on a ForkJoinPool, so the heap holds one chunk at most whatever the size of the input.
+ *
+ * The binary file is little-endian:
+ * a header of HEADER_BYTES, holding the int MAGIC, the int VERSION, the long number of expressions,
+ * the int number of points, the int flags (DERIVATIVE_FLAG if derivatives are included) and the doubles from and to;
+ * then one status byte per expression, VALID or INVALID for a line that does not parse, padded to a multiple of 8;
+ * then one column per expression, in the order of the lines, of its points values and, with derivatives,
+ * its points derivatives. The columns of a line that does not parse hold NaN.
+ * The output is written through MappedByteBuffers, one chunk of columns at a time.
+ *
+ * The CSV file has a header row "index,series," followed by the x of the grid, then for each expression
+ * a row "index,f," followed by its values and, with derivatives, a row "index,df/dx," followed by its derivatives.
+ * A line that does not parse has the single row "index,invalid".
+ */
+public class BatchEvaluator {
+    static final int MAGIC = 0x45585052; // "EXPR"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 40;
+    static final int DERIVATIVE_FLAG = 1;
+    static final byte VALID = 0;
+    static final byte INVALID = 1;
+    static final long CHUNK_BYTES = 64L << 20;
+    static final int CSV_BYTES_PER_VALUE = 24; // roughly, for sizing CSV chunks
+    static final int MIN_EXPRESSIONS_PER_TASK = 4;
+
+    private final double from;
+    private final double to;
+    private final int points;
+    private final boolean derivative;
+    private final ForkJoinPool pool;
+    private final ExpressionParser parser = new SimpleExpressionParser();
+
+    /**
+     * Creates a new BatchEvaluator that uses the common pool.
+     * @param from the first x of the grid
+     * @param to the last x of the grid
+     * @param points how many points the grid has, at least 2
+     * @param derivative whether to write the derivative of each expression as well
+     */
+    public BatchEvaluator(double from, double to, int points, boolean derivative) {
+        this(from, to, points, derivative, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new BatchEvaluator.
+     * @param from the first x of the grid
+     * @param to the last x of the grid
+     * @param points how many points the grid has, at least 2
+     * @param derivative whether to write the derivative of each expression as well
+     * @param pool the pool to parse and evaluate expressions on
+     */
+    public BatchEvaluator(double from, double to, int points, boolean derivative, ForkJoinPool pool) {
+        if (points < 2) {
+            throw new IllegalArgumentException("A grid needs at least 2 points");
+        }
+        if ((long) points * 8 * (derivative ? 2 : 1) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many points for one column: " + points);
+        }
+        this.from = from;
+        this.to = to;
+        this.points = points;
+        this.derivative = derivative;
+        this.pool = pool;
+    }
+
+    /**
+     * Evaluates every line of input and writes the binary columnar file described above to output.
+     * @param input the file of expressions, one per line, in UTF-8
+     * @param output the file to write, replaced if it exists
+     * @return how many lines could not be parsed
+     * @throws IOException if input cannot be read or output cannot be written
+     */
+    public long writeBinary(Path input, Path output) throws IOException {
+        final long count = countLines(input);
+        final long columnBytes = (long) points * 8 * (derivative ? 2 : 1);
+        final long dataStart = HEADER_BYTES + (count + 7) / 8 * 8;
+        final int perChunk = (int) Math.max(1, Math.min(CHUNK_BYTES / columnBytes, Integer.MAX_VALUE));
+        final AtomicLong invalid = new AtomicLong();
+        Files.deleteIfExists(output);
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataStart);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(count).putInt(points).putInt(derivative ? DERIVATIVE_FLAG : 0)
+                    .putDouble(from).putDouble(to);
+            for (long first = 0; first < count; first += perChunk) {
+                final String[] lines = readLines(reader, (int) Math.min(perChunk, count - first));
+                final MappedByteBuffer columns = channel.map(FileChannel.MapMode.READ_WRITE,
+                        dataStart + first * columnBytes, lines.length * columnBytes);
+                final long chunkStart = first;
+                pool.invoke(new ChunkTask(lines, 0, lines.length, columns, invalid, (line, values, derivatives, out) -> {
+                    header.put((int) (HEADER_BYTES + chunkStart + line), values == null ? INVALID : VALID);
+                    out.position((int) (line * columnBytes / 8));
+                    out.put(values == null ? nans() : values);
+                    if (derivative) {
+                        out.put(values == null ? nans() : derivatives);
+                    }
+                }));
+            }
+        }
+        return invalid.get();
+    }
+
+    /**
+     * Evaluates every line of input and writes the CSV file described above to output.
+     * @param input the file of expressions, one per line, in UTF-8
+     * @param output the file to write, replaced if it exists
+     * @return how many lines could not be parsed
+     * @throws IOException if input cannot be read or output cannot be written
+     */
+    public long writeCsv(Path input, Path output) throws IOException {
+        final long rowBytes = (long) points * CSV_BYTES_PER_VALUE * (derivative ? 2 : 1);
+        final int perChunk = (int) Math.max(1, Math.min(CHUNK_BYTES / rowBytes, Integer.MAX_VALUE));
+        final double step = (to - from) / (points - 1);
+        final AtomicLong invalid = new AtomicLong();
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.write("index,series");
+            for (int i = 0; i < points; i++) {
+                writer.write(',');
+                writer.write(Double.toString(from + i * step));
+            }
+            writer.newLine();
+            for (long first = 0; ; first += perChunk) {
+                final String[] lines = readLines(reader, perChunk);
+                if (lines.length == 0) {
+                    break;
+                }
+                final String[] rows = new String[lines.length];
+                final long chunkStart = first;
+                pool.invoke(new ChunkTask(lines, 0, lines.length, null, invalid, (line, values, derivatives, out) -> {
+                    final StringBuilder row = new StringBuilder();
+                    if (values == null) {
+                        row.append(chunkStart + line).append(",invalid\n");
+                    } else {
+                        appendRow(row.append(chunkStart + line).append(",f"), values);
+                        if (derivative) {
+                            appendRow(row.append(chunkStart + line).append(",df/dx"), derivatives);
+                        }
+                    }
+                    rows[line] = row.toString();
+                }));
+                for (String row : rows) {
+                    writer.write(row);
+                }
+            }
+        }
+        return invalid.get();
+    }
+
+    private static void appendRow(StringBuilder row, double[] values) {
+        for (double value : values) {
+            row.append(',').append(value);
+        }
+        row.append('\n');
+    }
+
+    private double[] nans() {
+        final double[] nans = new double[points];
+        Arrays.fill(nans, Double.NaN);
+        return nans;
+    }
+
+    private static long countLines(Path input) throws IOException {
+        try (Stream<String> lines = Files.lines(input, StandardCharsets.UTF_8)) {
+            return lines.count();
+        }
+    }
+
+    /**
+     * @return the next up to n lines of reader, fewer only at its end
+     */
+    private static String[] readLines(BufferedReader reader, int n) throws IOException {
+        final String[] lines = new String[n];
+        for (int i = 0; i < n; i++) {
+            final String line = reader.readLine();
+            if (line == null) {
+                return Arrays.copyOf(lines, i);
+            }
+            lines[i] = line;
+        }
+        return lines;
+    }
+
+    /**
+     * Takes the results of one line of a chunk.
+     */
+    private interface LineWriter {
+        /**
+         * @param line the index of the line within the chunk
+         * @param values its values, or null if it does not parse
+         * @param derivatives its derivatives, if asked for
+         * @param out the calling task's own view of the mapped columns, or null if there are none
+         */
+        void write(int line, double[] values, double[] derivatives, DoubleBuffer out);
+    }
+
+    /**
+     * Parses and evaluates the lines [start, end) of a chunk, splitting the range in half until it is
+     * no more than MIN_EXPRESSIONS_PER_TASK lines, and hands each result to the writer.
+     * Every task has its own arrays for the values and its own view of the mapped columns.
+     */
+    private class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] lines;
+        private final int start, end;
+        private final MappedByteBuffer columns; // null when writing CSV
+        private final AtomicLong invalid; // lines that do not parse, over the whole file
+        private final LineWriter writer;
+
+        ChunkTask(String[] lines, int start, int end, MappedByteBuffer columns, AtomicLong invalid, LineWriter writer) {
+            this.lines = lines;
+            this.start = start;
+            this.end = end;
+            this.columns = columns;
+            this.invalid = invalid;
+            this.writer = writer;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > MIN_EXPRESSIONS_PER_TASK) {
+                final int middle = (start + end) >>> 1;
+                invokeAll(new ChunkTask(lines, start, middle, columns, invalid, writer),
+                        new ChunkTask(lines, middle, end, columns, invalid, writer));
+                return;
+            }
+            final DoubleBuffer out = columns == null ? null : columns.duplicate().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            final double step = (to - from) / (points - 1);
+            final double[] values = new double[points];
+            final double[] derivatives = derivative ? new double[points] : null;
+            for (int line = start; line < end; line++) {
+                final Expression expression;
+                try {
+                    expression = ExpressionCompiler.compile(ExpressionSimplifier.simplify(parser.parse(lines[line])));
+                } catch (ExpressionParseException e) {
+                    invalid.incrementAndGet();
+                    writer.write(line, null, null, out);
+                    continue;
+                }
+                if (derivative) {
+                    expression.evaluateWithDerivative(from, step, points, values, derivatives);
+                } else {
+                    expression.evaluate(from, step, points, values);
+                }
+                writer.write(line, values, derivatives, out);
+            }
+        }
+    }
+
+    /**
+     * Runs a batch from the command line:
+     * BatchEvaluator [--from X] [--to X] [--points N] [--derivative] [--csv] input output
+     * The grid defaults to 10000 points over [-10, 10].
+     */
+    public static void main(String[] args) throws IOException {
+        double from = -10, to = 10;
+        int points = 10000;
+        boolean derivative = false, csv = false;
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("--"); i++) {
+                switch (args[i]) {
+                    case "--from":
+                        from = Double.parseDouble(args[++i]);
+                        break;
+                    case "--to":
+                        to = Double.parseDouble(args[++i]);
+                        break;
+                    case "--points":
+                        points = Integer.parseInt(args[++i]);
+                        break;
+                    case "--derivative":
+                        derivative = true;
+                        break;
+                    case "--csv":
+                        csv = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (args.length - i != 2) {
+                throw new IllegalArgumentException("Expected an input and an output file");
+            }
+        } catch (RuntimeException e) { // a bad option, a bad number or a missing value
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BatchEvaluator [--from X] [--to X] [--points N] [--derivative] [--csv] input output");
+            System.exit(2);
+            return;
+        }
+        final BatchEvaluator evaluator = new BatchEvaluator(from, to, points, derivative);
+        final long start = System.nanoTime();
+        final Path input = Paths.get(args[i]), output = Paths.get(args[i + 1]);
+        final long invalid = csv ? evaluator.writeCsv(input, output) : evaluator.writeBinary(input, output);
+        System.out.println("Wrote " + output + " in " + (System.nanoTime() - start) / 1000000 + " ms; "
+                + invalid + " line(s) could not be parsed");
+    }
+}
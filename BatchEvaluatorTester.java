@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the batch evaluator: that the binary and CSV files hold the value of every expression at every
+ * point of the grid, in the layout documented, and that lines that do not parse are marked.
+ */
+public class BatchEvaluatorTester {
+	private static final String[] EXPRESSIONS = { "10*x^3 + 2*(15+x) - 4*x^2 + 7", "log(x)/x", "x +* 2", "(x-1)^x", "" };
+
+	private ExpressionParser _parser;
+
+	@TempDir
+	Path _directory;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser();
+	}
+
+	/**
+	 * Verifies the header, the status bytes and every column of a binary file with derivatives,
+	 * over enough lines to take several tasks.
+	 */
+	@Test
+	public void testBinary () throws IOException, ExpressionParseException {
+		final int lines = 103, points = 1001;
+		final StringBuilder input = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			input.append(EXPRESSIONS[i % EXPRESSIONS.length]).append('\n');
+		}
+		Files.writeString(_directory.resolve("in.txt"), input);
+		final long invalid = new BatchEvaluator(-2, 3, points, true).writeBinary(_directory.resolve("in.txt"), _directory.resolve("out.bin"));
+		assertEquals(21 + 20, invalid); // lines 2, 7, ..., 102 and 4, 9, ..., 99
+
+		final ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(_directory.resolve("out.bin"))).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(BatchEvaluator.MAGIC, file.getInt());
+		assertEquals(BatchEvaluator.VERSION, file.getInt());
+		assertEquals(lines, file.getLong());
+		assertEquals(points, file.getInt());
+		assertEquals(BatchEvaluator.DERIVATIVE_FLAG, file.getInt());
+		assertEquals(-2, file.getDouble());
+		assertEquals(3, file.getDouble());
+		final int dataStart = BatchEvaluator.HEADER_BYTES + (lines + 7) / 8 * 8;
+		assertEquals(dataStart + (long) lines * points * 16, file.capacity());
+
+		final double step = 5.0 / (points - 1);
+		for (int line = 0; line < lines; line++) {
+			final String string = EXPRESSIONS[line % EXPRESSIONS.length];
+			final boolean valid = line % EXPRESSIONS.length < 2 || line % EXPRESSIONS.length == 3;
+			assertEquals(valid ? BatchEvaluator.VALID : BatchEvaluator.INVALID, file.get(BatchEvaluator.HEADER_BYTES + line));
+			final int column = dataStart + line * points * 16;
+			final Expression expression = valid ? _parser.parse(string) : null;
+			for (int i = 0; i < points; i++) {
+				final double x = -2 + i * step;
+				final double value = file.getDouble(column + i * 8), slope = file.getDouble(column + (points + i) * 8);
+				if (valid) {
+					final DualNumber expected = expression.evaluateWithDerivative(x);
+					assertClose(expected.getValue(), value, string + " at " + x);
+					assertClose(expected.getDerivative(), slope, string + "' at " + x);
+				} else {
+					assertTrue(Double.isNaN(value) && Double.isNaN(slope));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Verifies the rows of a CSV file without derivatives.
+	 */
+	@Test
+	public void testCsv () throws IOException, ExpressionParseException {
+		Files.write(_directory.resolve("in.txt"), Arrays.asList(EXPRESSIONS));
+		final long invalid = new BatchEvaluator(1, 2, 5, false).writeCsv(_directory.resolve("in.txt"), _directory.resolve("out.csv"));
+		assertEquals(2, invalid);
+		final List<String> rows = Files.readAllLines(_directory.resolve("out.csv"), StandardCharsets.UTF_8);
+		assertEquals(List.of("index,series,1.0,1.25,1.5,1.75,2.0", "2,invalid", "4,invalid"),
+				List.of(rows.get(0), rows.get(3), rows.get(5)));
+		assertEquals(6, rows.size());
+		final String[] cells = rows.get(2).split(",");
+		assertEquals("1", cells[0]);
+		assertEquals("f", cells[1]);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(_parser.parse(EXPRESSIONS[1]).evaluate(1 + i * 0.25), Double.parseDouble(cells[i + 2]), 1e-12);
+		}
+	}
+
+	private static void assertClose (double expected, double actual, String message) {
+		assertEquals(expected, actual, Double.isFinite(expected) ? 1e-9 * Math.max(1, Math.abs(expected)) : 0, message);
+	}
+}
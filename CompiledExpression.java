@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * An expression whose evaluate method runs a compiled MethodHandle chain instead of walking the tree.
+ * Everything else (batch evaluation, copying, printing, differentiating) is delegated to the original tree,
+ * so a CompiledExpression can be used anywhere a plain Expression is expected. The tree's batch methods walk
+ * it once for all the points rather than once per point, which is faster per point than invoking the handle
+ * in a loop (BatchEvaluateBenchmark, pointwise mode), so graphs and tiles of compiled expressions use them.
+ * Use ExpressionCompiler.compile to create one.
+ */
+public class CompiledExpression implements Expression {
+    private final Expression expression;
+    private final MethodHandle handle; // one per expression, built at run time, so it cannot be a static final constant
+
+    /**
+     * Creates a new CompiledExpression.
+     * @param expression the tree the handle was compiled from
+     * @param handle a (double)double handle computing the same value as expression
+     */
+    CompiledExpression(Expression expression, MethodHandle handle) {
+        this.expression = expression;
+        this.handle = handle;
+    }
+
+    /**
+     * @return the tree this expression was compiled from
+     */
+    Expression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Creates and returns a deep copy of the expression.
+     * The tree is copied; the compiled handle is immutable and is shared with the copy.
+     *
+     * @return the deep copy
+     */
+    @Override
+    public Expression deepCopy() {
+        return new CompiledExpression(expression.deepCopy(), handle);
+    }
+
+    /**
+     * Creates a String representation of this expression with a given starting
+     * indent level. The output is the same as that of the original tree.
+     *
+     * @param indentLevel how many tab characters should appear at the beginning of each line.
+     * @return the String representing this expression.
+     */
+    @Override
+    public String convertToString(int indentLevel) {
+        return expression.convertToString(indentLevel);
+    }
+
+    /**
+     * Appends the String representation of this expression to out, as convertToString would produce it.
+     *
+     * @param out where to append the String representation
+     * @param indentLevel how many tab characters should appear at the beginning of each line.
+     * @throws IOException if out throws it
+     */
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        expression.appendTo(out, indentLevel);
+    }
+
+    /**
+     * Given the value of the independent variable x, compute the value of this expression
+     * by invoking the compiled handle. Whatever the tree would throw is thrown as it is.
+     *
+     * @param x the value of the independent variable x
+     * @return the value of this expression.
+     */
+    @Override
+    public double evaluate(double x) {
+        try {
+            return (double) handle.invokeExact(x);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) { // the handles only call Math methods and evaluate, which throw no checked exceptions
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Computes the value of this expression with the variables read from env. The compiled handle
+     * only binds x, so this evaluates the original tree.
+     *
+     * @param env the value of every variable, indexed by slot
+     * @return the value of this expression.
+     */
+    @Override
+    public double evaluate(double[] env) {
+        return expression.evaluate(env);
+    }
+
+    /**
+     * Computes the value of this expression at each of the given values of x, using the original tree.
+     *
+     * @param xs the values of the independent variable x
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double[] xs, double[] out) {
+        expression.evaluate(xs, out);
+    }
+
+    /**
+     * Computes the value of this expression at the n evenly spaced values x = from + i*step, using the original tree.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double from, double step, int n, double[] out) {
+        expression.evaluate(from, step, n, out);
+    }
+
+    /**
+     * Given the value of the independent variable x, compute the value of this expression
+     * and of its derivative together, using the original tree.
+     *
+     * @param x the value of the independent variable x
+     * @return the value of this expression and of its derivative
+     */
+    @Override
+    public DualNumber evaluateWithDerivative(double x) {
+        return expression.evaluateWithDerivative(x);
+    }
+
+    /**
+     * Computes the value of this expression and of its derivative at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param values where to store the values of the expression
+     * @param derivatives where to store the values of the derivative
+     */
+    @Override
+    public void evaluateWithDerivative(double from, double step, int n, double[] values, double[] derivatives) {
+        expression.evaluateWithDerivative(from, step, n, values, derivatives);
+    }
+
+    /**
+     * Computes bounds of the values of this expression for every x in [lo, hi].
+     *
+     * @param lo the smallest value of the independent variable x
+     * @param hi the largest value of the independent variable x
+     * @return bounds of the values of this expression
+     */
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        return expression.evaluateInterval(lo, hi);
+    }
+
+    /**
+     * Produce a new, fully independent Expression representing the derivative of this expression.
+     * The derivative is an ordinary tree; pass it to ExpressionCompiler.compile to compile it too.
+     *
+     * @return the derivative of this expression
+     */
+    @Override
+    public Expression differentiate() {
+        return expression.differentiate();
+    }
+
+    /**
+     * Produce a new, fully independent Expression representing the partial derivative of this expression.
+     *
+     * @param slot the slot of the variable to differentiate by
+     * @return the partial derivative of this expression
+     */
+    @Override
+    public Expression differentiate(int slot) {
+        return expression.differentiate(slot);
+    }
+}
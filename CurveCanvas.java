@@ -0,0 +1,166 @@
+import java.util.List;
+
+import javafx.geometry.Point2D;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws sampled curves as polylines on a Canvas laid over a LineChart, straight from their primitive
+ * arrays, instead of adding one scene-graph node per point to the chart. The chart still provides
+ * the axes, so zooming and dragging keep working by changing the axis bounds; the canvas maps values
+ * to pixels through those axes. Curves are downsampled with LTTB to the width of the plot area.
+ * Roots and extrema can be marked on top of the curves, and the area between the first curve
+ * and the x-axis shaded.
+ * The canvas must be added to the same parent as the chart, after it.
+ */
+public class CurveCanvas extends Canvas {
+    private static final Color[] COLORS = { Color.web("#f3622d"), Color.web("#fba71b"), Color.web("#57b757") };
+    private static final double LINE_WIDTH = 3;
+    private static final double MAX_PIXEL = 1e6; // keeps far off-screen points from upsetting the renderer
+    private static final Color ROOT_COLOR = Color.web("#1f77b4"), EXTREMUM_COLOR = Color.web("#7f3fbf");
+    private static final double MARKER_RADIUS = 4;
+    private static final double SHADE_OPACITY = 0.25;
+
+    private final NumberAxis xAxis, yAxis;
+    private SampledCurve[] curves = new SampledCurve[0];
+    private List<CurvePoint> points = List.of();
+    private boolean shaded;
+
+    /**
+     * Creates a new CurveCanvas covering the given chart.
+     * @param chart the chart whose axes map values to pixels
+     */
+    public CurveCanvas(LineChart<Number, Number> chart) {
+        this.xAxis = (NumberAxis) chart.getXAxis();
+        this.yAxis = (NumberAxis) chart.getYAxis();
+        widthProperty().bind(chart.widthProperty());
+        heightProperty().bind(chart.heightProperty());
+        layoutXProperty().bind(chart.layoutXProperty());
+        layoutYProperty().bind(chart.layoutYProperty());
+        translateXProperty().bind(chart.translateXProperty());
+        translateYProperty().bind(chart.translateYProperty());
+        setMouseTransparent(true);
+    }
+
+    /**
+     * Replaces the curves being drawn and redraws.
+     * @param curves the curves to draw, in series order
+     */
+    public void setCurves(SampledCurve[] curves) {
+        final int threshold = (int) Math.max(xAxis.getWidth(), 3);
+        this.curves = new SampledCurve[curves.length];
+        for (int i = 0; i < curves.length; i++) {
+            this.curves[i] = CurveDownsampler.largestTriangleThreeBuckets(curves[i], threshold);
+        }
+        redraw();
+    }
+
+    /**
+     * Replaces the points being marked and redraws.
+     * @param points the roots and extrema to mark
+     */
+    public void setPoints(List<CurvePoint> points) {
+        this.points = points;
+        redraw();
+    }
+
+    /**
+     * Turns shading the area under the first curve on or off and redraws.
+     * @param shaded whether to shade the area between the first curve and the x-axis
+     */
+    public void setShaded(boolean shaded) {
+        this.shaded = shaded;
+        redraw();
+    }
+
+    /**
+     * @return the curves being drawn, after downsampling
+     */
+    public SampledCurve[] getCurves() {
+        return curves;
+    }
+
+    /**
+     * Redraws the curves using the current axis bounds. Call whenever the axes change.
+     */
+    public void redraw() {
+        final GraphicsContext gc = getGraphicsContext2D();
+        gc.clearRect(0, 0, getWidth(), getHeight());
+        final Point2D xOrigin = sceneToLocal(xAxis.localToScene(0, 0));
+        final Point2D yOrigin = sceneToLocal(yAxis.localToScene(0, 0));
+        if (xOrigin == null || yOrigin == null) {
+            return; // not in a scene yet
+        }
+        // both axes are linear, so two display positions define each mapping
+        final double xLower = xAxis.getLowerBound(), xUpper = xAxis.getUpperBound();
+        final double yLower = yAxis.getLowerBound(), yUpper = yAxis.getUpperBound();
+        final double xOffset = xOrigin.getX() + xAxis.getDisplayPosition(xLower);
+        final double xScale = (xAxis.getDisplayPosition(xUpper) - xAxis.getDisplayPosition(xLower)) / (xUpper - xLower);
+        final double yOffset = yOrigin.getY() + yAxis.getDisplayPosition(yLower);
+        final double yScale = (yAxis.getDisplayPosition(yUpper) - yAxis.getDisplayPosition(yLower)) / (yUpper - yLower);
+
+        gc.save();
+        gc.beginPath();
+        gc.rect(xOrigin.getX(), yOrigin.getY(), xAxis.getWidth(), yAxis.getHeight());
+        gc.clip();
+        if (shaded && curves.length > 0) {
+            // one polygon per stretch of the curve where it is defined, closed along the x-axis
+            final double[] xs = curves[0].getXs();
+            final double[] ys = curves[0].getYs();
+            final double axis = Math.max(-MAX_PIXEL, Math.min(MAX_PIXEL, yOffset - yLower * yScale));
+            gc.setFill(COLORS[0].deriveColor(0, 1, 1, SHADE_OPACITY));
+            int i = 0;
+            while (i < xs.length) {
+                if (!Double.isFinite(ys[i])) {
+                    i++;
+                    continue;
+                }
+                gc.beginPath();
+                gc.moveTo(xOffset + (xs[i] - xLower) * xScale, axis);
+                double px = 0;
+                for (; i < xs.length && Double.isFinite(ys[i]); i++) {
+                    px = xOffset + (xs[i] - xLower) * xScale;
+                    gc.lineTo(px, Math.max(-MAX_PIXEL, Math.min(MAX_PIXEL, yOffset + (ys[i] - yLower) * yScale)));
+                }
+                gc.lineTo(px, axis);
+                gc.closePath();
+                gc.fill();
+            }
+        }
+        gc.setLineWidth(LINE_WIDTH);
+        for (int c = 0; c < curves.length; c++) {
+            final double[] xs = curves[c].getXs();
+            final double[] ys = curves[c].getYs();
+            gc.setStroke(COLORS[c % COLORS.length]);
+            gc.beginPath();
+            boolean penDown = false;
+            for (int i = 0; i < xs.length; i++) {
+                if (!Double.isFinite(ys[i])) {
+                    penDown = false;
+                    continue;
+                }
+                final double px = xOffset + (xs[i] - xLower) * xScale;
+                final double py = Math.max(-MAX_PIXEL, Math.min(MAX_PIXEL, yOffset + (ys[i] - yLower) * yScale));
+                if (penDown) {
+                    gc.lineTo(px, py);
+                } else {
+                    gc.moveTo(px, py);
+                    penDown = true;
+                }
+            }
+            gc.stroke();
+        }
+        for (CurvePoint point : points) {
+            final double px = xOffset + (point.getX() - xLower) * xScale;
+            final double py = yOffset + (point.getY() - yLower) * yScale;
+            if (Double.isFinite(py)) {
+                gc.setFill(point.getKind() == CurvePoint.Kind.ROOT ? ROOT_COLOR : EXTREMUM_COLOR);
+                gc.fillOval(px - MARKER_RADIUS, py - MARKER_RADIUS, 2 * MARKER_RADIUS, 2 * MARKER_RADIUS);
+            }
+        }
+        gc.restore();
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.Arrays;
+
+/**
+ * Reduces a sampled curve to a given number of points while keeping its visual shape,
+ * using the Largest-Triangle-Three-Buckets algorithm.
+ */
+public class CurveDownsampler {
+    private CurveDownsampler() {
+    }
+
+    /**
+     * Downsamples the curve to about threshold points. Each run of finite values is downsampled
+     * separately, in proportion to its length, and the runs stay separated by a NaN point, so gaps
+     * where the curve is undefined survive downsampling.
+     * @param curve the curve to downsample
+     * @param threshold how many points to keep; curves with no more points are returned as they are
+     * @return the downsampled curve
+     */
+    public static SampledCurve largestTriangleThreeBuckets(SampledCurve curve, int threshold) {
+        final int n = curve.size();
+        if (n <= threshold || threshold < 3) {
+            return curve;
+        }
+        final double[] xs = curve.getXs();
+        final double[] ys = curve.getYs();
+        final double[] outXs = new double[n]; // every kept point, NaN separators included, is one of the input points
+        final double[] outYs = new double[outXs.length];
+        int size = 0;
+        int start = 0;
+        while (start < n) {
+            if (!Double.isFinite(ys[start])) {
+                if (size == 0 || Double.isFinite(outYs[size - 1])) { // collapse a gap to one NaN point
+                    outXs[size] = xs[start];
+                    outYs[size] = Double.NaN;
+                    size++;
+                }
+                start++;
+                continue;
+            }
+            int end = start;
+            while (end < n && Double.isFinite(ys[end])) {
+                end++;
+            }
+            final int runThreshold = Math.max(2, (int) ((long) threshold * (end - start) / n));
+            size = downsampleRun(xs, ys, start, end, runThreshold, outXs, outYs, size);
+            start = end;
+        }
+        return new SampledCurve(Arrays.copyOf(outXs, size), Arrays.copyOf(outYs, size));
+    }
+
+    /**
+     * Runs LTTB on the finite points [start, end), appending the chosen points at size.
+     * @return the new size
+     */
+    private static int downsampleRun(double[] xs, double[] ys, int start, int end, int threshold,
+                                     double[] outXs, double[] outYs, int size) {
+        final int n = end - start;
+        if (n <= threshold || threshold < 3) {
+            System.arraycopy(xs, start, outXs, size, n);
+            System.arraycopy(ys, start, outYs, size, n);
+            return size + n;
+        }
+        // the first and last points are always kept; the rest are split into threshold - 2 buckets
+        final double bucketSize = (double) (n - 2) / (threshold - 2);
+        int selected = start;
+        outXs[size] = xs[selected];
+        outYs[size] = ys[selected];
+        size++;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            final int bucketStart = start + 1 + (int) (bucket * bucketSize);
+            final int bucketEnd = start + 1 + (int) ((bucket + 1) * bucketSize);
+            // the third corner of the triangle is the average of the next bucket
+            final int nextStart = bucketEnd;
+            final int nextEnd = Math.min(start + 1 + (int) ((bucket + 2) * bucketSize), end);
+            double averageX = 0, averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += xs[i];
+                averageY += ys[i];
+            }
+            final int nextCount = nextEnd - nextStart;
+            if (nextCount > 0) {
+                averageX /= nextCount;
+                averageY /= nextCount;
+            } else {
+                averageX = xs[end - 1];
+                averageY = ys[end - 1];
+            }
+            final double ax = xs[selected], ay = ys[selected];
+            double maxArea = -1;
+            int next = bucketStart;
+            for (int i = bucketStart; i < bucketEnd; i++) {
+                final double area = Math.abs((ax - averageX) * (ys[i] - ay) - (ax - xs[i]) * (averageY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = i;
+                }
+            }
+            selected = next;
+            outXs[size] = xs[selected];
+            outYs[size] = ys[selected];
+            size++;
+        }
+        outXs[size] = xs[end - 1];
+        outYs[size] = ys[end - 1];
+        return size + 1;
+    }
+}
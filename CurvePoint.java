@@ -0,0 +1,64 @@
+/**
+ * A root or a local extremum of an expression, as found by RootFinder.
+ */
+public class CurvePoint {
+    /**
+     * What kind of point it is.
+     */
+    public enum Kind {
+        ROOT, MINIMUM, MAXIMUM
+    }
+
+    private final Kind kind;
+    private final double x;
+    private final double y;
+    private final double xError;
+
+    /**
+     * Creates a new CurvePoint.
+     * @param kind what kind of point it is
+     * @param x where it is
+     * @param y the value of the expression at x
+     * @param xError how far the exact point may be from x
+     */
+    public CurvePoint(Kind kind, double x, double y, double xError) {
+        this.kind = kind;
+        this.x = x;
+        this.y = y;
+        this.xError = xError;
+    }
+
+    /**
+     * @return what kind of point it is
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return where the point is
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * @return the value of the expression at getX()
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return how far the exact point may be from getX(): a sign change of the expression, or of its
+     *         derivative for an extremum, lies within [x - xError, x + xError]
+     */
+    public double getXError() {
+        return xError;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " at x=" + x + " +/- " + xError + ", y=" + y;
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Samples expressions over evenly spaced x values in parallel.
+ * The range is split recursively into chunks that are evaluated with the batch evaluate API
+ * on a ForkJoinPool, each chunk writing into its own part of a shared primitive array.
+ * Expressions are immutable, so the same tree is shared by all the chunks.
+ */
+public class CurveSampler {
+    static final int CHUNK_SIZE = 256;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new CurveSampler that runs on the common ForkJoinPool.
+     */
+    public CurveSampler() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new CurveSampler that runs on the given pool.
+     * @param pool the pool to evaluate chunks on
+     */
+    public CurveSampler(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Samples the expression at the n values x = from + i*step, waiting for the result.
+     * @param expression the expression to sample
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @return the sampled curve
+     */
+    public SampledCurve sample(Expression expression, double from, double step, int n) {
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        pool.invoke(new SampleTask(expression, from, step, 0, n, xs, ys));
+        return new SampledCurve(xs, ys);
+    }
+
+    /**
+     * Samples the expression at the n values x = from + i*step without blocking the caller.
+     * @param expression the expression to sample
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @return a future completed with the sampled curve
+     */
+    public CompletableFuture<SampledCurve> sampleAsync(Expression expression, double from, double step, int n) {
+        return CompletableFuture.supplyAsync(() -> sample(expression, from, step, n), pool);
+    }
+
+    /**
+     * Evaluates the points [start, end), splitting in half until a chunk is at most CHUNK_SIZE points.
+     */
+    private static class SampleTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Expression expression;
+        private final double from, step;
+        private final int start, end;
+        private final double[] xs, ys;
+
+        SampleTask(Expression expression, double from, double step, int start, int end, double[] xs, double[] ys) {
+            this.expression = expression;
+            this.from = from;
+            this.step = step;
+            this.start = start;
+            this.end = end;
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= CHUNK_SIZE) {
+                final int n = end - start;
+                final double[] chunk = new double[n];
+                for (int i = 0; i < n; i++) {
+                    chunk[i] = from + (start + i) * step;
+                }
+                final double[] values = new double[n];
+                expression.evaluate(chunk, values);
+                System.arraycopy(chunk, 0, xs, start, n);
+                System.arraycopy(values, 0, ys, start, n);
+                return;
+            }
+            final int middle = (start + end) >>> 1;
+            invokeAll(new SampleTask(expression, from, step, start, middle, xs, ys),
+                    new SampleTask(expression, from, step, middle, end, xs, ys));
+        }
+    }
+}
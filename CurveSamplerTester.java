@@ -0,0 +1,148 @@
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the curve samplers against point-by-point evaluation.
+ */
+public class CurveSamplerTester {
+	private ExpressionParser _parser;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser();
+	}
+
+	/**
+	 * Verifies that parallel sampling over many chunks produces every point exactly once and in order.
+	 */
+	@Test
+	public void testParallelSample () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x^3 - 2*x + log(x*x+1)");
+		final int n = 10 * CurveSampler.CHUNK_SIZE + 17;
+		final SampledCurve curve = new CurveSampler().sample(expression, -10, 0.01, n);
+		assertEquals(n, curve.size());
+		for (int i = 0; i < n; i++) {
+			final double x = -10 + i * 0.01;
+			assertEquals(x, curve.getXs()[i]);
+			assertEquals(expression.evaluate(x), curve.getYs()[i]);
+		}
+	}
+
+	/**
+	 * Verifies that adaptive sampling puts points on the curve, in order, and uses few of them on straight lines.
+	 */
+	@Test
+	public void testAdaptiveSample () throws ExpressionParseException {
+		final Viewport viewport = new Viewport(-10, 10, -10, 10, 600, 500);
+		final AdaptiveSampler sampler = new AdaptiveSampler();
+
+		final SampledCurve line = sampler.sample(_parser.parse("2*x+1"), null, viewport);
+		assertEquals(2 * AdaptiveSampler.INITIAL_SEGMENTS + 1, line.size());
+
+		final Expression expression = _parser.parse("1/x + x^2");
+		final SampledCurve curve = sampler.sample(expression, expression.differentiate(), viewport);
+		assertEquals(-10, curve.getXs()[0]);
+		assertEquals(10, curve.getXs()[curve.size() - 1]);
+		for (int i = 0; i < curve.size(); i++) {
+			assertEquals(expression.evaluate(curve.getXs()[i]), curve.getYs()[i]);
+			if (i > 0) {
+				assertTrue(curve.getXs()[i] > curve.getXs()[i - 1]);
+			}
+		}
+		assertTrue(curve.size() > line.size() && curve.size() < AdaptiveSampler.DEFAULT_MAX_POINTS + 2);
+	}
+
+	/**
+	 * Verifies that each coarse segment splits its point budget evenly between its halves: on a curve that
+	 * bends everywhere beyond the tolerance, a budget of 8 points per segment yields evenly spaced points.
+	 */
+	@Test
+	public void testAdaptiveSampleBudget () throws ExpressionParseException {
+		final Viewport viewport = new Viewport(-10, 10, -10, 10, 600, 500);
+		final AdaptiveSampler sampler = new AdaptiveSampler(1e-9, AdaptiveSampler.DEFAULT_MAX_DEPTH,
+				8 * AdaptiveSampler.INITIAL_SEGMENTS, ForkJoinPool.commonPool());
+		final SampledCurve curve = sampler.sample(_parser.parse("x^2/20"), null, viewport); // on screen throughout
+		assertEquals(8 * AdaptiveSampler.INITIAL_SEGMENTS + 1, curve.size());
+		for (int i = 1; i < curve.size(); i++) {
+			assertEquals(20.0 / AdaptiveSampler.INITIAL_SEGMENTS / 8, curve.getXs()[i] - curve.getXs()[i - 1]);
+		}
+	}
+
+	/**
+	 * Verifies that a narrow spike into the viewport between sample points that are all off screen is found,
+	 * since only segments that are provably off screen are left unrefined.
+	 */
+	@Test
+	public void testAdaptiveSampleSpike () throws ExpressionParseException {
+		final Viewport viewport = new Viewport(-10, 10, -10, 10, 600, 500);
+		final SampledCurve curve = new AdaptiveSampler().sample(_parser.parse("100 - 200/(1 + (1000*(x - 0.1))^2)"), null, viewport);
+		double min = Double.POSITIVE_INFINITY;
+		for (double y : curve.getYs()) {
+			min = Math.min(min, y);
+		}
+		assertTrue(min < viewport.getMaxY());
+		assertTrue(curve.size() < 4 * AdaptiveSampler.INITIAL_SEGMENTS);
+	}
+
+	/**
+	 * Verifies that tiled sampling is correct across tile boundaries and negative x, and that panning
+	 * and returning to a zoom level reuse tiles.
+	 */
+	@Test
+	public void testTileCache () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x^3 - 2*x");
+		final TileCache cache = new TileCache();
+		final SampledCurve curve = cache.sample(expression, -10, 10, 0.01);
+		assertTrue(curve.getXs()[0] <= -10 && curve.getXs()[curve.size() - 1] >= 10);
+		for (int i = 0; i < curve.size(); i++) {
+			assertEquals(expression.evaluate(curve.getXs()[i]), curve.getYs()[i]);
+			if (i > 0) {
+				assertEquals(1.0 / 128, curve.getXs()[i] - curve.getXs()[i - 1]);
+			}
+		}
+		assertEquals(11, cache.getMisses()); // tiles are 2 units wide at this zoom level
+		assertEquals(0, cache.getHits());
+
+		cache.sample(expression, -9, 13, 0.01); // pan right: only the tile covering [12, 14) is new
+		assertEquals(12, cache.getMisses());
+		assertEquals(11, cache.getHits());
+
+		cache.sample(expression, -20, 20, 0.02); // zoom out to tiles 4 units wide
+		cache.sample(expression, -10, 10, 0.01); // and back in
+		assertEquals(23, cache.getMisses());
+		assertEquals(22, cache.getHits());
+
+		final TileCache small = new TileCache(3 * (TileCache.TILE_SAMPLES * 8 + 96), ForkJoinPool.commonPool());
+		small.sample(expression, -10, 10, 0.01);
+		assertTrue(small.getEvictions() > 0 && small.getBytes() <= 3 * (TileCache.TILE_SAMPLES * 8 + 96));
+	}
+
+	/**
+	 * Verifies that LTTB keeps the end points and the spikes of a curve, and keeps gaps where it is undefined.
+	 */
+	@Test
+	public void testDownsample () throws ExpressionParseException {
+		final SampledCurve curve = new CurveSampler().sample(_parser.parse("1/x"), -10, 0.01, 2001);
+		final SampledCurve downsampled = CurveDownsampler.largestTriangleThreeBuckets(curve, 200);
+		assertTrue(downsampled.size() <= 201);
+		assertEquals(-10, downsampled.getXs()[0]);
+		assertEquals(curve.getXs()[2000], downsampled.getXs()[downsampled.size() - 1]);
+		double max = Double.NEGATIVE_INFINITY;
+		for (double y : downsampled.getYs()) {
+			if (Double.isFinite(y)) {
+				max = Math.max(max, y);
+			}
+		}
+		assertEquals(100, max, 1); // the spike at x=0.01 survives
+
+		final SampledCurve withGap = new CurveSampler().sample(_parser.parse("log(x)"), -10, 0.01, 2001);
+		final SampledCurve downsampledGap = CurveDownsampler.largestTriangleThreeBuckets(withGap, 200);
+		assertTrue(Double.isNaN(downsampledGap.getYs()[0]));
+		assertTrue(Double.isFinite(downsampledGap.getYs()[downsampledGap.size() - 1]));
+	}
+}
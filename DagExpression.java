@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * An expression whose evaluate method computes every distinct node of a DAG exactly once.
+ * Plain evaluate() recomputes a shared subexpression once per path leading to it, which for the
+ * interned higher-order derivatives built by ExpressionInterner means exponentially many times.
+ * A DagExpression lists the nodes in topological order, children first, and evaluates them into
+ * an array of registers, each node reading its operands from the registers of its children.
+ * Everything else (copying, printing, differentiating) is delegated to the original expression.
+ */
+public class DagExpression implements Expression {
+    static final int BLOCK_SIZE = 256;
+
+    private final Expression expression;
+    private final int[] opcodes;
+    private final int[] lefts;
+    private final int[] rights;
+    private final double[] constants;
+    private final Expression[] calls;
+
+    /**
+     * Creates a new DagExpression. Subexpressions are shared by identity, so intern the
+     * expression first to share structurally equal subtrees as well.
+     * @param expression the expression to evaluate
+     */
+    public DagExpression(Expression expression) {
+        this.expression = expression;
+        final Map<Expression, Integer> registers = new IdentityHashMap<>();
+        final Deque<Expression> stack = new ArrayDeque<>();
+        int[] opcodes = new int[16], lefts = new int[16], rights = new int[16];
+        double[] constants = new double[16];
+        Expression[] calls = new Expression[16];
+        int count = 0;
+
+        stack.push(skipParentheses(expression));
+        while (!stack.isEmpty()) {
+            final Expression node = stack.peek();
+            if (registers.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            // visit the children first
+            final Expression[] children = ExpressionTraversal.childrenOf(node);
+            boolean ready = true;
+            for (int i = children.length - 1; i >= 0; i--) {
+                children[i] = skipParentheses(children[i]);
+                if (!registers.containsKey(children[i])) {
+                    stack.push(children[i]);
+                    ready = false;
+                }
+            }
+            if (!ready) {
+                continue;
+            }
+            stack.pop();
+            if (count == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, count * 2);
+                lefts = Arrays.copyOf(lefts, count * 2);
+                rights = Arrays.copyOf(rights, count * 2);
+                constants = Arrays.copyOf(constants, count * 2);
+                calls = Arrays.copyOf(calls, count * 2);
+            }
+            opcodes[count] = opcodeOf(node);
+            if (children.length > 0) {
+                lefts[count] = registers.get(children[0]);
+            }
+            if (children.length > 1) {
+                rights[count] = registers.get(children[1]);
+            }
+            if (node instanceof LiteralExpression) {
+                constants[count] = ((LiteralExpression) node).getValue();
+            } else if (opcodes[count] == EvaluationProgram.CALL) {
+                calls[count] = node;
+            }
+            registers.put(node, count++);
+        }
+        this.opcodes = Arrays.copyOf(opcodes, count);
+        this.lefts = Arrays.copyOf(lefts, count);
+        this.rights = Arrays.copyOf(rights, count);
+        this.constants = Arrays.copyOf(constants, count);
+        this.calls = Arrays.copyOf(calls, count);
+    }
+
+    private static Expression skipParentheses(Expression expression) {
+        while (expression instanceof ParentheticalExpression) {
+            expression = ((ParentheticalExpression) expression).getChild();
+        }
+        return expression;
+    }
+
+    private static int opcodeOf(Expression node) {
+        if (node instanceof LiteralExpression) {
+            return EvaluationProgram.CONST;
+        }
+        if (VariableExpression.isIndependent(node)) {
+            return EvaluationProgram.VAR;
+        }
+        if (node instanceof AdditiveExpression) {
+            return ((AdditiveExpression) node).getOperator() == '+' ? EvaluationProgram.ADD : EvaluationProgram.SUB;
+        }
+        if (node instanceof MultiplicativeExpression) {
+            return ((MultiplicativeExpression) node).getOperator() == '*' ? EvaluationProgram.MUL : EvaluationProgram.DIV;
+        }
+        if (node instanceof ExponentialExpression) {
+            return ((ExponentialExpression) node).getOperator() == 'l' ? EvaluationProgram.LOG : EvaluationProgram.POW;
+        }
+        return EvaluationProgram.CALL;
+    }
+
+    /**
+     * @return the number of distinct nodes evaluated, not counting parentheses
+     */
+    int nodeCount() {
+        return opcodes.length;
+    }
+
+    /**
+     * Creates and returns a deep copy of the expression.
+     *
+     * @return the deep copy
+     */
+    @Override
+    public Expression deepCopy() {
+        return new DagExpression(expression.deepCopy());
+    }
+
+    /**
+     * Creates a String representation of this expression with a given starting
+     * indent level. Shared nodes are printed once per use, as in a tree.
+     *
+     * @param indentLevel how many tab characters should appear at the beginning of each line.
+     * @return the String representing this expression.
+     */
+    @Override
+    public String convertToString(int indentLevel) {
+        return expression.convertToString(indentLevel);
+    }
+
+    /**
+     * Appends the String representation of this expression to out, as convertToString would produce it.
+     *
+     * @param out where to append the String representation
+     * @param indentLevel how many tab characters should appear at the beginning of each line.
+     * @throws IOException if out throws it
+     */
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        expression.appendTo(out, indentLevel);
+    }
+
+    /**
+     * Given the value of the independent variable x, compute the value of this expression,
+     * evaluating each distinct node once.
+     *
+     * @param x the value of the independent variable x
+     * @return the value of this expression.
+     */
+    @Override
+    public double evaluate(double x) {
+        return evaluate(x, null);
+    }
+
+    /**
+     * Computes the value of this expression with the variables read from env, evaluating each distinct node once.
+     * Variables other than x are evaluated like unknown node types.
+     *
+     * @param env the value of every variable, indexed by slot
+     * @return the value of this expression.
+     */
+    @Override
+    public double evaluate(double[] env) {
+        return evaluate(env[0], env);
+    }
+
+    /**
+     * Evaluates at x, passing env to the nodes that are not compiled into opcodes if it is not null.
+     */
+    private double evaluate(double x, double[] env) {
+        final double[] values = new double[opcodes.length];
+        for (int i = 0; i < opcodes.length; i++) {
+            switch (opcodes[i]) {
+                case EvaluationProgram.CONST:
+                    values[i] = constants[i];
+                    break;
+                case EvaluationProgram.VAR:
+                    values[i] = x;
+                    break;
+                case EvaluationProgram.ADD:
+                    values[i] = values[lefts[i]] + values[rights[i]];
+                    break;
+                case EvaluationProgram.SUB:
+                    values[i] = values[lefts[i]] - values[rights[i]];
+                    break;
+                case EvaluationProgram.MUL:
+                    values[i] = values[lefts[i]] * values[rights[i]];
+                    break;
+                case EvaluationProgram.DIV:
+                    values[i] = values[lefts[i]] / values[rights[i]];
+                    break;
+                case EvaluationProgram.POW:
+                    values[i] = Math.pow(values[lefts[i]], values[rights[i]]);
+                    break;
+                case EvaluationProgram.LOG:
+                    values[i] = Math.log(values[lefts[i]]);
+                    break;
+                default: // CALL
+                    values[i] = env == null ? calls[i].evaluate(x) : calls[i].evaluate(env);
+            }
+        }
+        return values[opcodes.length - 1];
+    }
+
+    /**
+     * Computes the value of this expression at each of the given values of x.
+     *
+     * @param xs the values of the independent variable x
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double[] xs, double[] out) {
+        final double[] values = new double[opcodes.length * BLOCK_SIZE];
+        final double[] block = new double[BLOCK_SIZE];
+        for (int start = 0; start < xs.length; start += BLOCK_SIZE) {
+            final int n = Math.min(BLOCK_SIZE, xs.length - start);
+            System.arraycopy(xs, start, block, 0, n);
+            evaluateBlock(block, n, values);
+            System.arraycopy(values, (opcodes.length - 1) * BLOCK_SIZE, out, start, n);
+        }
+    }
+
+    /**
+     * Computes the value of this expression at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double from, double step, int n, double[] out) {
+        final double[] values = new double[opcodes.length * BLOCK_SIZE];
+        final double[] block = new double[BLOCK_SIZE];
+        for (int start = 0; start < n; start += BLOCK_SIZE) {
+            final int count = Math.min(BLOCK_SIZE, n - start);
+            for (int i = 0; i < count; i++) {
+                block[i] = from + (start + i) * step;
+            }
+            evaluateBlock(block, count, values);
+            System.arraycopy(values, (opcodes.length - 1) * BLOCK_SIZE, out, start, count);
+        }
+    }
+
+    /**
+     * Evaluates every node at the first n values of xs. Node i's results go to
+     * values[i*BLOCK_SIZE, i*BLOCK_SIZE + n).
+     */
+    private void evaluateBlock(double[] xs, int n, double[] values) {
+        for (int i = 0; i < opcodes.length; i++) {
+            final int o = i * BLOCK_SIZE;
+            final int l = lefts[i] * BLOCK_SIZE;
+            final int r = rights[i] * BLOCK_SIZE;
+            switch (opcodes[i]) {
+                case EvaluationProgram.CONST:
+                    Arrays.fill(values, o, o + n, constants[i]);
+                    break;
+                case EvaluationProgram.VAR:
+                    System.arraycopy(xs, 0, values, o, n);
+                    break;
+                case EvaluationProgram.ADD:
+                    for (int k = 0; k < n; k++) {
+                        values[o + k] = values[l + k] + values[r + k];
+                    }
+                    break;
+                case EvaluationProgram.SUB:
+                    for (int k = 0; k < n; k++) {
+                        values[o + k] = values[l + k] - values[r + k];
+                    }
+                    break;
+                case EvaluationProgram.MUL:
+                    for (int k = 0; k < n; k++) {
+                        values[o + k] = values[l + k] * values[r + k];
+                    }
+                    break;
+                case EvaluationProgram.DIV:
+                    for (int k = 0; k < n; k++) {
+                        values[o + k] = values[l + k] / values[r + k];
+                    }
+                    break;
+                case EvaluationProgram.POW:
+                    for (int k = 0; k < n; k++) {
+                        values[o + k] = Math.pow(values[l + k], values[r + k]);
+                    }
+                    break;
+                case EvaluationProgram.LOG:
+                    for (int k = 0; k < n; k++) {
+                        values[o + k] = Math.log(values[l + k]);
+                    }
+                    break;
+                default: // CALL
+                    for (int k = 0; k < n; k++) {
+                        values[o + k] = calls[i].evaluate(xs[k]);
+                    }
+            }
+        }
+    }
+
+    /**
+     * Given the value of the independent variable x, compute the value of this expression
+     * and of its derivative together, using the original expression.
+     *
+     * @param x the value of the independent variable x
+     * @return the value of this expression and of its derivative
+     */
+    @Override
+    public DualNumber evaluateWithDerivative(double x) {
+        return expression.evaluateWithDerivative(x);
+    }
+
+    /**
+     * Computes the value of this expression and of its derivative at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param values where to store the values of the expression
+     * @param derivatives where to store the values of the derivative
+     */
+    @Override
+    public void evaluateWithDerivative(double from, double step, int n, double[] values, double[] derivatives) {
+        expression.evaluateWithDerivative(from, step, n, values, derivatives);
+    }
+
+    /**
+     * Computes bounds of the values of this expression for every x in [lo, hi].
+     *
+     * @param lo the smallest value of the independent variable x
+     * @param hi the largest value of the independent variable x
+     * @return bounds of the values of this expression
+     */
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        return expression.evaluateInterval(lo, hi);
+    }
+
+    /**
+     * Produce a new, fully independent Expression representing the derivative of this expression.
+     * Use ExpressionInterner.differentiate to differentiate without copying shared nodes.
+     *
+     * @return the derivative of this expression
+     */
+    @Override
+    public Expression differentiate() {
+        return expression.differentiate();
+    }
+
+    /**
+     * Produce a new, fully independent Expression representing the partial derivative of this expression.
+     *
+     * @param slot the slot of the variable to differentiate by
+     * @return the partial derivative of this expression
+     */
+    @Override
+    public Expression differentiate(int slot) {
+        return expression.differentiate(slot);
+    }
+}
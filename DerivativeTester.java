@@ -0,0 +1,151 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that derivatives evaluated numerically agree with the symbolic derivatives from differentiate().
+ */
+public class DerivativeTester {
+	private static final String[] EXPRESSIONS = {
+			"x", "13*x", "10*x^3 + 2*(15+x)", "1./(1. + 5^(-1*x))", "log(x*2)", "2^x - x^2",
+			"x^x", "(x-1)/(x+1)", "log(x)^2/x", "(x*x+1)*(x*x+1)", "x^(x+1)/(2+x)", "(x+1)^(2*x)"
+	};
+	private static final String[] TAYLOR_EXPRESSIONS = {
+			"x", "13*x", "10*x^3 + 2*(15+x)", "1./(1. + 5^(-1*x))", "log(x*2)", "2^x - x^2",
+			"(x-1)/(x+1)", "log(x)^2/x", "(x*x+1)*(x*x+1)", "x^0.5*log(x+3)", "x^-2",
+			"x^x", "(x+1)^(2*x)", "x^(x+1)/(2+x)"
+	};
+	private ExpressionParser _parser;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser();
+	}
+
+	/**
+	 * Verifies that dual-number evaluation, point by point and in batches, matches evaluating the derivative tree.
+	 */
+	@Test
+	public void testEvaluateWithDerivative () throws ExpressionParseException {
+		for (String expressionStr : EXPRESSIONS) {
+			final Expression expression = _parser.parse(expressionStr);
+			final Expression derivative = expression.differentiate();
+			final double[] values = new double[12];
+			final double[] derivatives = new double[12];
+			expression.evaluateWithDerivative(0.25, 0.25, values.length, values, derivatives);
+			for (int i = 0; i < values.length; i++) {
+				final double x = 0.25 + i * 0.25;
+				final double expected = derivative.evaluate(x);
+				final double tolerance = 1e-9 * Math.max(1, Math.abs(expected));
+				final DualNumber dual = expression.evaluateWithDerivative(x);
+				assertEquals(expression.evaluate(x), dual.getValue(), 1e-9 * Math.max(1, Math.abs(dual.getValue())));
+				assertEquals(expected, dual.getDerivative(), tolerance, expressionStr + " at x=" + x);
+				assertEquals(dual.getValue(), values[i], 1e-9 * Math.max(1, Math.abs(dual.getValue())));
+				assertEquals(expected, derivatives[i], tolerance, expressionStr + " at x=" + x);
+			}
+		}
+	}
+
+	/**
+	 * Verifies the derivative of g(x)^h(x), g^h (h' log g + h g'/g), against closed forms on every path
+	 * that computes a derivative: the tree, dual numbers, the compiled expression, the cache and Taylor mode.
+	 */
+	@Test
+	public void testPowerDerivatives () throws ExpressionParseException {
+		final ExpressionCache cache = new ExpressionCache();
+		final String[] expressions = { "x^x", "(x+1)^(2*x)" };
+		for (double x = 0.25; x <= 3; x += 0.25) {
+			final double[] expected = {
+					Math.pow(x, x) * (Math.log(x) + 1),
+					Math.pow(x + 1, 2 * x) * (2 * Math.log(x + 1) + 2 * x / (x + 1)) };
+			for (int i = 0; i < expressions.length; i++) {
+				final Expression expression = _parser.parse(expressions[i]);
+				final double tolerance = 1e-9 * Math.max(1, Math.abs(expected[i]));
+				final String message = expressions[i] + " at x=" + x;
+				assertEquals(expected[i], expression.differentiate().evaluate(x), tolerance, message);
+				assertEquals(expected[i], expression.evaluateWithDerivative(x).getDerivative(), tolerance, message);
+				assertEquals(expected[i], ExpressionCompiler.compile(expression).evaluateWithDerivative(x).getDerivative(), tolerance, message);
+				assertEquals(expected[i], cache.differentiate(expressions[i]).evaluate(x), tolerance, message);
+				assertEquals(expected[i], TaylorEvaluator.derivatives(expression, x, 1)[1], tolerance, message);
+			}
+		}
+		assertEquals(4 * (Math.log(2) + 1), _parser.parse("x^x").differentiate().evaluate(2), 1e-12);
+	}
+
+	/**
+	 * Verifies that the tile cache samples an expression and its derivative together.
+	 */
+	@Test
+	public void testSampleWithDerivative () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x^3 - 2*x");
+		final TileCache cache = new TileCache();
+		final SampledCurve[] curves = cache.sampleWithDerivative(expression, -3, 3, 0.01);
+		assertEquals(curves[0].size(), curves[1].size());
+		for (int i = 0; i < curves[0].size(); i++) {
+			final double x = curves[0].getXs()[i];
+			assertEquals(x * x * x - 2 * x, curves[0].getYs()[i], 1e-9);
+			assertEquals(3 * x * x - 2, curves[1].getYs()[i], 1e-9);
+		}
+		final long misses = cache.getMisses();
+		cache.sampleWithDerivative(expression, -3, 3, 0.01);
+		assertEquals(misses, cache.getMisses());
+	}
+
+	/**
+	 * Verifies that Taylor-mode derivatives match the memoized, simplified n-th derivatives,
+	 * including those of g(x)^h(x).
+	 */
+	@Test
+	public void testTaylorDerivatives () throws ExpressionParseException {
+		final int order = 5;
+		final ExpressionInterner interner = new ExpressionInterner();
+		for (String expressionStr : TAYLOR_EXPRESSIONS) {
+			final Expression expression = _parser.parse(expressionStr);
+			final Expression[] symbolic = new Expression[order + 1];
+			for (int k = 0; k <= order; k++) {
+				symbolic[k] = new DagExpression(interner.differentiate(expression, k));
+			}
+			for (double x = 0.25; x <= 3; x += 0.25) {
+				final double[] derivatives = TaylorEvaluator.derivatives(expression, x, order);
+				for (int k = 0; k <= order; k++) {
+					final double expected = symbolic[k].evaluate(x);
+					assertEquals(expected, derivatives[k], 1e-6 * Math.max(1, Math.abs(expected)),
+							expressionStr + " derivative " + k + " at x=" + x);
+				}
+			}
+		}
+		assertEquals(60 * 0.25, TaylorEvaluator.derivatives(_parser.parse("10*x^3 + 2*(15+x)"), 0.25, 2)[2], 1e-12);
+		// x^x, whose derivative is x^x (log x + 1)
+		assertEquals(4 * (Math.log(2) + 1), TaylorEvaluator.derivatives(_parser.parse("x^x"), 2, 1)[1], 1e-12);
+		// powers at zero, where the power series recurrence would divide by zero
+		assertEquals(6, TaylorEvaluator.derivatives(_parser.parse("(x+1)*x^3"), 0, 3)[3], 1e-12);
+	}
+
+	/**
+	 * Verifies that the memoized first derivative matches differentiate(), and that higher derivatives
+	 * are right and stay much smaller than the repeatedly differentiated tree.
+	 */
+	@Test
+	public void testDifferentiateN () throws ExpressionParseException {
+		final ExpressionInterner interner = new ExpressionInterner();
+		for (String expressionStr : EXPRESSIONS) {
+			final Expression expression = _parser.parse(expressionStr);
+			final Expression derivative = expression.differentiate();
+			final Expression first = interner.differentiate(expression, 1);
+			for (double x = 0.25; x <= 3; x += 0.25) {
+				final double expected = derivative.evaluate(x);
+				assertEquals(expected, first.evaluate(x), 1e-6 * Math.max(1, Math.abs(expected)), expressionStr + " at x=" + x);
+			}
+		}
+		Expression tree = _parser.parse("(x-1)/(x+1)");
+		for (int k = 0; k < 6; k++) {
+			tree = tree.differentiate();
+		}
+		// (x-1)/(x+1) = 1 - 2/(x+1), whose sixth derivative is -2 * 6! / (x+1)^7
+		final Expression sixth = interner.differentiate(_parser.parse("(x-1)/(x+1)"), 6);
+		assertEquals(-2 * 720 / Math.pow(2.5, 7), sixth.evaluate(1.5), 1e-9);
+		assertTrue(new DagExpression(sixth).nodeCount() * 100 < ExpressionSimplifier.countNodes(tree));
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * The value of an expression at a point together with its first derivative there,
+ * as computed by Expression.evaluateWithDerivative.
+ */
+public class DualNumber {
+    private final double value;
+    private final double derivative;
+
+    /**
+     * Creates a new DualNumber.
+     * @param value the value of the expression
+     * @param derivative the value of its derivative
+     */
+    public DualNumber(double value, double derivative) {
+        this.value = value;
+        this.derivative = derivative;
+    }
+
+    /**
+     * @return the value of the expression
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * @return the value of the derivative of the expression
+     */
+    public double getDerivative() {
+        return derivative;
+    }
+
+    @Override
+    public String toString() {
+        return value + " + " + derivative + "e";
+    }
+}
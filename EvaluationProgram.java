@@ -0,0 +1,327 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An expression tree lowered to a flat postfix program: an int[] opcode stream, a double[]
+ * constant pool, and the depth of operand stack needed to run it.
+ * Running the program is a single loop over the opcodes, with no pointer chasing through
+ * child nodes. A program holds no reference to the tree it was compiled from, so many of them
+ * can be kept in memory cheaply; that is what it is for, since the loop dispatches on every
+ * instruction and so runs slower than the tree, whose specialized nodes the JIT inlines
+ * (EvaluateBenchmark, program mode).
+ * Programs are immutable and can be shared between threads as long as each thread
+ * uses its own operand stack.
+ */
+public class EvaluationProgram implements DoubleUnaryOperator {
+    static final int CONST = 0, VAR = 1, ADD = 2, SUB = 3, MUL = 4, DIV = 5, POW = 6, LOG = 7, CALL = 8;
+    // binary operators whose right operand is a constant (followed by its pool index) or x
+    static final int ADD_CONST = 9, SUB_CONST = 10, MUL_CONST = 11, DIV_CONST = 12, POW_CONST = 13;
+    static final int ADD_VAR = 14, SUB_VAR = 15, MUL_VAR = 16, DIV_VAR = 17, POW_VAR = 18;
+    // x^2, which Math.pow computes as x*x
+    static final int SQUARE = 19;
+
+    private final int[] code;
+    private final double[] constants;
+    private final Expression[] calls;
+    private final int maxStack;
+
+    private EvaluationProgram(int[] code, double[] constants, Expression[] calls, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.calls = calls;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * Lowers the given expression to a program.
+     * Node types the compiler does not know about are kept and called through their own evaluate method.
+     * @param expression the expression to compile
+     * @return the program computing the same value as expression
+     */
+    public static EvaluationProgram compile(Expression expression) {
+        final Compiler compiler = new Compiler();
+        compiler.emit(expression);
+        return compiler.finish();
+    }
+
+    /**
+     * @return a new operand stack big enough to run this program
+     */
+    public double[] newStack() {
+        return new double[maxStack];
+    }
+
+    /**
+     * Given the value of the independent variable x, compute the value of the program.
+     * Allocates a new operand stack; use evaluate(x, stack) in loops.
+     * @param x the value of the independent variable x
+     * @return the value of the program
+     */
+    public double evaluate(double x) {
+        return evaluate(x, newStack());
+    }
+
+    /**
+     * Given the value of the independent variable x, compute the value of the program
+     * using the given operand stack.
+     * @param x the value of the independent variable x
+     * @param stack an operand stack obtained from newStack; its contents are overwritten
+     * @return the value of the program
+     */
+    public double evaluate(double x, double[] stack) {
+        final int[] code = this.code;
+        double top = 0; // the top of the operand stack is kept here rather than in the array
+        int below = -1; // where the element under it is
+        int pc = 0;
+        while (pc < code.length) {
+            switch (code[pc++]) {
+                case CONST:
+                    stack[++below] = top;
+                    top = constants[code[pc++]];
+                    break;
+                case VAR:
+                    stack[++below] = top;
+                    top = x;
+                    break;
+                case ADD:
+                    top = stack[below--] + top;
+                    break;
+                case SUB:
+                    top = stack[below--] - top;
+                    break;
+                case MUL:
+                    top = stack[below--] * top;
+                    break;
+                case DIV:
+                    top = stack[below--] / top;
+                    break;
+                case POW:
+                    top = Math.pow(stack[below--], top);
+                    break;
+                case LOG:
+                    top = Math.log(top);
+                    break;
+                case ADD_CONST:
+                    top = top + constants[code[pc++]];
+                    break;
+                case SUB_CONST:
+                    top = top - constants[code[pc++]];
+                    break;
+                case MUL_CONST:
+                    top = top * constants[code[pc++]];
+                    break;
+                case DIV_CONST:
+                    top = top / constants[code[pc++]];
+                    break;
+                case POW_CONST:
+                    top = Math.pow(top, constants[code[pc++]]);
+                    break;
+                case ADD_VAR:
+                    top = top + x;
+                    break;
+                case SUB_VAR:
+                    top = top - x;
+                    break;
+                case MUL_VAR:
+                    top = top * x;
+                    break;
+                case DIV_VAR:
+                    top = top / x;
+                    break;
+                case POW_VAR:
+                    top = Math.pow(top, x);
+                    break;
+                case SQUARE:
+                    top = top * top;
+                    break;
+                default: // CALL
+                    stack[++below] = top;
+                    top = calls[code[pc++]].evaluate(x);
+            }
+        }
+        return top;
+    }
+
+    @Override
+    public double applyAsDouble(double x) {
+        return evaluate(x);
+    }
+
+    /**
+     * @return the number of ints in the opcode stream
+     */
+    int codeLength() {
+        return code.length;
+    }
+
+    /**
+     * Builds the opcode stream by a post-order walk of the tree,
+     * tracking the stack depth to size the operand stack.
+     * The walk keeps its own stack of nodes, so trees too deep to recurse over compile too.
+     */
+    private static class Compiler {
+        // how far the walk has got with a node on its stack; SWAPPED is a + or * whose left operand is still to apply
+        private static final int ENTER = 0, RIGHT = 1, SWAPPED = 2, FINISH = 3;
+
+        private int[] code = new int[16];
+        private int length;
+        private double[] constants = new double[4];
+        private int constantCount;
+        private final Map<Double, Integer> constantIndex = new HashMap<>();
+        private final List<Expression> calls = new ArrayList<>();
+        private int depth;
+        private int maxDepth;
+        private Expression[] pending = new Expression[16];
+        private int[] stages = new int[16];
+        private int pendingCount;
+
+        void emit(Expression expression) {
+            schedule(expression, ENTER);
+            while (pendingCount > 0) {
+                final Expression node = pending[--pendingCount];
+                pending[pendingCount] = null;
+                final int stage = stages[pendingCount];
+                if (stage == ENTER) {
+                    enter(node);
+                } else if (stage == RIGHT) {
+                    emitRight(node);
+                } else if (stage == SWAPPED) {
+                    emitOperand(opcodeOf(node), skipParentheses(ExpressionTraversal.leftOf(node)));
+                } else if (opcodeOf(node) == LOG) {
+                    append(LOG);
+                } else {
+                    pop(opcodeOf(node));
+                }
+            }
+        }
+
+        private void enter(Expression expression) {
+            if (expression instanceof LiteralExpression) {
+                push(CONST, addConstant(((LiteralExpression) expression).getValue()));
+            } else if (VariableExpression.isIndependent(expression)) {
+                push(VAR);
+            } else if (expression instanceof ParentheticalExpression) {
+                schedule(((ParentheticalExpression) expression).getChild(), ENTER);
+            } else if (expression instanceof AdditiveExpression || expression instanceof MultiplicativeExpression
+                    || expression instanceof ExponentialExpression) {
+                final int opcode = opcodeOf(expression);
+                final Expression left = ExpressionTraversal.leftOf(expression);
+                // + and * give the same result either way round, so a literal or x on the left is folded like one on the right
+                if ((opcode == ADD || opcode == MUL) && isOperand(skipParentheses(left))
+                        && !isOperand(skipParentheses(ExpressionTraversal.rightOf(expression)))) {
+                    schedule(expression, SWAPPED);
+                    schedule(ExpressionTraversal.rightOf(expression), ENTER);
+                } else {
+                    schedule(expression, opcode == LOG ? FINISH : RIGHT);
+                    schedule(left, ENTER);
+                }
+            } else {
+                calls.add(expression);
+                push(CALL, calls.size() - 1);
+            }
+        }
+
+        /**
+         * Emits the right operand of a binary operator, once the left one is on the stack.
+         * A literal or x on the right is folded into the operator itself, saving a push and a dispatch.
+         */
+        private void emitRight(Expression expression) {
+            final Expression right = skipParentheses(ExpressionTraversal.rightOf(expression));
+            if (isOperand(right)) {
+                emitOperand(opcodeOf(expression), right);
+            } else {
+                schedule(expression, FINISH);
+                schedule(right, ENTER);
+            }
+        }
+
+        /**
+         * Emits a binary operator whose other operand is on the stack, fused with a literal or x.
+         */
+        private void emitOperand(int opcode, Expression operand) {
+            if (operand instanceof LiteralExpression) {
+                final double value = ((LiteralExpression) operand).getValue();
+                if (opcode == POW && value == 2) {
+                    append(SQUARE);
+                } else {
+                    append(opcode + ADD_CONST - ADD);
+                    append(addConstant(value));
+                }
+            } else {
+                append(opcode + ADD_VAR - ADD);
+            }
+        }
+
+        private static boolean isOperand(Expression expression) {
+            return expression instanceof LiteralExpression || VariableExpression.isIndependent(expression);
+        }
+
+        private static Expression skipParentheses(Expression expression) {
+            while (expression instanceof ParentheticalExpression) {
+                expression = ((ParentheticalExpression) expression).getChild();
+            }
+            return expression;
+        }
+
+        private static int opcodeOf(Expression expression) {
+            if (expression instanceof AdditiveExpression) {
+                return ((AdditiveExpression) expression).getOperator() == '+' ? ADD : SUB;
+            }
+            if (expression instanceof MultiplicativeExpression) {
+                return ((MultiplicativeExpression) expression).getOperator() == '*' ? MUL : DIV;
+            }
+            return ((ExponentialExpression) expression).getOperator() == 'l' ? LOG : POW;
+        }
+
+        private void schedule(Expression expression, int stage) {
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pendingCount * 2);
+                stages = Arrays.copyOf(stages, pendingCount * 2);
+            }
+            pending[pendingCount] = expression;
+            stages[pendingCount++] = stage;
+        }
+
+        EvaluationProgram finish() {
+            return new EvaluationProgram(Arrays.copyOf(code, length), Arrays.copyOf(constants, constantCount),
+                    calls.toArray(new Expression[0]), maxDepth);
+        }
+
+        private int addConstant(double value) {
+            final Integer index = constantIndex.get(value);
+            if (index != null) {
+                return index;
+            }
+            constantIndex.put(value, constantCount);
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            return constantCount++;
+        }
+
+        private void push(int... instruction) {
+            for (int word : instruction) {
+                append(word);
+            }
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private void pop(int opcode) {
+            append(opcode);
+            depth--;
+        }
+
+        private void append(int word) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = word;
+        }
+    }
+}
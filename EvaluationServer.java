@@ -0,0 +1,216 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves parsing, evaluation and differentiation to other local processes over HTTP, on the JDK's
+ * built-in server. Every endpoint takes a POST whose body starts with the expression on its first line,
+ * and answers in plain UTF-8 text:
+ * /parse answers the parse tree as convertToString(0) prints it;
+ * /evaluate takes the points to evaluate at on the following lines, separated by commas or whitespace,
+ * and answers the values, separated by commas, in the same order;
+ * /differentiate answers the tree of the derivative, simplified if the query is "simplify".
+ * An expression that does not parse, or a point that is not a number, is answered with 400 and the reason.
+ * Requests are handled on a fixed pool of threads.
+ * The JDK server writes the headers and the body of an answer separately, and with Nagle's algorithm the body
+ * then waits for the client's delayed ACK, some 40 ms per request on a kept-alive connection. main turns
+ * TCP_NODELAY on for it; a program embedding the server should run with -Dsun.net.httpserver.nodelay=true,
+ * or set NODELAY_PROPERTY before the first server is created, since the JDK reads it only once.
+ * Parsed expressions are compiled and kept in an ExpressionCache
+ * of MAX_CACHED_NODES nodes, which also keeps the derivatives it answers.
+ */
+public class EvaluationServer {
+    static final int DEFAULT_PORT = 8080;
+    static final long MAX_CACHED_NODES = 1 << 22;
+    static final int MAX_BODY_BYTES = 1 << 20;
+    static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ExpressionCache cache;
+
+    /**
+     * Creates a new EvaluationServer on the loopback address, with a thread per available processor,
+     * and at least 4. It does not accept requests until started. It leaves NODELAY_PROPERTY as it is,
+     * so answers on kept-alive connections are delayed unless the property was set to true.
+     * @param port the port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public EvaluationServer(int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), Math.max(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a new EvaluationServer. It does not accept requests until started.
+     * @param address the address to listen on
+     * @param threads how many requests may be handled at once
+     * @throws IOException if the address cannot be bound
+     */
+    public EvaluationServer(InetSocketAddress address, int threads) throws IOException {
+        final ExpressionParser parser = new SimpleExpressionParser();
+        cache = new ExpressionCache(string -> ExpressionCompiler.compile(parser.parse(string)), MAX_CACHED_NODES);
+        server = HttpServer.create(address, 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/parse", new Endpoint() {
+            @Override
+            String answer(Expression expression, String[] lines, String query) {
+                return expression.convertToString(0);
+            }
+        });
+        server.createContext("/evaluate", new Endpoint() {
+            @Override
+            String answer(Expression expression, String[] lines, String query) {
+                final double[] xs = parsePoints(lines);
+                final double[] values = new double[xs.length];
+                expression.evaluate(xs, values);
+                final StringBuilder answer = new StringBuilder();
+                for (int i = 0; i < values.length; i++) {
+                    answer.append(i == 0 ? "" : ",").append(values[i]);
+                }
+                return answer.append('\n').toString();
+            }
+        });
+        server.createContext("/differentiate", new Endpoint() {
+            @Override
+            String answer(Expression expression, String[] lines, String query) throws ExpressionParseException {
+                final Expression derivative = cache.differentiate(lines[0]);
+                return ("simplify".equals(query) ? ExpressionSimplifier.simplify(derivative) : derivative).convertToString(0);
+            }
+        });
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to delaySeconds for those in progress, and releases the threads.
+     * @param delaySeconds how long to wait for requests in progress
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * @return the port the server listens on, useful when it was created with port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the cache of compiled expressions and their derivatives
+     */
+    ExpressionCache getCache() {
+        return cache;
+    }
+
+    private static double[] parsePoints(String[] lines) {
+        final StringBuilder joined = new StringBuilder();
+        for (int i = 1; i < lines.length; i++) {
+            joined.append(lines[i]).append(' ');
+        }
+        final String points = joined.toString().trim();
+        if (points.isEmpty()) {
+            return new double[0];
+        }
+        final String[] strings = points.split("[,\\s]+");
+        final double[] xs = new double[strings.length];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = Double.parseDouble(strings[i]); // NumberFormatException is answered with 400
+        }
+        return xs;
+    }
+
+    /**
+     * Reads the body of a POST, looks up its expression and sends the answer, or the reason the request is bad.
+     */
+    private abstract class Endpoint implements HttpHandler {
+        /**
+         * @param expression the expression on the first line of the body
+         * @param lines the lines of the body, the first one being the expression
+         * @param query the query of the request URI, or null if there is none
+         * @return the body of the answer
+         */
+        abstract String answer(Expression expression, String[] lines, String query) throws ExpressionParseException;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", "POST");
+                    send(exchange, 405, "Only POST is supported\n");
+                    return;
+                }
+                final String body = readBody(exchange.getRequestBody());
+                if (body == null) {
+                    send(exchange, 413, "The body is longer than " + MAX_BODY_BYTES + " bytes\n");
+                    return;
+                }
+                final String[] lines = body.split("\r?\n");
+                final String answer;
+                try {
+                    answer = answer(cache.parse(lines[0]), lines, exchange.getRequestURI().getQuery());
+                } catch (ExpressionParseException | NumberFormatException | UnsupportedOperationException e) {
+                    send(exchange, 400, e.getMessage() + "\n");
+                    return;
+                }
+                send(exchange, 200, answer);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * @return the body as UTF-8, or null if it is longer than MAX_BODY_BYTES
+     */
+    private static String readBody(InputStream in) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        for (int read; (read = in.read(buffer)) >= 0; ) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_BODY_BYTES) {
+                return null;
+            }
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String answer) throws IOException {
+        final byte[] bytes = answer.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Runs a server on the loopback address until the process is killed:
+     * EvaluationServer [port]
+     */
+    public static void main(String[] args) throws IOException {
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        final EvaluationServer server = new EvaluationServer(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+        server.start();
+        System.out.println("Listening on http://localhost:" + server.getPort() + "/ (parse, evaluate, differentiate)");
+    }
+}
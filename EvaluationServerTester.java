@@ -0,0 +1,163 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks the HTTP evaluation service: the answers of each endpoint, the handling of bad requests,
+ * and, with a load generator, that many concurrent small requests are all answered correctly.
+ */
+public class EvaluationServerTester {
+	private ExpressionParser _parser;
+	private EvaluationServer _server;
+	private HttpClient _client;
+
+	@BeforeAll
+	public static void setUpAll () {
+		System.setProperty(EvaluationServer.NODELAY_PROPERTY, "true");
+	}
+
+	@BeforeEach
+	public void setUp () throws IOException {
+		_parser = new SimpleExpressionParser();
+		_server = new EvaluationServer(0);
+		_server.start();
+		_client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	}
+
+	@AfterEach
+	public void tearDown () {
+		_server.stop(0);
+	}
+
+	/**
+	 * Verifies the answers of each endpoint against the parser, and the status of bad requests.
+	 */
+	@Test
+	public void testEndpoints () throws Exception {
+		final String expression = "10*x^3 + 2*(15+x) - log(x)/x";
+		assertEquals(_parser.parse(expression).convertToString(0), post("/parse", expression).body());
+		assertEquals(_parser.parse(expression).differentiate().convertToString(0), post("/differentiate", expression).body());
+		assertEquals(ExpressionSimplifier.simplify(_parser.parse(expression).differentiate()).convertToString(0),
+				post("/differentiate?simplify", expression).body());
+
+		final Expression parsed = _parser.parse(expression);
+		assertEquals(parsed.evaluate(0.5) + "," + parsed.evaluate(2) + "," + parsed.evaluate(-1) + "\n",
+				post("/evaluate", expression + "\n0.5, 2\n-1").body());
+		assertEquals("\n", post("/evaluate", expression).body());
+
+		assertEquals(400, post("/parse", "x +* 2").statusCode());
+		assertEquals(400, post("/evaluate", "x\n1, two").statusCode());
+		assertEquals(405, _client.send(HttpRequest.newBuilder(uri("/parse")).GET().build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+		assertEquals(404, post("/integrate", "x").statusCode());
+
+		assertSame(_server.getCache().parse("2*x + 1"), _server.getCache().parse(" 2 * x+1 "));
+		assertEquals("1e -5 x y", ExpressionTokenizer.normalize(" 1e -5  x\ty "));
+	}
+
+	/**
+	 * Generates load: concurrent clients, each on its own kept-alive connection, send many small evaluation
+	 * requests over a few expressions as fast as they are answered, and every answer is verified.
+	 * The clients speak HTTP/1.1 over plain sockets, so that the client side costs little next to the server.
+	 */
+	@Test
+	public void testLoad () throws Exception {
+		final String[] expressions = { "x^2 - 4*x", "log(x) * 3", "(x+1)/(x-1)", "2^x" };
+		final Expression[] parsed = new Expression[expressions.length];
+		for (int i = 0; i < expressions.length; i++) {
+			parsed[i] = _parser.parse(expressions[i]);
+		}
+		final int clients = 8, requestsPerClient = 2000;
+		final List<CompletableFuture<Void>> done = new ArrayList<>();
+		final ExecutorService executor = Executors.newFixedThreadPool(clients);
+		for (int client = 0; client < clients; client++) {
+			final int seed = client;
+			done.add(CompletableFuture.runAsync(() -> {
+				try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), _server.getPort())) {
+					socket.setTcpNoDelay(true);
+					final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+					final InputStream in = new BufferedInputStream(socket.getInputStream());
+					for (int i = 0; i < requestsPerClient; i++) {
+						final int e = (seed + i) % expressions.length;
+						final double x = seed + i * 0.01;
+						final byte[] body = (expressions[e] + "\n" + x).getBytes(StandardCharsets.UTF_8);
+						out.write(("POST /evaluate HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + body.length + "\r\n\r\n")
+								.getBytes(StandardCharsets.US_ASCII));
+						out.write(body);
+						out.flush();
+						final String response = readResponse(in);
+						assertEquals(parsed[e].evaluate(x), Double.parseDouble(response.trim()));
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, executor));
+		}
+		try {
+			CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).join();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Reads one response with a Content-Length, and checks that its status is 200.
+	 * @return its body
+	 */
+	private static String readResponse (InputStream in) throws IOException {
+		final String status = readLine(in);
+		assertEquals("HTTP/1.1 200 OK", status);
+		int length = -1;
+		for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+			if (line.toLowerCase().startsWith("content-length:")) {
+				length = Integer.parseInt(line.substring("content-length:".length()).trim());
+			}
+		}
+		return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+	}
+
+	private static String readLine (InputStream in) throws IOException {
+		final StringBuilder line = new StringBuilder();
+		for (int c = in.read(); c != '\n'; c = in.read()) {
+			if (c < 0) {
+				throw new EOFException();
+			}
+			if (c != '\r') {
+				line.append((char) c);
+			}
+		}
+		return line.toString();
+	}
+
+	private HttpResponse<String> post (String path, String body) throws IOException, InterruptedException {
+		return _client.send(HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+				HttpResponse.BodyHandlers.ofString());
+	}
+
+	private URI uri (String path) {
+		return URI.create("http://localhost:" + _server.getPort() + path);
+	}
+}
@@ -1,7 +1,11 @@
+import java.io.IOException;
+import java.util.Objects;
+
 public class ExponentialExpression extends OperationHandler implements Expression {
     private final Expression leftChild;
-    private Expression rightChild;
+    private final Expression rightChild;
     private final char operator;
+    private final int hash;
 
     /**
      * Creates a new ExponentialExpression with the ^ operator.
@@ -9,9 +13,11 @@ public class ExponentialExpression extends OperationHandler implements Expressio
      * @param right the part of the expression to the right of the operator
      */
     public ExponentialExpression(Expression left, Expression right) {
+        super(left, right);
         this.leftChild = left;
         this.rightChild = right;
         this.operator = '^';
+        this.hash = (operator * 31 + left.hashCode()) * 31 + right.hashCode();
     }
 
     /**
@@ -20,8 +26,56 @@ public class ExponentialExpression extends OperationHandler implements Expressio
      * the left child will be used for the log and the right one will be ignored
      */
     public ExponentialExpression(Expression exp) {
+        super(exp, null);
         this.leftChild = exp;
+        this.rightChild = null;
         this.operator = 'l'; // log
+        this.hash = (operator * 31 + exp.hashCode()) * 31;
+    }
+
+    /**
+     * Creates a new ExponentialExpression with the ^ operator, specialized so that evaluating it does not
+     * switch on the operator character; a literal exponent is read once here instead of at every evaluation.
+     * @param left the part of the expression to the left of the operator
+     * @param right the part of the expression to the right of the operator
+     * @return the new expression
+     */
+    static ExponentialExpression create(Expression left, Expression right) {
+        final ExponentialExpression node = right instanceof LiteralExpression
+                ? new ConstantPower(left, (LiteralExpression) right) : new Power(left, right);
+        // the generic node checks its height when evaluated, for trees too deep to recurse over
+        return node.isDeep() ? new ExponentialExpression(left, right) : node;
+    }
+
+    /**
+     * Creates a new ExponentialExpression with the log operator, specialized like create.
+     * @param exp the expression to take the log of
+     * @return the new expression
+     */
+    static ExponentialExpression createLog(Expression exp) {
+        final ExponentialExpression node = new Log(exp);
+        return node.isDeep() ? new ExponentialExpression(exp) : node;
+    }
+
+    /**
+     * @return the part of the expression to the left of the operator
+     */
+    Expression getLeftChild() {
+        return leftChild;
+    }
+
+    /**
+     * @return the part of the expression to the right of the operator, or null for log
+     */
+    Expression getRightChild() {
+        return rightChild;
+    }
+
+    /**
+     * @return the operator, '^' or 'l' for log
+     */
+    char getOperator() {
+        return operator;
     }
 
     /**
@@ -33,10 +87,13 @@ public class ExponentialExpression extends OperationHandler implements Expressio
      */
     @Override
     public Expression deepCopy() {
+        if (isDeep()) {
+            return ExpressionTraversal.deepCopy(this);
+        }
         if (operator == 'l') {
-            return new ExponentialExpression(leftChild.deepCopy());
+            return ExponentialExpression.createLog(leftChild.deepCopy());
         } else {
-            return new ExponentialExpression(leftChild.deepCopy(), rightChild.deepCopy());
+            return ExponentialExpression.create(leftChild.deepCopy(), rightChild.deepCopy());
         }
     }
 
@@ -51,7 +108,23 @@ public class ExponentialExpression extends OperationHandler implements Expressio
      */
     @Override
     public String convertToString(int indentLevel) {
-        return opToString(indentLevel, operator, leftChild, rightChild);
+        return convertToString(this, indentLevel);
+    }
+
+    /**
+     * Appends the String representation of this expression to out, as convertToString would produce it.
+     *
+     * @param out where to append the String representation
+     * @param indentLevel how many tab characters should appear at the beginning of each line.
+     * @throws IOException if out throws it
+     */
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        if (isDeep()) {
+            ExpressionTraversal.appendTo(this, out, indentLevel);
+            return;
+        }
+        appendOperation(out, indentLevel, operator, leftChild, rightChild);
     }
 
     /**
@@ -62,9 +135,106 @@ public class ExponentialExpression extends OperationHandler implements Expressio
      */
     @Override
     public double evaluate(double x) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluate(this, x);
+        }
         return operation(leftChild, rightChild, operator, x);
     }
 
+    /**
+     * Computes the value of this expression with the variables read from env.
+     *
+     * @param env the value of every variable, indexed by slot
+     * @return the value of this expression.
+     */
+    @Override
+    public double evaluate(double[] env) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluate(this, env);
+        }
+        return operation(leftChild, rightChild, operator, env);
+    }
+
+    /**
+     * Computes the value of this expression at each of the given values of x.
+     *
+     * @param xs the values of the independent variable x
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double[] xs, double[] out) {
+        if (isDeep()) {
+            ExpressionTraversal.evaluate(this, xs, out);
+            return;
+        }
+        operation(leftChild, rightChild, operator, xs, out);
+    }
+
+    /**
+     * Computes the value of this expression at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double from, double step, int n, double[] out) {
+        if (isDeep()) {
+            ExpressionTraversal.evaluate(this, from, step, n, out);
+            return;
+        }
+        operation(leftChild, rightChild, operator, from, step, n, out);
+    }
+
+    /**
+     * Given the value of the independent variable x, compute the value of this expression
+     * and of its derivative together.
+     *
+     * @param x the value of the independent variable x
+     * @return the value of this expression and of its derivative
+     */
+    @Override
+    public DualNumber evaluateWithDerivative(double x) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluateWithDerivative(this, x);
+        }
+        return dualOperation(leftChild, rightChild, operator, x);
+    }
+
+    /**
+     * Computes the value of this expression and of its derivative at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param values where to store the values of the expression
+     * @param derivatives where to store the values of the derivative
+     */
+    @Override
+    public void evaluateWithDerivative(double from, double step, int n, double[] values, double[] derivatives) {
+        if (isDeep()) {
+            ExpressionTraversal.evaluateWithDerivative(this, from, step, n, values, derivatives);
+            return;
+        }
+        dualOperation(leftChild, rightChild, operator, from, step, n, values, derivatives);
+    }
+
+    /**
+     * Computes bounds of the values of this expression for every x in [lo, hi].
+     *
+     * @param lo the smallest value of the independent variable x
+     * @param hi the largest value of the independent variable x
+     * @return bounds of the values of this expression
+     */
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluateInterval(this, lo, hi);
+        }
+        return intervalOperation(leftChild, rightChild, operator, lo, hi);
+    }
+
     /**
      * Produce a new, fully independent (i.e., there should be no shared subtrees) Expression
      * representing the derivative of this expression.
@@ -73,53 +243,179 @@ public class ExponentialExpression extends OperationHandler implements Expressio
      */
     @Override
     public Expression differentiate() {
+        if (isDeep()) {
+            return ExpressionTraversal.differentiate(this);
+        }
+        return differentiate(ExpressionTraversal.operandsOf(this, 0));
+    }
+
+    /**
+     * The rules of differentiate(), reading the children and their derivatives from operands.
+     * @param operands the children of this node and their derivatives
+     * @return the derivative of this expression
+     */
+    Expression differentiate(ExpressionTraversal.Operands operands) {
         if (operator == 'l') {
-            return new MultiplicativeExpression(leftChild.differentiate(), leftChild.deepCopy(), '/');
+            return MultiplicativeExpression.create(operands.derivative(0), operands.child(0), '/');
         } else {
             // If function f(x)=C^h(x) (where C is a positive constant),
             // then its derivative is f'(x)=(log C) C^h(x) h'(x),
             // where log is the natural logarithm function.
-            if (leftChild instanceof LiteralExpression) {
-                return new MultiplicativeExpression(new MultiplicativeExpression( // (log C) C^h(x)
-                        new ExponentialExpression(leftChild.deepCopy()), // log C
-                        new ExponentialExpression(leftChild.deepCopy(), // C^h(x)
-                                rightChild.deepCopy()), '*'),
-                        rightChild.differentiate(), '*'); // h'(x)
+            final Expression base = operands.child(0);
+            if (base instanceof LiteralExpression) {
+                return MultiplicativeExpression.create(MultiplicativeExpression.create( // (log C) C^h(x)
+                        ExponentialExpression.createLog(base), // log C
+                        ExponentialExpression.create(operands.child(0), // C^h(x)
+                                operands.child(1)), '*'),
+                        operands.derivative(1), '*'); // h'(x)
             }
 
             // If function f(x)=g(x)^C (where C is a constant), then its derivative is f'(x)=C * g(x)^(C-1) * g'(x).
-            if (rightChild instanceof LiteralExpression) {
-                return new MultiplicativeExpression(new MultiplicativeExpression( // C*g(x)^(C-1)
-                        rightChild.deepCopy(), // C
-                        new ExponentialExpression( // g(x)^(C-1)
-                                leftChild.deepCopy(),
-                                new AdditiveExpression(
-                                        rightChild.deepCopy(),
+            // C need not be a literal, nor free of other variables: the general rule below would multiply log g(x)
+            // by h'(x)=0, which is NaN where g(x) <= 0.
+            if (operands.isConstant(1)) {
+                final Expression exponent = operands.child(1);
+                if (ExpressionTraversal.isConstant(exponent) && exponent.evaluate(0) == 0) { // g(x)^0 is 1 even where g(x) is 0, as Math.pow has it
+                    return new LiteralExpression("0");
+                }
+                return MultiplicativeExpression.create(MultiplicativeExpression.create( // C*g(x)^(C-1)
+                        exponent, // C
+                        ExponentialExpression.create( // g(x)^(C-1)
+                                base,
+                                AdditiveExpression.create(
+                                        operands.child(1),
                                         new LiteralExpression("1"),
                                         '-')
                         ),
                         '*'),
-                        leftChild.differentiate(), // g'(x)
+                        operands.derivative(0), // g'(x)
                         '*');
             }
 
-            // If function f(x)=g(x)^h(x) then its derivative is f'(x)=(g(x)^h(x)) (h'(x)g(x) + g'(x)h(x)/g(x)).
-            return new MultiplicativeExpression(
-                new ExponentialExpression(leftChild.deepCopy(), rightChild.deepCopy()), // g(x)^h(x)
-                new AdditiveExpression( // h'(x)g(x) + g'(x)h(x)/g(x)
-                    new MultiplicativeExpression( // h'(x)g(x)
-                            leftChild.differentiate(),
-                            rightChild.deepCopy(),
-                            '*'),
-                        new MultiplicativeExpression( // g'(x)h(x)/g(x)
-                            new MultiplicativeExpression( // g'(x)h(x)
-                                    rightChild.differentiate(),
-                                    leftChild.deepCopy(), '*'),
-                            rightChild.deepCopy(), // g(x)
-                            '/'
-                    ),
-                        '+'),
+            // If function f(x)=g(x)^h(x) then its derivative is f'(x)=(g(x)^h(x)) (h'(x) log g(x) + h(x)g'(x)/g(x)).
+            return MultiplicativeExpression.create(
+                    ExponentialExpression.create(base, operands.child(1)), // g(x)^h(x)
+                    AdditiveExpression.create( // h'(x) log g(x) + h(x)g'(x)/g(x)
+                            MultiplicativeExpression.create( // h'(x) log g(x)
+                                    operands.derivative(1),
+                                    ExponentialExpression.createLog(operands.child(0)),
+                                    '*'),
+                            MultiplicativeExpression.create( // h(x)g'(x)/g(x)
+                                    MultiplicativeExpression.create( // h(x)g'(x)
+                                            operands.child(1),
+                                            operands.derivative(0), '*'),
+                                    operands.child(0), // g(x)
+                                    '/'),
+                            '+'),
                     '*');
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Produce a new, fully independent Expression representing the partial derivative of this
+     * expression with respect to the variable in the given slot, by the same rules as differentiate().
+     *
+     * @param slot the slot of the variable to differentiate by
+     * @return the partial derivative of this expression
+     */
+    @Override
+    public Expression differentiate(int slot) {
+        if (isDeep()) {
+            return ExpressionTraversal.differentiate(this, slot);
+        }
+        return differentiate(ExpressionTraversal.operandsOf(this, slot));
+    }
+
+    /**
+     * Two expressions are equal if they have the same structure: the same operator and equal children.
+     *
+     * @param o the object to compare with
+     * @return whether o is structurally equal to this expression
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ExponentialExpression) || hashCode() != o.hashCode()) {
+            return false;
+        }
+        if (isDeep()) {
+            return ExpressionTraversal.equals(this, o);
+        }
+        final ExponentialExpression other = (ExponentialExpression) o;
+        return operator == other.operator && leftChild.equals(other.leftChild)
+                && Objects.equals(rightChild, other.rightChild);
+    }
+
+    /**
+     * Computed when the node is built, from the hash codes its children hold, so it costs the same for any tree.
+     *
+     * @return a hash code consistent with equals
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+
+    /**
+     * left ^ right
+     */
+    private static final class Power extends ExponentialExpression {
+        Power(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public double evaluate(double x) {
+            return Math.pow(super.leftChild.evaluate(x), super.rightChild.evaluate(x));
+        }
+
+        @Override
+        public double evaluate(double[] env) {
+            return Math.pow(super.leftChild.evaluate(env), super.rightChild.evaluate(env));
+        }
+    }
+
+    /**
+     * left ^ c for a literal c
+     */
+    private static final class ConstantPower extends ExponentialExpression {
+        private final double exponent;
+
+        ConstantPower(Expression left, LiteralExpression right) {
+            super(left, right);
+            this.exponent = right.getValue();
+        }
+
+        @Override
+        public double evaluate(double x) {
+            return Math.pow(super.leftChild.evaluate(x), exponent);
+        }
+
+        @Override
+        public double evaluate(double[] env) {
+            return Math.pow(super.leftChild.evaluate(env), exponent);
+        }
+    }
+
+    /**
+     * log(left)
+     */
+    private static final class Log extends ExponentialExpression {
+        Log(Expression exp) {
+            super(exp);
+        }
+
+        @Override
+        public double evaluate(double x) {
+            return Math.log(super.leftChild.evaluate(x));
+        }
+
+        @Override
+        public double evaluate(double[] env) {
+            return Math.log(super.leftChild.evaluate(env));
+        }
+    }
+}
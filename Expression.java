@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 //import javafx.scene.layout.*;
 //import javafx.scene.paint.Color;
 //import javafx.scene.Node;
@@ -22,6 +24,15 @@ interface Expression {
 	 */
 	String convertToString (int indentLevel);
 
+	/**
+	 * Appends the same String representation that convertToString produces to out, without building
+	 * a String for every subtree. Pass a Writer to stream the representation of a large tree.
+	 * @param out where to append the String representation
+	 * @param indentLevel how many tab characters should appear at the beginning of each line.
+	 * @throws IOException if out throws it
+	 */
+	void appendTo (Appendable out, int indentLevel) throws IOException;
+
 	/**
 	 * Given the value of the independent variable x, compute the value of this expression.
 	 * @param x the value of the independent variable x
@@ -29,10 +40,74 @@ interface Expression {
 	 */
 	double evaluate (double x);
 
+	/**
+	 * Computes the value of this expression with each variable read from env at the slot the parser
+	 * assigned to it. The independent variable x is slot 0, so evaluate(new double[] { x }) is evaluate(x).
+	 * Variables are never looked up by name here.
+	 * @param env the value of every variable, indexed by slot
+	 * @return the value of this expression.
+	 */
+	double evaluate (double[] env);
+
+	/**
+	 * Computes the value of this expression at each of the given values of x.
+	 * Operators are applied to whole arrays at a time rather than point by point.
+	 * @param xs the values of the independent variable x
+	 * @param out where to store the results: out[i] is the value at xs[i]. Must be at least as long as xs.
+	 */
+	void evaluate (double[] xs, double[] out);
+
+	/**
+	 * Computes the value of this expression at the n evenly spaced values x = from + i*step.
+	 * @param from the first value of x
+	 * @param step the distance between consecutive values of x
+	 * @param n how many values to compute
+	 * @param out where to store the results: out[i] is the value at from + i*step. Must be at least n long.
+	 */
+	void evaluate (double from, double step, int n, double[] out);
+
+	/**
+	 * Given the value of the independent variable x, compute the value of this expression and of its
+	 * derivative together, in a single pass over the tree and without building the derivative tree.
+	 * @param x the value of the independent variable x
+	 * @return the value of this expression and of its derivative
+	 */
+	DualNumber evaluateWithDerivative (double x);
+
+	/**
+	 * Computes the value of this expression and of its derivative at the n evenly spaced values x = from + i*step.
+	 * @param from the first value of x
+	 * @param step the distance between consecutive values of x
+	 * @param n how many values to compute
+	 * @param values where to store the values of the expression. Must be at least n long.
+	 * @param derivatives where to store the values of the derivative. Must be at least n long.
+	 */
+	void evaluateWithDerivative (double from, double step, int n, double[] values, double[] derivatives);
+
+	/**
+	 * Computes bounds of the values this expression takes for every x in [lo, hi], by interval arithmetic
+	 * in one pass over the tree. The bounds are guaranteed but may be wider than the true range,
+	 * most of all when x appears more than once; they are tighter the narrower [lo, hi] is.
+	 * Points where the expression is undefined are left out.
+	 * @param lo the smallest value of the independent variable x
+	 * @param hi the largest value of the independent variable x
+	 * @return bounds of the values of this expression, EMPTY if it is undefined throughout
+	 */
+	Interval evaluateInterval (double lo, double hi);
+
 	/**
 	 * Produce a new, fully independent (i.e., there should be no shared subtrees) Expression
 	 * representing the derivative of this expression.
 	 * @return the derivative of this expression
 	 */
 	Expression differentiate ();
+
+	/**
+	 * Produce a new, fully independent Expression representing the partial derivative of this
+	 * expression with respect to the variable in the given slot; every other variable is a constant.
+	 * differentiate(0) is differentiate().
+	 * @param slot the slot of the variable to differentiate by
+	 * @return the partial derivative of this expression
+	 */
+	Expression differentiate (int slot);
 }
@@ -0,0 +1,197 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache in front of an ExpressionParser, so that parsing a string seen before costs a lookup.
+ * Strings are keyed by ExpressionTokenizer.normalize, so strings differing only in whitespace share an entry.
+ * The derivative of each cached expression is computed on first request and kept with it. Derivatives are built
+ * by an ExpressionInterner, which differentiates each distinct subexpression once and shares the repeated subtrees
+ * that differentiate() would copy; they print and evaluate as differentiate()'s do.
+ * Entries are weighed by their node count, of the expression and of its derivative once computed, and the
+ * least recently used entries are evicted once the cache holds more than its node budget; this bounds memory
+ * better than an entry count, since derivatives of long formulas can be thousands of times larger than the
+ * formulas. An expression heavier than the whole budget is returned but not kept.
+ * Strings that do not parse are not cached. The cache is thread-safe: parsing and differentiating run
+ * outside its lock, so two threads missing on the same string at once may both parse it, and the first result is kept.
+ * Cached expressions are handed to every caller asking for the same string, so they must not be modified.
+ */
+public class ExpressionCache implements ExpressionParser {
+    static final long DEFAULT_MAX_NODES = 1 << 20;
+    private static final int ENTRY_OVERHEAD_NODES = 8; // key, map entry and entry object, in nodes' worth of memory
+
+    private final ExpressionParser parser;
+    private final long maxNodes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ExpressionInterner interner = new ExpressionInterner();
+    private long nodes;
+    private long hits, misses, evictions;
+
+    /**
+     * Creates a new ExpressionCache with the default node budget in front of a SimpleExpressionParser.
+     */
+    public ExpressionCache() {
+        this(new SimpleExpressionParser(), DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * Creates a new ExpressionCache.
+     * @param parser the parser to parse strings that are not cached; it must be thread-safe
+     * @param maxNodes how many nodes, of cached expressions and derivatives together, the cache may hold
+     */
+    public ExpressionCache(ExpressionParser parser, long maxNodes) {
+        this.parser = parser;
+        this.maxNodes = maxNodes;
+    }
+
+    private static class Entry {
+        final Expression expression;
+        final int expressionNodes;
+        Expression derivative; // null until first requested; guarded by the cache
+        int derivativeNodes;
+
+        Entry(Expression expression, int expressionNodes) {
+            this.expression = expression;
+            this.expressionNodes = expressionNodes;
+        }
+
+        long weight() {
+            return ENTRY_OVERHEAD_NODES + expressionNodes + derivativeNodes;
+        }
+    }
+
+    /**
+     * Returns the cached expression for the string, parsing it only if it is not cached.
+     * @param str the string to parse
+     * @return the expression
+     * @throws ExpressionParseException if the string does not parse
+     */
+    @Override
+    public Expression parse(String str) throws ExpressionParseException {
+        return entryOf(ExpressionTokenizer.normalize(str), true).expression;
+    }
+
+    /**
+     * Returns the derivative of the cached expression for the string, parsing and differentiating only
+     * what is not cached yet.
+     * @param str the string to parse
+     * @return the derivative of the expression, equal to what differentiate() builds but with repeated subtrees shared
+     * @throws ExpressionParseException if the string does not parse
+     */
+    public Expression differentiate(String str) throws ExpressionParseException {
+        final String key = ExpressionTokenizer.normalize(str);
+        final Entry entry = entryOf(key, false);
+        synchronized (this) {
+            if (entry.derivative != null) {
+                hits++;
+                return entry.derivative;
+            }
+            misses++;
+        }
+        final Expression expression = entry.expression instanceof CompiledExpression
+                ? ((CompiledExpression) entry.expression).getExpression() : entry.expression; // as its differentiate() does
+        final Expression derivative = interner.differentiate(expression);
+        final int derivativeNodes = ExpressionSimplifier.countNodes(derivative);
+        synchronized (this) {
+            if (entry.derivative != null) {
+                return entry.derivative;
+            }
+            entry.derivative = derivative;
+            entry.derivativeNodes = derivativeNodes;
+            if (entries.get(key) == entry) { // only count it if the entry is still cached
+                nodes += derivativeNodes;
+                evict();
+            }
+        }
+        return derivative;
+    }
+
+    /**
+     * @param counted whether the lookup counts as a hit or a miss, as it does not when only looking for the derivative
+     */
+    private Entry entryOf(String key, boolean counted) throws ExpressionParseException {
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                hits += counted ? 1 : 0;
+                return entry;
+            }
+            misses += counted ? 1 : 0;
+        }
+        final Expression expression = parser.parse(key);
+        final Entry entry = new Entry(expression, ExpressionSimplifier.countNodes(expression));
+        synchronized (this) {
+            final Entry raced = entries.get(key);
+            if (raced != null) {
+                return raced;
+            }
+            if (entry.weight() <= maxNodes) {
+                entries.put(key, entry);
+                nodes += entry.weight();
+                evict();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is within its budget.
+     */
+    private void evict() {
+        final Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (nodes > maxNodes && eldest.hasNext()) {
+            nodes -= eldest.next().getValue().weight();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * @return how many parse and differentiate requests were answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return how many parse and differentiate requests had to parse or differentiate
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return how many entries were evicted to stay within the node budget
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return roughly how many nodes the cache holds, counting ENTRY_OVERHEAD_NODES for every entry
+     */
+    public synchronized long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return how many strings are cached
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Empties the cache. The statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        nodes = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ExpressionCache[entries=" + entries.size() + ", nodes=" + nodes + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the expression cache: that strings differing in whitespace share an entry, that derivatives are kept,
+ * that the least recently used entries are evicted by node count, and that it holds up under concurrent use.
+ */
+public class ExpressionCacheTester {
+	private ExpressionParser _parser;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser();
+	}
+
+	/**
+	 * Verifies that a string is parsed and differentiated once, whatever its whitespace, that the answers
+	 * match the parser's, and that strings that do not parse are not cached, even if they would once their
+	 * whitespace is removed.
+	 */
+	@Test
+	public void testHits () throws ExpressionParseException {
+		final ExpressionCache cache = new ExpressionCache();
+		final String string = "10*x^3 + 2*(15+x) - log(x)/x";
+		final Expression expression = cache.parse(string);
+		assertEquals(_parser.parse(string).convertToString(0), expression.convertToString(0));
+		assertSame(expression, cache.parse(" 10 * x ^ 3+2*( 15 + x )-log(x) / x\t"));
+		assertNotSame(expression, cache.parse("10*x^3 + 2*(15+x) - log(x)/(x)"));
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+
+		final Expression derivative = cache.differentiate(string);
+		assertEquals(_parser.parse(string).differentiate().convertToString(0), derivative.convertToString(0));
+		assertEquals(_parser.parse(string).differentiate(), derivative);
+		assertSame(derivative, cache.differentiate(string));
+		assertEquals(2, cache.size());
+		assertEquals(weightOf(string) + weightOf("10*x^3 + 2*(15+x) - log(x)/(x)") + ExpressionSimplifier.countNodes(derivative),
+				cache.getNodes());
+
+		assertThrows(ExpressionParseException.class, () -> cache.parse("x +* 2"));
+		assertThrows(ExpressionParseException.class, () -> cache.differentiate("x +* 2"));
+		// the space keeps the exponent apart from the number, which the parser rejects, so it must stay
+		assertEquals(200000, cache.parse("2e+5").evaluate(0));
+		assertThrows(ExpressionParseException.class, () -> cache.parse("2e+ 5"));
+		assertThrows(ExpressionParseException.class, () -> cache.parse("0x1p- 3"));
+		assertEquals(3, cache.size());
+		assertEquals(0, cache.getEvictions());
+	}
+
+	/**
+	 * Verifies that the least recently used entries are evicted once the node budget is exceeded, that a
+	 * derivative counts towards it, and that an expression heavier than the budget is not kept.
+	 */
+	@Test
+	public void testEviction () throws ExpressionParseException {
+		final String[] strings = { "x + 1", "x + 2", "x + 3", "x*x", "x^2 + x^3 + x^4 + x^5 + x^6 + x^7 + x^8 + x^9 + x^10" };
+		final int derivativeNodes = ExpressionSimplifier.countNodes(_parser.parse("x*x").differentiate());
+		long total = 0;
+		for (String string : strings) {
+			total += weightOf(string);
+		}
+		// room for everything but the derivative of x*x, which is larger than the spare room and smaller than x + 2
+		final long budget = total + derivativeNodes - 1;
+		assertTrue(derivativeNodes > 1 && derivativeNodes - 1 < weightOf("x + 2"));
+		final ExpressionCache cache = new ExpressionCache(_parser, budget);
+		final Expression a = cache.parse(strings[0]);
+		for (int i = 1; i < strings.length; i++) {
+			cache.parse(strings[i]);
+		}
+		assertSame(a, cache.parse("x + 1")); // now the most recently used
+		assertEquals(total, cache.getNodes());
+		assertEquals(0, cache.getEvictions());
+
+		cache.differentiate("x*x"); // pushes the cache over its budget, which evicts x + 2 alone
+		assertEquals(1, cache.getEvictions());
+		assertEquals(total - weightOf("x + 2") + derivativeNodes, cache.getNodes());
+		final long misses = cache.getMisses();
+		assertSame(a, cache.parse("x + 1"));
+		cache.parse("x + 3");
+		assertEquals(misses, cache.getMisses());
+		cache.parse("x + 2");
+		assertEquals(misses + 1, cache.getMisses(), "the least recently used entry is evicted first");
+
+		final String deep = "(".repeat(100000) + "x" + ")".repeat(100000);
+		assertEquals(100001, ExpressionSimplifier.countNodes(_parser.parse(deep)));
+		final Expression heavy = cache.parse(deep);
+		assertNotSame(heavy, cache.parse(deep));
+		assertTrue(cache.getNodes() <= budget);
+	}
+
+	/**
+	 * Verifies that concurrent clients parsing and differentiating an overlapping set of strings all get
+	 * correct answers, and that the cache stays within its budget.
+	 */
+	@Test
+	public void testConcurrent () throws ExpressionParseException {
+		final ExpressionCache cache = new ExpressionCache(_parser, 2000);
+		final List<CompletableFuture<Void>> done = new ArrayList<>();
+		for (int client = 0; client < 8; client++) {
+			final int seed = client;
+			done.add(CompletableFuture.runAsync(() -> {
+				for (int i = 0; i < 2000; i++) {
+					final int k = (seed * 7 + i) % 97;
+					final String string = k + "*x^2 - log(x + " + k + ")";
+					try {
+						assertEquals(k * 4 - Math.log(2 + k), cache.parse(string).evaluate(2), 1e-12);
+						assertEquals(k * 4 - 1 / (2.0 + k), cache.differentiate(string).evaluate(2), 1e-12);
+					} catch (ExpressionParseException e) {
+						throw new AssertionError(e);
+					}
+				}
+			}));
+		}
+		CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).join();
+		assertTrue(cache.getNodes() <= 2000, cache.toString());
+		assertEquals(8 * 2000 * 2, cache.getHits() + cache.getMisses());
+		assertTrue(cache.getEvictions() > 0);
+	}
+
+	/**
+	 * @return how much an entry for the string weighs in the cache, without its derivative
+	 */
+	private long weightOf (String string) throws ExpressionParseException {
+		return 8 + ExpressionSimplifier.countNodes(_parser.parse(string));
+	}
+}
@@ -0,0 +1,132 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Compiles expression trees into MethodHandle chains so that evaluating them no longer
+ * walks the tree or dispatches on the operator character at every node.
+ * Literals are bound into the chain as constants. Nodes the compiler does not know about,
+ * and subtrees nested deeper than MAX_DEPTH, are evaluated by calling their own evaluate method.
+ */
+public class ExpressionCompiler {
+    static final int MAX_DEPTH = 200;
+
+    private static final MethodType UNARY = MethodType.methodType(double.class, double.class);
+    private static final MethodType BINARY = MethodType.methodType(double.class, double.class, double.class);
+    private static final MethodHandle ADD, SUBTRACT, MULTIPLY, DIVIDE, POW, LOG, EVALUATE;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ADD = lookup.findStatic(ExpressionCompiler.class, "add", BINARY);
+            SUBTRACT = lookup.findStatic(ExpressionCompiler.class, "subtract", BINARY);
+            MULTIPLY = lookup.findStatic(ExpressionCompiler.class, "multiply", BINARY);
+            DIVIDE = lookup.findStatic(ExpressionCompiler.class, "divide", BINARY);
+            POW = lookup.findStatic(Math.class, "pow", BINARY);
+            LOG = lookup.findStatic(Math.class, "log", UNARY);
+            EVALUATE = lookup.findVirtual(Expression.class, "evaluate", UNARY);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private ExpressionCompiler() {
+    }
+
+    /**
+     * Compiles the given expression. The result behaves exactly like the original expression
+     * but evaluates through the compiled MethodHandle chain.
+     * @param expression the expression to compile
+     * @return the compiled expression
+     */
+    public static CompiledExpression compile(Expression expression) {
+        if (expression instanceof CompiledExpression) {
+            return (CompiledExpression) expression;
+        }
+        return new CompiledExpression(expression, toMethodHandle(expression));
+    }
+
+    /**
+     * Builds a MethodHandle of type (double)double that computes the value of the expression.
+     * @param expression the expression to compile
+     * @return the compiled handle
+     */
+    static MethodHandle toMethodHandle(Expression expression) {
+        return toMethodHandle(expression, 0);
+    }
+
+    private static MethodHandle toMethodHandle(Expression expression, int depth) {
+        if (depth > MAX_DEPTH) {
+            return interpreted(expression);
+        }
+        if (expression instanceof LiteralExpression) {
+            return constant(((LiteralExpression) expression).getValue());
+        }
+        if (VariableExpression.isIndependent(expression)) {
+            return MethodHandles.identity(double.class);
+        }
+        if (expression instanceof ParentheticalExpression) {
+            return toMethodHandle(((ParentheticalExpression) expression).getChild(), depth + 1);
+        }
+        if (expression instanceof AdditiveExpression) {
+            final AdditiveExpression additive = (AdditiveExpression) expression;
+            return binary(additive.getOperator() == '+' ? ADD : SUBTRACT,
+                    additive.getLeftChild(), additive.getRightChild(), depth);
+        }
+        if (expression instanceof MultiplicativeExpression) {
+            final MultiplicativeExpression multiplicative = (MultiplicativeExpression) expression;
+            return binary(multiplicative.getOperator() == '*' ? MULTIPLY : DIVIDE,
+                    multiplicative.getLeftChild(), multiplicative.getRightChild(), depth);
+        }
+        if (expression instanceof ExponentialExpression) {
+            final ExponentialExpression exponential = (ExponentialExpression) expression;
+            if (exponential.getOperator() == 'l') {
+                return MethodHandles.filterReturnValue(toMethodHandle(exponential.getLeftChild(), depth + 1), LOG);
+            }
+            return binary(POW, exponential.getLeftChild(), exponential.getRightChild(), depth);
+        }
+        return interpreted(expression);
+    }
+
+    /**
+     * Combines two children with a binary operator. A literal operand is bound directly into
+     * the operator instead of being computed by its own handle.
+     */
+    private static MethodHandle binary(MethodHandle operator, Expression left, Expression right, int depth) {
+        if (right instanceof LiteralExpression) {
+            final MethodHandle bound = MethodHandles.insertArguments(operator, 1, ((LiteralExpression) right).getValue());
+            return MethodHandles.filterReturnValue(toMethodHandle(left, depth + 1), bound);
+        }
+        if (left instanceof LiteralExpression) {
+            final MethodHandle bound = MethodHandles.insertArguments(operator, 0, ((LiteralExpression) left).getValue());
+            return MethodHandles.filterReturnValue(toMethodHandle(right, depth + 1), bound);
+        }
+        final MethodHandle combined = MethodHandles.filterArguments(operator, 0,
+                toMethodHandle(left, depth + 1), toMethodHandle(right, depth + 1));
+        return MethodHandles.permuteArguments(combined, UNARY, 0, 0);
+    }
+
+    private static MethodHandle constant(double value) {
+        return MethodHandles.dropArguments(MethodHandles.constant(double.class, value), 0, double.class);
+    }
+
+    private static MethodHandle interpreted(Expression expression) {
+        return EVALUATE.bindTo(expression);
+    }
+
+    private static double add(double l, double r) {
+        return l + r;
+    }
+
+    private static double subtract(double l, double r) {
+        return l - r;
+    }
+
+    private static double multiply(double l, double r) {
+        return l * r;
+    }
+
+    private static double divide(double l, double r) {
+        return l / r;
+    }
+}
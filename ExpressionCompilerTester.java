@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that compiled expressions, evaluation programs and batch evaluation produce exactly the same results as the tree interpreter.
+ */
+public class ExpressionCompilerTester {
+	private static final String[] EXPRESSIONS = {
+			"x", "13*x", "10*x^3 + 2*(15+x)", "1./(1. + 5^(-1*x))", "4^3^2", "log(x*2)",
+			"x^x", "2^x - x^2", "(x-1)/(x+1)", "log(x)^2/x", "3-x-x-x", "x/2/3*4", "0/x", "NaN*x",
+			"x*(x+1) + (x^2)^2"
+	};
+	private ExpressionParser _parser;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser();
+	}
+
+	/**
+	 * Compares compiled and interpreted evaluation of each expression and its derivative
+	 * over a range that includes zero and negative values.
+	 */
+	@Test
+	public void testCompiledMatchesInterpreted () throws ExpressionParseException {
+		for (String expressionStr : EXPRESSIONS) {
+			final Expression expression = _parser.parse(expressionStr);
+			assertSameValues(expression, ExpressionCompiler.compile(expression));
+			final Expression derivative = expression.differentiate();
+			assertSameValues(derivative, ExpressionCompiler.compile(derivative));
+		}
+	}
+
+	/**
+	 * Compares the flat evaluation program of each expression and its derivative with the tree interpreter.
+	 */
+	@Test
+	public void testProgramMatchesInterpreted () throws ExpressionParseException {
+		for (String expressionStr : EXPRESSIONS) {
+			final Expression expression = _parser.parse(expressionStr);
+			for (Expression tree : new Expression[] { expression, expression.differentiate() }) {
+				final EvaluationProgram program = EvaluationProgram.compile(tree);
+				final double[] stack = program.newStack();
+				for (double x = -3; x <= 3; x += 0.125) {
+					assertEquals(tree.evaluate(x), program.evaluate(x, stack));
+				}
+				for (double x : new double[] { -0.0, 1e200, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NaN }) {
+					assertEquals(tree.evaluate(x), program.evaluate(x, stack));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares batch evaluation of each expression, its derivative and its compiled form with point-by-point evaluation.
+	 */
+	@Test
+	public void testBatchMatchesInterpreted () throws ExpressionParseException {
+		final double[] xs = new double[49];
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = -3 + i * 0.125;
+		}
+		final double[] out = new double[xs.length];
+		final double[] range = new double[xs.length];
+		for (String expressionStr : EXPRESSIONS) {
+			final Expression expression = _parser.parse(expressionStr);
+			for (Expression tree : new Expression[] { expression, expression.differentiate(), ExpressionCompiler.compile(expression) }) {
+				tree.evaluate(xs, out);
+				tree.evaluate(-3, 0.125, xs.length, range);
+				for (int i = 0; i < xs.length; i++) {
+					assertEquals(tree.evaluate(xs[i]), out[i]);
+					assertEquals(tree.evaluate(xs[i]), range[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Verifies batch evaluation of right operands nested deeper than the per-thread scratch buffers go,
+	 * over more points each time, so that the buffers are reused, grown and bypassed.
+	 */
+	@Test
+	public void testBatchNestedOperands () throws ExpressionParseException {
+		final int depth = 2 * OperationHandler.MAX_SCRATCH_DEPTH;
+		final Expression expression = _parser.parse("1/(x+".repeat(depth) + "x" + ")".repeat(depth));
+		for (int n : new int[] { 7, 7, 300, OperationHandler.MAX_SCRATCH_LENGTH + 1 }) {
+			final double[] out = new double[n];
+			final double[] values = new double[n], derivatives = new double[n];
+			expression.evaluate(0.5, 0.25, n, out);
+			expression.evaluateWithDerivative(0.5, 0.25, n, values, derivatives);
+			for (int i = 0; i < n; i += 1 + n / 50) {
+				final double x = 0.5 + i * 0.25;
+				assertEquals(expression.evaluate(x), out[i], "at x=" + x);
+				assertEquals(expression.evaluate(x), values[i], "at x=" + x);
+				assertEquals(expression.evaluateWithDerivative(x).getDerivative(), derivatives[i], "at x=" + x);
+			}
+		}
+	}
+
+	/**
+	 * Verifies that a compiled expression prints and copies like the original tree.
+	 */
+	@Test
+	public void testDelegation () throws ExpressionParseException {
+		final Expression expression = _parser.parse("10*x^3 + 2*(15+x)");
+		final Expression compiled = ExpressionCompiler.compile(expression);
+		assertEquals(expression.convertToString(0), compiled.convertToString(0));
+		assertEquals(expression.convertToString(2), compiled.deepCopy().convertToString(2));
+		assertEquals(expression.differentiate().convertToString(0), compiled.differentiate().convertToString(0));
+	}
+
+	/**
+	 * Verifies that trees deeper than the compiler's limit still evaluate correctly.
+	 */
+	@Test
+	public void testDeepExpression () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x" + "+x".repeat(3 * ExpressionCompiler.MAX_DEPTH));
+		assertSameValues(expression, ExpressionCompiler.compile(expression));
+	}
+
+	private static void assertSameValues (Expression expected, Expression actual) {
+		for (double x = -3; x <= 3; x += 0.125) {
+			assertEquals(expected.evaluate(x), actual.evaluate(x), expected.convertToString(0) + " at x=" + x);
+		}
+	}
+}
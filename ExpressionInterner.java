@@ -0,0 +1,157 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Hash-conses expressions: structurally equal subtrees are built only once and shared, turning
+ * trees into DAGs. The intern table holds its entries weakly, so canonical nodes that are no
+ * longer used anywhere can be garbage collected.
+ * The interner can also differentiate a DAG, differentiating each shared node only once; the result
+ * is again interned, so the repeated subtrees that differentiate() copies collapse into shared nodes.
+ * Interned nodes are ordinary Expressions, so every other part of the program accepts them, but
+ * they must not be relied on to be independent the way deepCopy results are.
+ * Instances are thread-safe.
+ */
+public class ExpressionInterner {
+    private final Map<Expression, WeakReference<Expression>> table = new WeakHashMap<>();
+
+    /**
+     * Returns the canonical DAG for the given expression: equal subtrees are replaced by one shared node.
+     * @param expression the expression to intern
+     * @return a structurally equal expression made of canonical nodes
+     */
+    public synchronized Expression intern(Expression expression) {
+        return intern(expression, new IdentityHashMap<>());
+    }
+
+    private Expression intern(Expression expression, Map<Expression, Expression> done) {
+        return postOrder(expression, done, node -> {
+            final Expression[] children = ExpressionTraversal.childrenOf(node);
+            for (int i = 0; i < children.length; i++) {
+                children[i] = done.get(children[i]);
+            }
+            final Expression canonical = canonical(children.length == 0 ? node : ExpressionTraversal.withChildren(node, children));
+            done.put(canonical, canonical); // so that later expressions built on it stop there
+            return canonical;
+        });
+    }
+
+    /**
+     * Computes a result for every node of a DAG, children first, skipping nodes already in done
+     * and adding the rest. An explicit stack is used, so expressions too deep to recurse over are walked too.
+     * @param root where to start
+     * @param done the result for every node already visited
+     * @param visit computes the result for a node whose children are all in done
+     * @return the result for root
+     */
+    private Expression postOrder(Expression root, Map<Expression, Expression> done, UnaryOperator<Expression> visit) {
+        final Deque<Expression> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final Expression node = stack.peek();
+            if (done.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (Expression child : ExpressionTraversal.childrenOf(node)) {
+                if (!done.containsKey(child)) {
+                    stack.push(child);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                done.put(stack.pop(), visit.apply(node));
+            }
+        }
+        return done.get(root);
+    }
+
+    /**
+     * Looks up a node whose children are already canonical, adding it if it is new.
+     */
+    private Expression canonical(Expression node) {
+        final WeakReference<Expression> reference = table.get(node);
+        final Expression existing = reference == null ? null : reference.get();
+        if (existing != null) {
+            return existing;
+        }
+        table.put(node, new WeakReference<>(node));
+        return node;
+    }
+
+    /**
+     * Differentiates an expression, computing the derivative of each distinct subexpression once.
+     * The same rules as differentiate() are used, handed the shared children and their memoized derivatives.
+     * @param expression the expression to differentiate
+     * @return the interned derivative
+     */
+    public synchronized Expression differentiate(Expression expression) {
+        return differentiate(intern(expression), new IdentityHashMap<>());
+    }
+
+    /**
+     * Computes the n-th derivative of an expression by differentiating n times. Every step is
+     * simplified and interned before the next, and derivatives of nodes already differentiated
+     * in an earlier step are reused, so the work grows with the number of distinct nodes
+     * rather than with the size of the equivalent tree.
+     * @param expression the expression to differentiate
+     * @param n how many times to differentiate; 0 returns the interned, simplified expression
+     * @return the interned n-th derivative
+     */
+    public synchronized Expression differentiate(Expression expression, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Negative derivative order: " + n);
+        }
+        final Map<Expression, Expression> derivatives = new IdentityHashMap<>();
+        Expression result = intern(ExpressionSimplifier.simplify(expression));
+        for (int i = 0; i < n; i++) {
+            result = intern(ExpressionSimplifier.simplify(differentiate(result, derivatives)));
+        }
+        return result;
+    }
+
+    private Expression differentiate(Expression expression, Map<Expression, Expression> derivatives) {
+        // shared by the derivatives, which are built on the same canonical nodes, so each is interned once
+        final Map<Expression, Expression> interned = new IdentityHashMap<>();
+        return postOrder(expression, derivatives, node -> {
+            final Expression[] children = ExpressionTraversal.childrenOf(node);
+            final Expression derivative = children.length == 0
+                    ? node.differentiate() : ExpressionTraversal.applyRule(node, new SharedOperands(children, derivatives));
+            return intern(derivative, interned);
+        });
+    }
+
+    /**
+     * Operands that hand out the shared children and their memoized derivatives, however often a rule uses them.
+     * The children are differentiated before the node, so every derivative is already memoized.
+     */
+    private final class SharedOperands implements ExpressionTraversal.Operands {
+        private final Expression[] children;
+        private final Map<Expression, Expression> derivatives;
+
+        SharedOperands(Expression[] children, Map<Expression, Expression> derivatives) {
+            this.children = children;
+            this.derivatives = derivatives;
+        }
+
+        @Override
+        public Expression child(int i) {
+            return children[i];
+        }
+
+        @Override
+        public Expression derivative(int i) {
+            return derivatives.get(children[i]);
+        }
+
+        @Override
+        public boolean isConstant(int i) {
+            return !ExpressionTraversal.dependsOn(children[i], 0);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that interning shares equal subtrees and that DAG derivatives match the tree derivatives.
+ */
+public class ExpressionInternerTester {
+	private static final String[] EXPRESSIONS = {
+			"x", "13*x", "10*x^3 + 2*(15+x)", "1./(1. + 5^(-1*x))", "log(x*2)",
+			"x^x", "2^x - x^2", "(x-1)/(x+1)", "log(x)^2/x", "(x*x+1)*(x*x+1)"
+	};
+	private ExpressionParser _parser;
+	private ExpressionInterner _interner;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser();
+		_interner = new ExpressionInterner();
+	}
+
+	/**
+	 * Verifies that equal subtrees become the same node, and that interning keeps the printed form.
+	 */
+	@Test
+	public void testSharesEqualSubtrees () throws ExpressionParseException {
+		final Expression expression = _interner.intern(_parser.parse("(x*x+1)*(x*x+1)"));
+		final MultiplicativeExpression product = (MultiplicativeExpression) expression;
+		assertSame(product.getLeftChild(), product.getRightChild());
+		assertSame(expression, _interner.intern(_parser.parse("(x*x+1)*(x*x+1)")));
+		assertEquals(_parser.parse("(x*x+1)*(x*x+1)").convertToString(0), expression.convertToString(0));
+	}
+
+	/**
+	 * Verifies that DAG derivatives, evaluated node by node, agree with the tree derivatives.
+	 */
+	@Test
+	public void testDerivativesMatch () throws ExpressionParseException {
+		for (String expressionStr : EXPRESSIONS) {
+			Expression tree = _parser.parse(expressionStr);
+			Expression dag = _interner.intern(tree);
+			for (int order = 0; order < 4; order++) {
+				final DagExpression evaluator = new DagExpression(dag);
+				final double[] batch = new double[12];
+				evaluator.evaluate(0.25, 0.25, batch.length, batch);
+				for (int i = 0; i < batch.length; i++) {
+					final double x = 0.25 + i * 0.25;
+					final double expected = tree.evaluate(x);
+					final double tolerance = 1e-9 * Math.max(1, Math.abs(expected));
+					assertEquals(expected, dag.evaluate(x), tolerance, expressionStr + " derivative " + order + " at x=" + x);
+					assertEquals(expected, evaluator.evaluate(x), tolerance, expressionStr + " derivative " + order + " at x=" + x);
+					assertEquals(expected, batch[i], tolerance, expressionStr + " derivative " + order + " at x=" + x);
+				}
+				tree = tree.differentiate();
+				dag = _interner.differentiate(dag);
+			}
+		}
+	}
+
+	/**
+	 * Verifies that repeated derivatives stay small as DAGs while the trees blow up.
+	 */
+	@Test
+	public void testDerivativesStaySmall () throws ExpressionParseException {
+		Expression tree = _parser.parse("log(x)^2/x");
+		Expression dag = _interner.intern(tree);
+		for (int order = 0; order < 5; order++) {
+			tree = tree.differentiate();
+			dag = _interner.differentiate(dag);
+		}
+		final int distinct = new DagExpression(dag).nodeCount();
+		assertTrue(distinct * 10 < ExpressionSimplifier.countNodes(tree), distinct + " vs " + ExpressionSimplifier.countNodes(tree));
+	}
+}
@@ -1,4 +1,6 @@
 class ExpressionParseException extends Exception {
+	private static final long serialVersionUID = 1L;
+
 	public ExpressionParseException (String message) {
 		super(message);
 	}
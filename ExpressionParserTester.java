@@ -1,8 +1,11 @@
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import java.io.IOException;
+import java.io.StringWriter;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 /**
  * Some code to help you test Project 4.
@@ -154,4 +157,89 @@ public class ExpressionParserTester {
 		final String expressionStr = "log(x*2)";
 		assertEquals(3, (int) _parser.parse(expressionStr).evaluate(11));
 	}
+
+	/**
+	 * Verifies that signed literals are parsed wherever an operand may appear.
+	 */
+	@Test
+	public void testExpression4 () throws ExpressionParseException {
+		final String expressionStr = "2--3*x^-1";
+		assertEquals("-\n\t2.0\n\t*\n\t\t-3.0\n\t\t^\n\t\t\tx\n\t\t\t-1.0\n", _parser.parse(expressionStr).convertToString(0));
+	}
+
+	/**
+	 * Verifies that long and deeply nested expressions are parsed in a reasonable amount of time.
+	 */
+	@Test
+	public void testLongExpression () throws ExpressionParseException {
+		final StringBuilder sum = new StringBuilder("x");
+		for (int i = 0; i < 2000; i++) {
+			sum.append(i % 2 == 0 ? " + x*2" : " - x/2");
+		}
+		assertEquals(1501, _parser.parse(sum.toString()).evaluate(1), 0.01);
+
+		final String nested = "(".repeat(500) + "x+1" + ")*2".repeat(500);
+		assertEquals(1, _parser.parse(nested).evaluate(0) / Math.pow(2, 500), 0.01);
+	}
+
+	/**
+	 * Verifies that expressions nested far too deep for recursion are parsed, evaluated, copied,
+	 * differentiated, compared, interned, compiled and printed without overflowing the stack.
+	 */
+	@Test
+	public void testDeepExpression () throws ExpressionParseException {
+		final Expression nested = _parser.parse("(".repeat(100000) + "x*x" + ")".repeat(100000));
+		assertEquals(9, nested.evaluate(3));
+		assertEquals(6, nested.differentiate().evaluate(3));
+		assertEquals(6, nested.deepCopy().evaluateWithDerivative(3).getDerivative());
+
+		final Expression chain = _parser.parse("x" + "+x".repeat(99999));
+		assertEquals(200000, chain.evaluate(2));
+		assertEquals(100000, chain.deepCopy().differentiate().evaluate(2));
+		final double[] out = new double[3];
+		chain.evaluate(new double[] { 0, 1, 2 }, out);
+		assertEquals(200000, out[2]);
+
+		final Expression sum = _parser.parse("x" + "+x".repeat(99999) + "+1");
+		final Expression same = sum.deepCopy();
+		assertEquals(sum, same);
+		assertEquals(sum.hashCode(), same.hashCode());
+		assertNotEquals(sum, _parser.parse("x" + "+x".repeat(99999) + "+2"));
+		assertEquals(nested, nested.deepCopy());
+		final ExpressionInterner interner = new ExpressionInterner();
+		final Expression interned = interner.intern(sum);
+		assertEquals(sum, interned);
+		assertSame(interned, interner.intern(same));
+		assertEquals(100000, interner.differentiate(sum).evaluate(2));
+		assertEquals(200001, EvaluationProgram.compile(sum).evaluate(2));
+		assertEquals(9, EvaluationProgram.compile(nested).evaluate(3));
+
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			expected.append("\t".repeat(i)).append("()\n");
+		}
+		expected.append("\t".repeat(5000)).append("x\n");
+		final Expression printed = _parser.parse("(".repeat(5000) + "x" + ")".repeat(5000));
+		assertEquals(expected.toString(), printed.convertToString(0));
+		assertEquals(expected.toString(), printed.deepCopy().convertToString(0));
+	}
+
+	/**
+	 * Verifies that appendTo writes exactly what convertToString returns, including past 32 levels of indentation.
+	 */
+	@Test
+	public void testAppendTo () throws ExpressionParseException, IOException {
+		final String[] expressions = { "10*x^3 + 2*(15+x)", "log(x)^2/x", "(".repeat(40) + "x+1" + ")*2".repeat(40) };
+		for (String expressionStr : expressions) {
+			final Expression expression = _parser.parse(expressionStr);
+			for (Expression e : new Expression[] { expression, expression.differentiate() }) {
+				final StringWriter writer = new StringWriter();
+				e.appendTo(writer, 3);
+				assertEquals(e.convertToString(3), writer.toString());
+			}
+		}
+		final StringBuilder builder = new StringBuilder("y=");
+		_parser.parse("x").appendTo(builder, 70);
+		assertEquals("y=" + "\t".repeat(70) + "x\n", builder.toString());
+	}
 }
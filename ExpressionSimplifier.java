@@ -0,0 +1,187 @@
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * An optimization pass that rewrites expression trees into smaller trees computing the same values.
+ * It folds constant subexpressions (including log of a constant), removes parentheses and
+ * identities such as +0, *1, /1 and ^1, removes multiplications by 0 and divisions of 0, merges constant factors,
+ * rewrites small integer powers of x into multiplication chains and division by a constant into
+ * multiplication by its reciprocal.
+ * Folded constants are kept in double, so results agree with the original tree within double rounding, except
+ * that f*0 and 0/f become 0 even where f is infinite or undefined, and 0/f also where f is 0,
+ * so a removed 0/0 is 0 rather than NaN.
+ * This is mostly useful on the output of differentiate, which is full of *1, +0 and x^(3-1).
+ */
+public class ExpressionSimplifier {
+    static final int MAX_EXPANDED_POWER = 4;
+
+    private ExpressionSimplifier() {
+    }
+
+    /**
+     * Produces a simplified tree computing the same values as the given expression.
+     * The given tree is not modified and the result does not share nodes with it.
+     * Nodes shared within the given expression, as in an interned DAG, are simplified once
+     * and stay shared in the result.
+     * Trees too deep to recurse over are copied unsimplified.
+     * @param expression the expression to simplify
+     * @return the simplified expression
+     */
+    public static Expression simplify(Expression expression) {
+        if (ExpressionTraversal.isDeep(expression)) {
+            return expression.deepCopy();
+        }
+        return simplify(expression, new IdentityHashMap<>());
+    }
+
+    private static Expression simplify(Expression expression, Map<Expression, Expression> done) {
+        Expression simplified = done.get(expression);
+        if (simplified == null) {
+            simplified = simplifyNode(expression, done);
+            done.put(expression, simplified);
+        }
+        return simplified;
+    }
+
+    private static Expression simplifyNode(Expression expression, Map<Expression, Expression> done) {
+        if (expression instanceof ParentheticalExpression) {
+            return simplify(((ParentheticalExpression) expression).getChild(), done);
+        }
+        if (expression instanceof AdditiveExpression) {
+            final AdditiveExpression additive = (AdditiveExpression) expression;
+            return simplifyAdditive(simplify(additive.getLeftChild(), done), simplify(additive.getRightChild(), done),
+                    additive.getOperator());
+        }
+        if (expression instanceof MultiplicativeExpression) {
+            final MultiplicativeExpression multiplicative = (MultiplicativeExpression) expression;
+            final Expression left = simplify(multiplicative.getLeftChild(), done);
+            final Expression right = simplify(multiplicative.getRightChild(), done);
+            return multiplicative.getOperator() == '*' ? simplifyProduct(left, right) : simplifyQuotient(left, right);
+        }
+        if (expression instanceof ExponentialExpression) {
+            final ExponentialExpression exponential = (ExponentialExpression) expression;
+            final Expression left = simplify(exponential.getLeftChild(), done);
+            if (exponential.getOperator() == 'l') {
+                return isLiteral(left) ? new LiteralExpression(Math.log(valueOf(left))) : ExponentialExpression.createLog(left);
+            }
+            return simplifyPower(left, simplify(exponential.getRightChild(), done));
+        }
+        return expression.deepCopy();
+    }
+
+    private static Expression simplifyAdditive(Expression left, Expression right, char operator) {
+        if (isLiteral(left) && isLiteral(right)) {
+            return new LiteralExpression(operator == '+' ? valueOf(left) + valueOf(right) : valueOf(left) - valueOf(right));
+        }
+        if (isLiteral(right, 0)) {
+            return left;
+        }
+        if (isLiteral(left, 0)) {
+            return operator == '+' ? right : simplifyProduct(new LiteralExpression(-1), right);
+        }
+        return AdditiveExpression.create(left, right, operator);
+    }
+
+    private static Expression simplifyProduct(Expression left, Expression right) {
+        if (isLiteral(left) && isLiteral(right)) {
+            return new LiteralExpression(valueOf(left) * valueOf(right));
+        }
+        if (isLiteral(left, 0) || isLiteral(right, 0)) {
+            return new LiteralExpression(0);
+        }
+        if (isLiteral(left, 1)) {
+            return right;
+        }
+        if (isLiteral(right, 1)) {
+            return left;
+        }
+        // keep a constant factor on the left, merged with any constant factor of the other side
+        if (isLiteral(right)) {
+            return simplifyProduct(right, left);
+        }
+        if (isLiteral(left) && right instanceof MultiplicativeExpression) {
+            final MultiplicativeExpression product = (MultiplicativeExpression) right;
+            if (product.getOperator() == '*' && isLiteral(product.getLeftChild())) {
+                return simplifyProduct(new LiteralExpression(valueOf(left) * valueOf(product.getLeftChild())),
+                        product.getRightChild());
+            }
+        }
+        return MultiplicativeExpression.create(left, right, '*');
+    }
+
+    private static Expression simplifyQuotient(Expression left, Expression right) {
+        if (isLiteral(left) && isLiteral(right)) {
+            return new LiteralExpression(valueOf(left) / valueOf(right));
+        }
+        if (isLiteral(right, 1)) {
+            return left;
+        }
+        if (isLiteral(right) && valueOf(right) != 0) {
+            return simplifyProduct(new LiteralExpression(1 / valueOf(right)), left);
+        }
+        if (isLiteral(left, 0)) { // also where right is 0, like f*0 where f is undefined
+            return new LiteralExpression(0);
+        }
+        return MultiplicativeExpression.create(left, right, '/');
+    }
+
+    private static Expression simplifyPower(Expression base, Expression exponent) {
+        if (isLiteral(base) && isLiteral(exponent)) {
+            return new LiteralExpression(Math.pow(valueOf(base), valueOf(exponent)));
+        }
+        if (isLiteral(exponent, 0) || isLiteral(base, 1)) {
+            return new LiteralExpression(1);
+        }
+        if (isLiteral(exponent, 1)) {
+            return base;
+        }
+        if (base instanceof VariableExpression && isLiteral(exponent)) {
+            final double n = valueOf(exponent);
+            if (n == Math.rint(n) && Math.abs(n) <= MAX_EXPANDED_POWER) {
+                Expression chain = base;
+                for (int i = 1; i < Math.abs(n); i++) {
+                    chain = MultiplicativeExpression.create(chain, base.deepCopy(), '*');
+                }
+                return n > 0 ? chain : MultiplicativeExpression.create(new LiteralExpression(1), chain, '/');
+            }
+        }
+        return ExponentialExpression.create(base, exponent);
+    }
+
+    private static boolean isLiteral(Expression expression) {
+        return expression instanceof LiteralExpression;
+    }
+
+    private static boolean isLiteral(Expression expression, double value) {
+        return expression instanceof LiteralExpression && ((LiteralExpression) expression).getValue() == value;
+    }
+
+    private static double valueOf(Expression literal) {
+        return ((LiteralExpression) literal).getValue();
+    }
+
+    /**
+     * Counts the nodes with an explicit stack, so trees of any depth can be counted.
+     * A node shared within the expression is counted once for every place it appears, and a compiled
+     * expression is counted by the tree it was compiled from.
+     * @return how many nodes the tree has
+     */
+    static int countNodes(Expression expression) {
+        final ArrayDeque<Expression> stack = new ArrayDeque<>();
+        stack.push(expression);
+        int count = 0;
+        while (!stack.isEmpty()) {
+            final Expression node = stack.pop();
+            if (node instanceof CompiledExpression) {
+                stack.push(((CompiledExpression) node).getExpression());
+                continue;
+            }
+            count++;
+            for (Expression child : ExpressionTraversal.childrenOf(node)) {
+                stack.push(child);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the simplifier shrinks trees without changing their values.
+ */
+public class ExpressionSimplifierTester {
+	private static final String[] EXPRESSIONS = {
+			"x", "13*x", "10*x^3 + 2*(15+x)", "1./(1. + 5^(-1*x))", "4^3^2", "log(x*2)",
+			"x^x", "2^x - x^2", "(x-1)/(x+1)", "log(x)^2/x", "3-x-x-x", "x/2/3*4", "x^(3-1)*1+0"
+	};
+	private ExpressionParser _parser;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser();
+	}
+
+	/**
+	 * Verifies that simplified expressions and derivatives evaluate to the same values within a tolerance.
+	 */
+	@Test
+	public void testSameValues () throws ExpressionParseException {
+		for (String expressionStr : EXPRESSIONS) {
+			Expression expression = _parser.parse(expressionStr);
+			for (int order = 0; order < 3; order++) {
+				final Expression simplified = ExpressionSimplifier.simplify(expression);
+				for (double x = 0.25; x <= 3; x += 0.25) {
+					final double expected = expression.evaluate(x);
+					assertEquals(expected, simplified.evaluate(x), 1e-6 * Math.max(1, Math.abs(expected)),
+							expressionStr + " derivative " + order + " at x=" + x);
+				}
+				expression = expression.differentiate();
+			}
+		}
+	}
+
+	/**
+	 * Verifies specific rewrites.
+	 */
+	@Test
+	public void testRewrites () throws ExpressionParseException {
+		assertEquals("*\n\tx\n\tx\n", ExpressionSimplifier.simplify(_parser.parse("x^(3-1)*1+0")).convertToString(0));
+		assertEquals("*\n\t0.5\n\tx\n", ExpressionSimplifier.simplify(_parser.parse("x/2")).convertToString(0));
+		assertEquals("*\n\t30.0\n\t*\n\t\tx\n\t\tx\n",
+				ExpressionSimplifier.simplify(_parser.parse("10*x^3").differentiate()).convertToString(0));
+		assertEquals(Math.log(2) + "\n", ExpressionSimplifier.simplify(_parser.parse("log(2)")).convertToString(0));
+		// folded constants outside float range stay in double
+		assertEquals(_parser.parse("x*10^50/10^45").evaluate(2), ExpressionSimplifier.simplify(_parser.parse("x*10^50/10^45")).evaluate(2), 1e-6);
+		assertEquals(2048, ExpressionSimplifier.simplify(_parser.parse("2^200*x/2^190")).evaluate(2), 1e-9);
+		assertEquals(2048, ExpressionCompiler.compile(ExpressionSimplifier.simplify(_parser.parse("2^200*x/2^190"))).evaluate(2), 1e-9);
+		// documented: 0/f is 0 even where f is 0
+		assertEquals(0, ExpressionSimplifier.simplify(_parser.parse("0/x")).evaluate(0));
+	}
+
+	/**
+	 * Verifies that simplification shrinks repeated derivatives dramatically.
+	 */
+	@Test
+	public void testShrinksDerivatives () throws ExpressionParseException {
+		Expression derivative = _parser.parse("10*x^3 + 2*(15+x)");
+		for (int i = 0; i < 3; i++) {
+			derivative = derivative.differentiate();
+		}
+		final int before = ExpressionSimplifier.countNodes(derivative);
+		final int after = ExpressionSimplifier.countNodes(ExpressionSimplifier.simplify(derivative));
+		assertTrue(after * 10 < before, before + " -> " + after);
+		assertEquals(derivative.evaluate(7), ExpressionSimplifier.simplify(derivative).evaluate(7), 1e-9);
+	}
+}
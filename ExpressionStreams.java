@@ -0,0 +1,213 @@
+import java.util.OptionalDouble;
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoublePredicate;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Evaluates an expression lazily over sequences of x, as primitive DoubleStreams that never box a value
+ * or materialize the whole sequence. A range of x is an evenly spaced grid, and its values come from a
+ * spliterator that evaluates it a block of BLOCK points at a time with the batch evaluate API, so only one
+ * block per thread is ever held. xs and values over the same grid produce the same x for the same index,
+ * so a value can always be paired with its x by position. The streams split evenly for .parallel(),
+ * and short-circuiting operations such as findFirst or anyMatch stop evaluating once they are answered,
+ * up to the rest of the current block.
+ */
+public class ExpressionStreams {
+    static final int BLOCK = 256;
+    static final long MAX_UNBOUNDED_BATCH = 1 << 24;
+
+    private ExpressionStreams() {
+    }
+
+    /**
+     * @param from the first x
+     * @param to the last x
+     * @param count how many points there are, at least 2, or 1 for from alone
+     * @return the x of count evenly spaced points from from to to, in order
+     */
+    public static DoubleStream xs(double from, double to, long count) {
+        return StreamSupport.doubleStream(new GridSpliterator(null, from, to, count), false);
+    }
+
+    /**
+     * @param expression the expression to evaluate
+     * @param from the first x
+     * @param to the last x
+     * @param count how many points there are, at least 2, or 1 for from alone
+     * @return the value of the expression at each of the points of xs(from, to, count), in the same order
+     */
+    public static DoubleStream values(Expression expression, double from, double to, long count) {
+        return StreamSupport.doubleStream(new GridSpliterator(expression, from, to, count), false);
+    }
+
+    /**
+     * @param expression the expression to evaluate
+     * @param from the first x
+     * @param step the distance between points
+     * @return the value of the expression at from, from + step, from + 2*step and so on without end;
+     *         it must be cut short, by limit or by a short-circuiting operation
+     */
+    public static DoubleStream values(Expression expression, double from, double step) {
+        return StreamSupport.doubleStream(new GridSpliterator(expression, from, step), false);
+    }
+
+    /**
+     * @param expression the expression to evaluate
+     * @param xs the points to evaluate it at
+     * @return the value of the expression at each of xs, evaluated only as the stream is consumed;
+     *         it is parallel if xs is
+     */
+    public static DoubleStream values(Expression expression, DoubleStream xs) {
+        return xs.map(expression::evaluate);
+    }
+
+    /**
+     * Turns a test on values of the expression into a test on x, to filter a stream of x by, such as
+     * xs(from, to, count).filter(where(expression, y -> y > threshold)).
+     * @param expression the expression to evaluate
+     * @param test the test on its value
+     * @return a test that is true for the x at which the value of the expression passes test
+     */
+    public static DoublePredicate where(Expression expression, DoublePredicate test) {
+        return x -> test.test(expression.evaluate(x));
+    }
+
+    /**
+     * @param expression the expression to evaluate
+     * @param xs the points to try, in order
+     * @param test the test on the value of the expression
+     * @return the first of xs at which the value of the expression passes test, or empty if there is none;
+     *         no x after it is evaluated unless xs is parallel
+     */
+    public static OptionalDouble firstWhere(Expression expression, DoubleStream xs, DoublePredicate test) {
+        return xs.filter(where(expression, test)).findFirst();
+    }
+
+    /**
+     * Produces the points i of the grid from + i*step, for i in [start, end), or their values if there
+     * is an expression. The last point of a finite grid is exactly to. A finite grid splits in half; an unbounded
+     * one splits off ever larger batches from its front, as the JDK does for streams of unknown size.
+     */
+    private static class GridSpliterator implements Spliterator.OfDouble {
+        private final Expression expression; // null to produce the x themselves
+        private final double from, to, step;
+        private final long last; // the index that is exactly to, or -1 if the grid is unbounded
+        private long start;
+        private long end;
+        private long batch; // how much an unbounded grid splits off next
+        private final double[] xs = new double[BLOCK];
+        private final double[] ys = new double[BLOCK];
+        private int position, filled; // the next value of the current block, and how many it holds
+
+        GridSpliterator(Expression expression, double from, double to, long count) {
+            // a single point is from, whatever to is
+            this(expression, from, count > 1 ? to : from, count > 1 ? (to - from) / (count - 1) : 0, 0, count, count - 1);
+            if (count < 1) {
+                throw new IllegalArgumentException("A grid needs at least one point");
+            }
+        }
+
+        GridSpliterator(Expression expression, double from, double step) {
+            this(expression, from, Double.NaN, step, 0, Long.MAX_VALUE, -1);
+        }
+
+        private GridSpliterator(Expression expression, double from, double to, double step, long start, long end, long last) {
+            this.expression = expression;
+            this.from = from;
+            this.to = to;
+            this.step = step;
+            this.start = start;
+            this.end = end;
+            this.last = last;
+        }
+
+        private double x(long i) {
+            return i == last ? to : from + i * step;
+        }
+
+        /**
+         * Evaluates the next block, if the current one is used up and there are points left.
+         * @return whether there is a value to take
+         */
+        private boolean fill() {
+            if (position < filled) {
+                return true;
+            }
+            if (start >= end) {
+                return false;
+            }
+            filled = (int) Math.min(BLOCK, end - start);
+            position = 0;
+            for (int i = 0; i < filled; i++) {
+                xs[i] = x(start + i);
+            }
+            start += filled;
+            if (expression != null) {
+                if (filled == BLOCK) {
+                    expression.evaluate(xs, ys);
+                } else {
+                    for (int i = 0; i < filled; i++) {
+                        ys[i] = expression.evaluate(xs[i]);
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (!fill()) {
+                return false;
+            }
+            action.accept(expression == null ? xs[position] : ys[position]);
+            position++;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            final double[] values = expression == null ? xs : ys;
+            while (fill()) {
+                for (; position < filled; position++) {
+                    action.accept(values[position]);
+                }
+            }
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            if (position < filled) {
+                return null; // only split between blocks
+            }
+            if (last < 0) {
+                if (start >= end) {
+                    return null;
+                }
+                batch = Math.min(MAX_UNBOUNDED_BATCH, batch + BLOCK);
+                final long split = start + Math.min(batch, end - start);
+                final GridSpliterator prefix = new GridSpliterator(expression, from, to, step, start, split, last);
+                start = split;
+                return prefix;
+            }
+            if (end - start < 2 * BLOCK) {
+                return null;
+            }
+            final long middle = start + (end - start) / 2;
+            final GridSpliterator prefix = new GridSpliterator(expression, from, to, step, start, middle, last);
+            start = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - start + filled - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return last < 0 ? ORDERED | NONNULL | IMMUTABLE : ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.OptionalDouble;
+import java.util.stream.DoubleStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the lazy streams of values: that they agree with evaluate point by point, sequentially and in parallel,
+ * and that short-circuiting operations end even on unbounded streams.
+ */
+public class ExpressionStreamsTester {
+	private ExpressionParser _parser;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser();
+	}
+
+	/**
+	 * Verifies that values holds the value at each x of the grid, in order, that the grid ends exactly at to,
+	 * and that a parallel stream yields the same values.
+	 */
+	@Test
+	public void testValues () throws ExpressionParseException {
+		final Expression expression = ExpressionCompiler.compile(_parser.parse("10*x^3 + 2*(15+x) - log(x)/x"));
+		final int count = 10007;
+		final double[] xs = ExpressionStreams.xs(0.5, 7.25, count).toArray();
+		assertEquals(count, xs.length);
+		assertEquals(0.5, xs[0]);
+		assertEquals(7.25, xs[count - 1]);
+		final double[] expected = new double[count];
+		for (int i = 0; i < count; i++) {
+			expected[i] = expression.evaluate(xs[i]);
+		}
+		assertArrayEquals(expected, ExpressionStreams.values(expression, 0.5, 7.25, count).toArray());
+		assertArrayEquals(expected, ExpressionStreams.values(expression, 0.5, 7.25, count).parallel().toArray());
+		assertArrayEquals(expected, ExpressionStreams.values(expression, ExpressionStreams.xs(0.5, 7.25, count).parallel()).toArray());
+		assertEquals(DoubleStream.of(expected).sum(), ExpressionStreams.values(expression, 0.5, 7.25, count).parallel().sum(), 1e-6);
+		assertArrayEquals(new double[] { expression.evaluate(3) }, ExpressionStreams.values(expression, 3, 3, 1).toArray());
+		assertArrayEquals(new double[] { 0.5 }, ExpressionStreams.xs(0.5, 5, 1).toArray());
+		assertArrayEquals(new double[] { expression.evaluate(0.5) }, ExpressionStreams.values(expression, 0.5, 5, 1).toArray());
+		assertArrayEquals(new double[] { expression.evaluate(0.5) }, ExpressionStreams.values(expression, 0.5, 5, 1).parallel().toArray());
+		assertThrows(IllegalArgumentException.class, () -> ExpressionStreams.xs(0, 1, 0));
+	}
+
+	/**
+	 * Verifies that the first x where the value passes a test is found, also on an unbounded stream
+	 * and in parallel, and that a test nothing passes gives nothing.
+	 */
+	@Test
+	public void testShortCircuit () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x^2 - 4*x");
+		final OptionalDouble first = ExpressionStreams.firstWhere(expression, ExpressionStreams.xs(0, 100, 100001), y -> y > 1000);
+		assertEquals(33.686, first.getAsDouble(), 1e-9);
+		assertEquals(first.getAsDouble(),
+				ExpressionStreams.firstWhere(expression, ExpressionStreams.xs(0, 100, 100001).parallel(), y -> y > 1000).getAsDouble());
+		assertFalse(ExpressionStreams.firstWhere(expression, ExpressionStreams.xs(0, 4, 1001), y -> y > 0).isPresent());
+
+		assertEquals(1003 * 1003 - 4 * 1003, ExpressionStreams.values(expression, 0, 1).filter(y -> y > 1e6).findFirst().getAsDouble());
+		assertEquals(1003 * 1003 - 4 * 1003, ExpressionStreams.values(expression, 0, 1).parallel().filter(y -> y > 1e6).findFirst().getAsDouble());
+		assertEquals(-3 - 4 - 3 + 0 + 5, ExpressionStreams.values(expression, 1, 1).limit(5).sum());
+	}
+}
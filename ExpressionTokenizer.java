@@ -0,0 +1,299 @@
+/**
+ * Splits an expression string into tokens in a single left-to-right pass.
+ * Every token is stored as its kind plus the [start, end) offsets of its text in the source,
+ * so the only strings created are the ones handed to LiteralExpression.
+ * The tokenizer also keeps the parser's current position, so each parse gets its own instance.
+ */
+class ExpressionTokenizer {
+    static final int NUMBER = 0, VARIABLE = 1, LOG = 2, PLUS = 3, MINUS = 4, TIMES = 5, DIVIDE = 6,
+            POWER = 7, LEFT_PAREN = 8, RIGHT_PAREN = 9, END = 10;
+
+    private static final String[] X = { "x" };
+
+    private final String source;
+    private final String[] variables;
+    private int[] kinds;
+    private int[] starts;
+    private int[] ends;
+    private int size;
+    private int position;
+
+    /**
+     * Tokenizes the given string, whose only variable is x.
+     * @param source the expression string
+     * @throws ExpressionParseException if the string contains a character that cannot start a token
+     */
+    ExpressionTokenizer (String source) throws ExpressionParseException {
+        this(source, X);
+    }
+
+    /**
+     * Tokenizes the given string. Where a variable name, log and a number could all start, the
+     * longest of them is the token, so a variable named logistic is not read as log.
+     * @param source the expression string
+     * @param variables the names of the variables
+     * @throws ExpressionParseException if the string contains a character that cannot start a token
+     */
+    ExpressionTokenizer (String source, String[] variables) throws ExpressionParseException {
+        this.source = source;
+        this.variables = variables;
+        final int capacity = source.length() + 1;
+        this.kinds = new int[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        tokenize();
+    }
+
+    /**
+     * Removes the whitespace that does not separate tokens, so that strings that tokenize alike, such as
+     * "2 * x" and "2*x", are equal after normalizing. A run of whitespace that keeps two tokens apart,
+     * as in "x 2", "1e -5" or "2e+ 5", is kept as a single space, so the normalized string tokenizes exactly like the original.
+     * @param source the expression string
+     * @return the normalized string
+     */
+    static String normalize (String source) {
+        final StringBuilder normalized = new StringBuilder(source.length());
+        boolean space = false; // whether whitespace was skipped since the last character kept
+        for (int i = 0; i < source.length(); i++) {
+            final char c = source.charAt(i);
+            if (c <= ' ') {
+                space = normalized.length() > 0;
+                continue;
+            }
+            if (space) {
+                final char before = normalized.charAt(normalized.length() - 1);
+                if (!isOperator(before) && !isOperator(c) || (c == '+' || c == '-') && "eEpP".indexOf(before) >= 0
+                        || c >= '0' && c <= '9' && endsInExponentSign(normalized)) {
+                    normalized.append(' ');
+                }
+                space = false;
+            }
+            normalized.append(c);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @return whether text ends in a mantissa, an exponent letter and a sign, as "2e+" does, which a digit right after would complete
+     */
+    private static boolean endsInExponentSign (CharSequence text) {
+        final int n = text.length();
+        if (n < 3 || text.charAt(n - 1) != '+' && text.charAt(n - 1) != '-') {
+            return false;
+        }
+        final char letter = text.charAt(n - 2);
+        final char mantissa = text.charAt(n - 3);
+        final boolean digit = mantissa >= '0' && mantissa <= '9' || mantissa == '.';
+        final boolean hexDigit = mantissa >= 'a' && mantissa <= 'f' || mantissa >= 'A' && mantissa <= 'F';
+        return (letter == 'e' || letter == 'E') && digit || (letter == 'p' || letter == 'P') && (digit || hexDigit);
+    }
+
+    private static boolean isOperator (char c) {
+        return "+-*/^()".indexOf(c) >= 0;
+    }
+
+    /**
+     * @return the kind of the token at the current position
+     */
+    int peek () {
+        return kinds[position];
+    }
+
+    /**
+     * @param offset how many tokens past the current position to look
+     * @return the kind of that token, or END if it is past the end of the input
+     */
+    int peek (int offset) {
+        return position + offset < size ? kinds[position + offset] : END;
+    }
+
+    /**
+     * Moves past the current token.
+     * @return the kind of the token that was consumed
+     */
+    int next () {
+        return kinds[position++];
+    }
+
+    /**
+     * @return the source text of the token at the current position
+     */
+    String text () {
+        return source.substring(starts[position], ends[position]);
+    }
+
+    /**
+     * @return the index in the variable names of the VARIABLE token at the current position
+     */
+    int variable () {
+        final int start = starts[position], length = ends[position] - start;
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].length() == length && source.startsWith(variables[i], start)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Not a variable: " + text());
+    }
+
+    /**
+     * @return the offset in the source of the token at the current position
+     */
+    int offset () {
+        return starts[position];
+    }
+
+    /**
+     * @return the string that was tokenized
+     */
+    String source () {
+        return source;
+    }
+
+    private void tokenize () throws ExpressionParseException {
+        final int length = source.length();
+        int i = 0;
+        while (i < length) {
+            final char c = source.charAt(i);
+            if (c <= ' ') {
+                i++;
+                continue;
+            }
+            final int end;
+            switch (c) {
+                case '+': end = add(PLUS, i, i + 1); break;
+                case '-': end = add(MINUS, i, i + 1); break;
+                case '*': end = add(TIMES, i, i + 1); break;
+                case '/': end = add(DIVIDE, i, i + 1); break;
+                case '^': end = add(POWER, i, i + 1); break;
+                case '(': end = add(LEFT_PAREN, i, i + 1); break;
+                case ')': end = add(RIGHT_PAREN, i, i + 1); break;
+                default:
+                    final int variableEnd = scanVariable(i);
+                    if (source.startsWith("log", i) && variableEnd <= i + 3) {
+                        end = add(LOG, i, i + 3);
+                    } else {
+                        final int numberEnd = scanNumber(i);
+                        if (variableEnd > numberEnd) {
+                            end = add(VARIABLE, i, variableEnd);
+                        } else if (numberEnd < 0) {
+                            throw new ExpressionParseException("Cannot parse expression: " + source
+                                    + " (unexpected '" + c + "' at " + i + ")");
+                        } else {
+                            end = add(NUMBER, i, numberEnd);
+                        }
+                    }
+            }
+            i = end;
+        }
+        add(END, length, length);
+    }
+
+    private int add (int kind, int start, int end) {
+        kinds[size] = kind;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+        return end;
+    }
+
+    /**
+     * @param start where the variable name would begin
+     * @return the offset just past the longest variable name at start, or -1 if there is none
+     */
+    private int scanVariable (int start) {
+        int end = -1;
+        for (String variable : variables) {
+            if (start + variable.length() > end && source.startsWith(variable, start)) {
+                end = start + variable.length();
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Scans an unsigned floating-point literal in any form accepted by Float.parseFloat:
+     * decimal with optional fraction and exponent, hexadecimal with a binary exponent,
+     * NaN and Infinity, each with an optional fFdD suffix.
+     * @param start where the literal would begin
+     * @return the offset just past the literal, or -1 if there is no literal at start
+     */
+    private int scanNumber (int start) {
+        if (source.startsWith("NaN", start)) {
+            return start + 3;
+        }
+        if (source.startsWith("Infinity", start)) {
+            return start + 8;
+        }
+        final int hexEnd = scanHexNumber(start);
+        if (hexEnd >= 0) {
+            return hexEnd;
+        }
+        int i = start;
+        final int integerEnd = skipDigits(i, false);
+        i = integerEnd;
+        int fractionDigits = 0;
+        if (i < source.length() && source.charAt(i) == '.') {
+            final int fractionEnd = skipDigits(i + 1, false);
+            fractionDigits = fractionEnd - i - 1;
+            i = fractionEnd;
+        }
+        if (integerEnd == start && fractionDigits == 0) {
+            return -1;
+        }
+        i = skipExponent(i, 'e', 'E');
+        return skipSuffix(i);
+    }
+
+    private int scanHexNumber (int start) {
+        if (!(source.startsWith("0x", start) || source.startsWith("0X", start))) {
+            return -1;
+        }
+        int i = start + 2;
+        final int integerEnd = skipDigits(i, true);
+        int digits = integerEnd - i;
+        i = integerEnd;
+        if (i < source.length() && source.charAt(i) == '.') {
+            final int fractionEnd = skipDigits(i + 1, true);
+            digits += fractionEnd - i - 1;
+            i = fractionEnd;
+        }
+        final int exponentEnd = skipExponent(i, 'p', 'P');
+        if (digits == 0 || exponentEnd == i) { // the binary exponent is mandatory
+            return -1;
+        }
+        return skipSuffix(exponentEnd);
+    }
+
+    private int skipDigits (int i, boolean hex) {
+        while (i < source.length()) {
+            final char c = source.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(hex && ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')))) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Skips an exponent part such as e-5, but only if it is complete; "2e" leaves the 'e' alone.
+     */
+    private int skipExponent (int i, char lower, char upper) {
+        if (i >= source.length() || (source.charAt(i) != lower && source.charAt(i) != upper)) {
+            return i;
+        }
+        int j = i + 1;
+        if (j < source.length() && (source.charAt(j) == '+' || source.charAt(j) == '-')) {
+            j++;
+        }
+        final int digitsEnd = skipDigits(j, false);
+        return digitsEnd > j ? digitsEnd : i;
+    }
+
+    private int skipSuffix (int i) {
+        if (i < source.length() && "fFdD".indexOf(source.charAt(i)) >= 0) {
+            return i + 1;
+        }
+        return i;
+    }
+}
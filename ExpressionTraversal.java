@@ -0,0 +1,640 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * Explicit-stack versions of the tree operations, for trees too deep to recurse over, such as
+ * machine-generated expressions with thousands of nested parentheses or very long + chains.
+ * Every node knows its height, and a node taller than MAX_RECURSION_HEIGHT hands the operation
+ * to the methods here. They walk down the tall part of the tree with their own stacks and call
+ * the ordinary recursive methods on every subtree short enough to recurse over, so the thread
+ * stack never holds more than MAX_RECURSION_HEIGHT levels. The specialized nodes built by the
+ * factory methods are only used below that height, so ordinary trees pay nothing for the check.
+ * Each method produces exactly what the recursive one would.
+ */
+class ExpressionTraversal {
+    /**
+     * The tallest tree the recursive methods are used on.
+     */
+    static final int MAX_RECURSION_HEIGHT = 1024;
+
+    private static final int INITIAL_STACK = 64;
+
+    private ExpressionTraversal() {
+    }
+
+    /**
+     * @return the height of the tree, 1 for leaves and for node types that do not record it
+     */
+    static int heightOf(Expression expression) {
+        return expression instanceof OperationHandler ? ((OperationHandler) expression).height() : 1;
+    }
+
+    /**
+     * @return whether the tree is too tall for the recursive methods
+     */
+    static boolean isDeep(Expression expression) {
+        return heightOf(expression) > MAX_RECURSION_HEIGHT;
+    }
+
+    /**
+     * @return the slots of the variables in the tree as a mask, bit i for slot i and bit 63 for every slot
+     * from 63 on; all bits for node types that do not record it, which may hold anything
+     */
+    static long variablesOf(Expression expression) {
+        if (expression instanceof OperationHandler) {
+            return ((OperationHandler) expression).variables();
+        }
+        if (expression instanceof VariableExpression) {
+            return slotBit(((VariableExpression) expression).getSlot());
+        }
+        return -1L;
+    }
+
+    private static long slotBit(int slot) {
+        return 1L << Math.min(slot, 63);
+    }
+
+    /**
+     * @return whether the tree may hold the variable in the given slot; false means its value
+     * does not change with that variable, though it may with others
+     */
+    static boolean dependsOn(Expression expression, int slot) {
+        return (variablesOf(expression) & slotBit(slot)) != 0;
+    }
+
+    /**
+     * @return whether the tree is known to hold no variable, so that its value does not depend on x;
+     * this is looked up, not walked, so it costs the same for any tree
+     */
+    static boolean isConstant(Expression expression) {
+        return variablesOf(expression) == 0;
+    }
+
+    /**
+     * Computes the value of an expression like evaluate(x).
+     * @param root the expression to evaluate
+     * @param x the value of the independent variable x
+     * @return the value of the expression
+     */
+    static double evaluate(Expression root, double x) {
+        return evaluate(root, x, null);
+    }
+
+    /**
+     * Computes the value of an expression like evaluate(env).
+     * @param root the expression to evaluate
+     * @param env the value of every variable, indexed by slot
+     * @return the value of the expression
+     */
+    static double evaluate(Expression root, double[] env) {
+        return evaluate(root, 0, env);
+    }
+
+    /**
+     * Evaluates with the variables read from env, or at x if env is null.
+     */
+    private static double evaluate(Expression root, double x, double[] env) {
+        Expression[] nodes = new Expression[INITIAL_STACK];
+        boolean[] visited = new boolean[INITIAL_STACK];
+        double[] values = new double[INITIAL_STACK];
+        int top = 0, count = 0;
+        nodes[0] = root;
+        while (top >= 0) {
+            final Expression node = nodes[top];
+            if (visited[top]) {
+                visited[top--] = false;
+                final char op = operatorOf(node);
+                if (op == 'l') {
+                    values[count - 1] = Math.log(values[count - 1]);
+                } else {
+                    count--;
+                    values[count - 1] = OperationHandler.apply(op, values[count - 1], values[count]);
+                }
+            } else if (node instanceof ParentheticalExpression) {
+                nodes[top] = ((ParentheticalExpression) node).getChild();
+            } else if (!isDeep(node)) {
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                values[count++] = env == null ? node.evaluate(x) : node.evaluate(env);
+                top--;
+            } else {
+                if (top + 3 > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    visited = Arrays.copyOf(visited, nodes.length);
+                }
+                visited[top] = true;
+                final Expression right = rightOf(node);
+                if (right != null) {
+                    nodes[++top] = right;
+                }
+                nodes[++top] = leftOf(node);
+            }
+        }
+        return values[0];
+    }
+
+    /**
+     * Computes the values of an expression at each of the given values of x, like evaluate(xs, out).
+     */
+    static void evaluate(Expression root, double[] xs, double[] out) {
+        for (int i = 0; i < xs.length; i++) {
+            out[i] = evaluate(root, xs[i]);
+        }
+    }
+
+    /**
+     * Computes the values of an expression at the n evenly spaced values x = from + i*step,
+     * like evaluate(from, step, n, out).
+     */
+    static void evaluate(Expression root, double from, double step, int n, double[] out) {
+        for (int i = 0; i < n; i++) {
+            out[i] = evaluate(root, from + i * step);
+        }
+    }
+
+    /**
+     * Computes bounds of an expression over [lo, hi] like evaluateInterval(lo, hi).
+     * @param root the expression to bound
+     * @param lo the smallest value of the independent variable x
+     * @param hi the largest value of the independent variable x
+     * @return bounds of the values of the expression
+     */
+    static Interval evaluateInterval(Expression root, double lo, double hi) {
+        Expression[] nodes = new Expression[INITIAL_STACK];
+        boolean[] visited = new boolean[INITIAL_STACK];
+        Interval[] values = new Interval[INITIAL_STACK];
+        int top = 0, count = 0;
+        nodes[0] = root;
+        while (top >= 0) {
+            final Expression node = nodes[top];
+            if (visited[top]) {
+                visited[top--] = false;
+                final char op = operatorOf(node);
+                if (op == 'l') {
+                    values[count - 1] = Interval.log(values[count - 1]);
+                } else {
+                    count--;
+                    values[count - 1] = Interval.apply(op, values[count - 1], values[count]);
+                    values[count] = null;
+                }
+            } else if (node instanceof ParentheticalExpression) {
+                nodes[top] = ((ParentheticalExpression) node).getChild();
+            } else if (!isDeep(node)) {
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                values[count++] = node.evaluateInterval(lo, hi);
+                top--;
+            } else {
+                if (top + 3 > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    visited = Arrays.copyOf(visited, nodes.length);
+                }
+                visited[top] = true;
+                final Expression right = rightOf(node);
+                if (right != null) {
+                    nodes[++top] = right;
+                }
+                nodes[++top] = leftOf(node);
+            }
+        }
+        return values[0];
+    }
+
+    /**
+     * Computes the value and derivative of an expression like evaluateWithDerivative(x).
+     * @param root the expression to evaluate
+     * @param x the value of the independent variable x
+     * @return the value of the expression and of its derivative
+     */
+    static DualNumber evaluateWithDerivative(Expression root, double x) {
+        Expression[] nodes = new Expression[INITIAL_STACK];
+        boolean[] visited = new boolean[INITIAL_STACK];
+        double[] values = new double[INITIAL_STACK];
+        double[] derivatives = new double[INITIAL_STACK];
+        int top = 0, count = 0;
+        nodes[0] = root;
+        while (top >= 0) {
+            final Expression node = nodes[top];
+            if (visited[top]) {
+                visited[top--] = false;
+                final char op = operatorOf(node);
+                final int l = op == 'l' ? count - 1 : count - 2, r = count - 1;
+                final double g = values[l], dg = derivatives[l];
+                if (op == 'l') {
+                    values[l] = Math.log(g);
+                    derivatives[l] = dg / g;
+                    continue;
+                }
+                final double h = values[r], dh = derivatives[r];
+                count--;
+                switch (op) {
+                    case '+':
+                        values[l] = g + h;
+                        derivatives[l] = dg + dh;
+                        break;
+                    case '-':
+                        values[l] = g - h;
+                        derivatives[l] = dg - dh;
+                        break;
+                    case '*':
+                        values[l] = g * h;
+                        derivatives[l] = dg * h + g * dh;
+                        break;
+                    case '/':
+                        values[l] = g / h;
+                        derivatives[l] = dg / h - g * dh / Math.pow(h, 2);
+                        break;
+                    default:
+                        final double power = Math.pow(g, h);
+                        values[l] = power;
+                        derivatives[l] = OperationHandler.powerDerivative(leftOf(node), g, dg, h, dh, power);
+                }
+            } else if (node instanceof ParentheticalExpression) {
+                nodes[top] = ((ParentheticalExpression) node).getChild();
+            } else if (!isDeep(node)) {
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count * 2);
+                    derivatives = Arrays.copyOf(derivatives, count * 2);
+                }
+                final DualNumber dual = node.evaluateWithDerivative(x);
+                values[count] = dual.getValue();
+                derivatives[count++] = dual.getDerivative();
+                top--;
+            } else {
+                if (top + 3 > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    visited = Arrays.copyOf(visited, nodes.length);
+                }
+                visited[top] = true;
+                final Expression right = rightOf(node);
+                if (right != null) {
+                    nodes[++top] = right;
+                }
+                nodes[++top] = leftOf(node);
+            }
+        }
+        return new DualNumber(values[0], derivatives[0]);
+    }
+
+    /**
+     * Computes the value and derivative of an expression at the n evenly spaced values x = from + i*step,
+     * like evaluateWithDerivative(from, step, n, values, derivatives).
+     */
+    static void evaluateWithDerivative(Expression root, double from, double step, int n,
+                                       double[] values, double[] derivatives) {
+        for (int i = 0; i < n; i++) {
+            final DualNumber dual = evaluateWithDerivative(root, from + i * step);
+            values[i] = dual.getValue();
+            derivatives[i] = dual.getDerivative();
+        }
+    }
+
+    /**
+     * Copies an expression like deepCopy().
+     * @param root the expression to copy
+     * @return the deep copy
+     */
+    static Expression deepCopy(Expression root) {
+        return postOrder(root, MAX_RECURSION_HEIGHT, Expression::deepCopy, ExpressionTraversal::withChildren);
+    }
+
+    /**
+     * Differentiates an expression like differentiate(). Each tall node's rule is handed copies of
+     * its children and the derivatives already computed for them.
+     * @param root the expression to differentiate
+     * @return the derivative, sharing no nodes with root
+     */
+    static Expression differentiate(Expression root) {
+        return differentiate(root, 0);
+    }
+
+    /**
+     * Differentiates an expression like differentiate(slot).
+     * @param root the expression to differentiate
+     * @param slot the slot of the variable to differentiate by
+     * @return the partial derivative, sharing no nodes with root
+     */
+    static Expression differentiate(Expression root, int slot) {
+        return postOrder(root, MAX_RECURSION_HEIGHT, shallow -> shallow.differentiate(slot),
+                (node, derivatives) -> applyRule(node, new TreeOperands(childrenOf(node), derivatives, slot)));
+    }
+
+    /**
+     * @return the operands of a node as its own differentiation rule reads them, each derivative
+     * computed when the rule first asks for it
+     */
+    static Operands operandsOf(Expression node, int slot) {
+        final Expression[] children = childrenOf(node);
+        return new TreeOperands(children, new Expression[children.length], slot);
+    }
+
+    /**
+     * Applies the differentiation rule of a node that has children.
+     * @param node the node whose rule to apply; only its type and operator are used
+     * @param operands its children and their derivatives
+     * @return the derivative of node
+     */
+    static Expression applyRule(Expression node, Operands operands) {
+        if (node instanceof AdditiveExpression) {
+            return ((AdditiveExpression) node).differentiate(operands);
+        }
+        if (node instanceof MultiplicativeExpression) {
+            return ((MultiplicativeExpression) node).differentiate(operands);
+        }
+        if (node instanceof ExponentialExpression) {
+            return ((ExponentialExpression) node).differentiate(operands);
+        }
+        return ((ParentheticalExpression) node).differentiate(operands);
+    }
+
+    /**
+     * Compares two trees like equals. Equal trees are equally tall, so only pairs of tall nodes are
+     * walked here; every other pair is compared by its own equals.
+     * @param root the tree equals was called on
+     * @param other the object to compare it with
+     * @return whether other is structurally equal to root
+     */
+    static boolean equals(Expression root, Object other) {
+        if (!(other instanceof Expression)) {
+            return false;
+        }
+        Expression[] lefts = new Expression[INITIAL_STACK];
+        Expression[] rights = new Expression[INITIAL_STACK];
+        int top = 0;
+        lefts[0] = root;
+        rights[0] = (Expression) other;
+        while (top >= 0) {
+            final Expression left = lefts[top];
+            final Expression right = rights[top--];
+            if (left == right) {
+                continue;
+            }
+            if (heightOf(left) != heightOf(right)) {
+                return false;
+            }
+            if (!isDeep(left)) {
+                if (!left.equals(right)) {
+                    return false;
+                }
+                continue;
+            }
+            if (operatorOf(left) != operatorOf(right) || left.hashCode() != right.hashCode()) {
+                return false;
+            }
+            if (top + 3 > lefts.length) {
+                lefts = Arrays.copyOf(lefts, lefts.length * 2);
+                rights = Arrays.copyOf(rights, lefts.length);
+            }
+            if (rightOf(left) != null) {
+                lefts[++top] = rightOf(left);
+                rights[top] = rightOf(right);
+            }
+            lefts[++top] = leftOf(left);
+            rights[top] = leftOf(right);
+        }
+        return true;
+    }
+
+    /**
+     * Appends the String representation of an expression to out like appendTo(out, indentLevel).
+     * @throws IOException if out throws it
+     */
+    static void appendTo(Expression root, Appendable out, int indentLevel) throws IOException {
+        Expression[] nodes = new Expression[INITIAL_STACK];
+        int[] indents = new int[INITIAL_STACK];
+        int top = 0;
+        nodes[0] = root;
+        indents[0] = indentLevel;
+        while (top >= 0) {
+            final Expression node = nodes[top];
+            final int indent = indents[top--];
+            if (!isDeep(node)) {
+                node.appendTo(out, indent);
+                continue;
+            }
+            final char op = operatorOf(node);
+            OperationHandler.appendIndent(out, indent);
+            if (op == '(') {
+                out.append("()").append('\n');
+            } else {
+                out.append(op).append('\n');
+            }
+            if (top + 3 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                indents = Arrays.copyOf(indents, nodes.length);
+            }
+            final Expression right = rightOf(node);
+            if (right != null) {
+                nodes[++top] = right;
+                indents[top] = indent + 1;
+            }
+            nodes[++top] = leftOf(node);
+            indents[top] = indent + 1;
+        }
+    }
+
+    /**
+     * Builds a new tree bottom-up: subtrees no taller than maxHeight are handed to shallow,
+     * and each taller node is passed to combine together with the results for its children.
+     */
+    private static Expression postOrder(Expression root, int maxHeight, UnaryOperator<Expression> shallow, Combiner combine) {
+        Expression[] nodes = new Expression[INITIAL_STACK];
+        boolean[] visited = new boolean[INITIAL_STACK];
+        Expression[] results = new Expression[INITIAL_STACK];
+        int top = 0, count = 0;
+        nodes[0] = root;
+        while (top >= 0) {
+            final Expression node = nodes[top];
+            if (visited[top]) {
+                visited[top--] = false;
+                final int arity = rightOf(node) == null ? 1 : 2;
+                final Expression[] childResults = Arrays.copyOfRange(results, count - arity, count);
+                Arrays.fill(results, count - arity, count, null);
+                count -= arity;
+                results[count++] = combine.combine(node, childResults);
+            } else if (heightOf(node) <= maxHeight) {
+                if (count == results.length) {
+                    results = Arrays.copyOf(results, count * 2);
+                }
+                results[count++] = shallow.apply(node);
+                top--;
+            } else {
+                if (top + 3 > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    visited = Arrays.copyOf(visited, nodes.length);
+                }
+                visited[top] = true;
+                final Expression right = rightOf(node);
+                if (right != null) {
+                    nodes[++top] = right;
+                }
+                nodes[++top] = leftOf(node);
+            }
+        }
+        return results[0];
+    }
+
+    private interface Combiner {
+        Expression combine(Expression node, Expression[] childResults);
+    }
+
+    /**
+     * @return the operator of a node, '(' for parentheses and 'l' for log
+     */
+    private static char operatorOf(Expression node) {
+        if (node instanceof AdditiveExpression) {
+            return ((AdditiveExpression) node).getOperator();
+        }
+        if (node instanceof MultiplicativeExpression) {
+            return ((MultiplicativeExpression) node).getOperator();
+        }
+        if (node instanceof ExponentialExpression) {
+            return ((ExponentialExpression) node).getOperator();
+        }
+        return '(';
+    }
+
+    /**
+     * @return the first child of a node that has children
+     */
+    static Expression leftOf(Expression node) {
+        if (node instanceof ParentheticalExpression) {
+            return ((ParentheticalExpression) node).getChild();
+        }
+        if (node instanceof AdditiveExpression) {
+            return ((AdditiveExpression) node).getLeftChild();
+        }
+        if (node instanceof MultiplicativeExpression) {
+            return ((MultiplicativeExpression) node).getLeftChild();
+        }
+        return ((ExponentialExpression) node).getLeftChild();
+    }
+
+    /**
+     * @return the second child of a node that has children, or null for parentheses and log
+     */
+    static Expression rightOf(Expression node) {
+        if (node instanceof AdditiveExpression) {
+            return ((AdditiveExpression) node).getRightChild();
+        }
+        if (node instanceof MultiplicativeExpression) {
+            return ((MultiplicativeExpression) node).getRightChild();
+        }
+        if (node instanceof ExponentialExpression) {
+            return ((ExponentialExpression) node).getRightChild();
+        }
+        return null;
+    }
+
+    /**
+     * @return the children of a node, left to right; empty for leaves and unknown node types
+     */
+    static Expression[] childrenOf(Expression node) {
+        if (node instanceof ParentheticalExpression) {
+            return new Expression[] { ((ParentheticalExpression) node).getChild() };
+        }
+        if (node instanceof AdditiveExpression) {
+            final AdditiveExpression additive = (AdditiveExpression) node;
+            return new Expression[] { additive.getLeftChild(), additive.getRightChild() };
+        }
+        if (node instanceof MultiplicativeExpression) {
+            final MultiplicativeExpression multiplicative = (MultiplicativeExpression) node;
+            return new Expression[] { multiplicative.getLeftChild(), multiplicative.getRightChild() };
+        }
+        if (node instanceof ExponentialExpression) {
+            final ExponentialExpression exponential = (ExponentialExpression) node;
+            return exponential.getOperator() == 'l'
+                    ? new Expression[] { exponential.getLeftChild() }
+                    : new Expression[] { exponential.getLeftChild(), exponential.getRightChild() };
+        }
+        return new Expression[0];
+    }
+
+    /**
+     * @return a node of the same type and operator as the given one, with the given children
+     */
+    static Expression withChildren(Expression node, Expression[] children) {
+        if (node instanceof ParentheticalExpression) {
+            return new ParentheticalExpression(children[0]);
+        }
+        if (node instanceof AdditiveExpression) {
+            return AdditiveExpression.create(children[0], children[1], ((AdditiveExpression) node).getOperator());
+        }
+        if (node instanceof MultiplicativeExpression) {
+            return MultiplicativeExpression.create(children[0], children[1], ((MultiplicativeExpression) node).getOperator());
+        }
+        if (node instanceof ExponentialExpression) {
+            return children.length == 1
+                    ? ExponentialExpression.createLog(children[0])
+                    : ExponentialExpression.create(children[0], children[1]);
+        }
+        return node;
+    }
+
+    /**
+     * The children of a node as a differentiation rule reads them, numbered left to right.
+     * A rule asks for a child or a derivative once for every place it uses it.
+     */
+    interface Operands {
+        /**
+         * @return child number i, to be placed in the derivative
+         */
+        Expression child(int i);
+
+        /**
+         * @return the derivative of child number i, to be placed in the derivative
+         */
+        Expression derivative(int i);
+
+        /**
+         * @return whether child number i is known not to change with the variable differentiated by
+         */
+        boolean isConstant(int i);
+    }
+
+    /**
+     * Operands that hand out a copy of a child or derivative every time one is asked for, so that the
+     * derivative shares no nodes with the tree; the first use of a derivative takes the original.
+     */
+    private static final class TreeOperands implements Operands {
+        private final Expression[] children;
+        private final Expression[] derivatives;
+        private final boolean[] used;
+        private final int slot;
+
+        /**
+         * @param derivatives the derivatives of the children, or nulls for those to compute when asked for
+         */
+        TreeOperands(Expression[] children, Expression[] derivatives, int slot) {
+            this.children = children;
+            this.derivatives = derivatives;
+            this.used = new boolean[children.length];
+            this.slot = slot;
+        }
+
+        @Override
+        public Expression child(int i) {
+            return children[i].deepCopy();
+        }
+
+        @Override
+        public Expression derivative(int i) {
+            if (derivatives[i] == null) {
+                derivatives[i] = children[i].differentiate(slot);
+            }
+            if (used[i]) {
+                return derivatives[i].deepCopy();
+            }
+            used[i] = true;
+            return derivatives[i];
+        }
+
+        @Override
+        public boolean isConstant(int i) {
+            return !dependsOn(children[i], slot);
+        }
+    }
+}
@@ -1,10 +1,21 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
 import javafx.event.EventHandler;
 import javafx.geometry.Point2D;
 import javafx.scene.Scene;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
-import javafx.scene.chart.XYChart;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
@@ -15,6 +26,7 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 public class GraphingCalculator extends Application {
 	public static void main (String[] args) {
@@ -30,21 +42,161 @@ public class GraphingCalculator extends Application {
 	private final double Y_DRAG_SCALE = 17; // this effects the drag speed of the graph Higher number = slower drag
 	final double ZOOM_SCALE = 1.05; // this effects the mouse wheel zoom sped, Higher number = faster zoom
 	private boolean isDragEnabled = true; // this is used to enable/disable the drag feature
+	private boolean isAutoScaleEnabled = false; // this is used to enable/disable fitting the y-axis to the curves
+	private boolean isMarkingEnabled = false; // this is used to enable/disable marking roots and extrema
+	private boolean isShadingEnabled = false; // this is used to enable/disable shading and integrating the visible area
 	Point2D prevPoint;
 	//////////////////////////////////////////////////////////
 	protected static final String EXAMPLE_EXPRESSION = "2*x+5*x*x";
-	protected final ExpressionParser expressionParser = new SimpleExpressionParser();
+	protected final ExpressionCache expressionParser = new ExpressionCache(); // so graphing the same text again parses nothing
+
+	protected static final double RESAMPLE_DELAY_MILLIS = 100;
+	protected static final int AUTO_SCALE_PIECES = 128; // how many pieces the x-range is cut into to bound the curve
+	protected static final int ROOT_CELLS_PER_PIXEL = 4; // how finely the x-range is searched for roots and extrema
+	protected final RootFinder rootFinder = new RootFinder();
+	protected final Integrator integrator = new Integrator();
+	private final Label areaLabel = new Label(); // the integral over the x-range, while shading is on
+	protected final TileCache tileCache = new TileCache();
+	private Expression graphedExpression; // what the chart shows, or null; only used on the JavaFX application thread
+	private Expression graphedTree; // the parsed expression it was compiled from
+	private String graphedSource; // the text it was parsed from
+	private boolean graphedDerivative;
+	private CompletableFuture<Expression> graphedSlope; // the derivative searched for extrema, built off the JavaFX application thread when first needed
+	private long graphGeneration;
+
+	/**
+	 * Graphs the expression parsed from source, and its derivative if asked. The expression is simplified and compiled
+	 * once here so that every later resample of the same graph hits the same tiles in the tile cache; graphing the
+	 * same text again gets the same tree from the expression cache, and so keeps the compiled expression and its tiles.
+	 * The derivative is sampled together with the expression by dual-number evaluation, so no derivative tree is built.
+	 */
+	private void graph (LineChart<Number, Number> chart, CurveCanvas canvas, Expression expression, String source, boolean showDerivative,
+			TextField textField) {
+		if (expression != graphedTree) {
+			graphedTree = expression;
+			graphedExpression = ExpressionCompiler.compile(ExpressionSimplifier.simplify(expression));
+			graphedSlope = null;
+		}
+		graphedSource = source;
+		graphedDerivative = showDerivative;
+		resample(chart, canvas, textField);
+	}
+
+	/**
+	 * Samples the graphed expression, and its derivative if shown, over the chart's current axis bounds, at one to two samples
+	 * per pixel, off the JavaFX application thread, and hands them to the canvas once all are done.
+	 * With auto scale on, the interval bounds of the expression over the x-range are computed alongside,
+	 * with marking on, its roots and extrema, and with shading on, its integral over the x-range.
+	 * Results of an older request that finish after a newer one has started are dropped.
+	 */
+	private void resample (LineChart<Number, Number> chart, CurveCanvas canvas, TextField textField) {
+		final long generation = ++graphGeneration;
+		final Expression expression = graphedExpression;
+		final boolean withDerivative = graphedDerivative;
+		final Viewport viewport = viewportOf(chart);
+		// the tile cache rounds this down to a power of two, so there are one to two samples per pixel
+		final double maxStep = (viewport.getMaxX() - viewport.getMinX()) / viewport.getWidth();
+		final CompletableFuture<SampledCurve[]> curves = CompletableFuture.supplyAsync(() -> withDerivative
+				? tileCache.sampleWithDerivative(expression, viewport.getMinX(), viewport.getMaxX(), maxStep)
+				: new SampledCurve[] { tileCache.sample(expression, viewport.getMinX(), viewport.getMaxX(), maxStep) });
+		final CompletableFuture<Interval> range = isAutoScaleEnabled
+				? CompletableFuture.supplyAsync(() -> Interval.rangeOf(expression, viewport.getMinX(), viewport.getMaxX(), AUTO_SCALE_PIECES))
+				: CompletableFuture.completedFuture(null);
+		final CompletableFuture<List<CurvePoint>> points;
+		if (isMarkingEnabled) {
+			if (graphedSlope == null) {
+				final String source = graphedSource;
+				graphedSlope = CompletableFuture.supplyAsync(() -> {
+					try {
+						return ExpressionCompiler.compile(ExpressionSimplifier.simplify(expressionParser.differentiate(source)));
+					} catch (ExpressionParseException e) {
+						throw new IllegalStateException("The graphed text no longer parses", e); // it parsed when it was graphed
+					}
+				});
+			}
+			final int cells = (int) (viewport.getWidth() * ROOT_CELLS_PER_PIXEL);
+			points = graphedSlope.thenApplyAsync(slope -> {
+				final List<CurvePoint> found = new ArrayList<>(rootFinder.findRoots(expression, viewport.getMinX(), viewport.getMaxX(), cells));
+				found.addAll(rootFinder.findExtrema(expression, slope, viewport.getMinX(), viewport.getMaxX(), cells));
+				return found;
+			});
+		} else {
+			points = CompletableFuture.completedFuture(List.of());
+		}
+		final CompletableFuture<IntegrationResult> area = isShadingEnabled
+				? CompletableFuture.supplyAsync(() -> integrator.integrate(expression, viewport.getMinX(), viewport.getMaxX()))
+				: CompletableFuture.completedFuture(null);
+		CompletableFuture.allOf(curves, range, points, area).thenRun(() -> Platform.runLater(() -> {
+			if (generation != graphGeneration) {
+				return;
+			}
+			canvas.setCurves(curves.join());
+			canvas.setPoints(points.join());
+			final IntegrationResult integral = area.join();
+			canvas.setShaded(integral != null);
+			areaLabel.setText(integral == null ? "" : String.format(" Area: %.6g +/- %.1g%s", integral.getValue(),
+					integral.getErrorEstimate(), integral.isConverged() ? "" : "?"));
+			if (isAutoScaleEnabled) {
+				fitYAxis(chart, canvas, range.join());
+			}
+		})).exceptionally(t -> {
+			Platform.runLater(() -> textField.setStyle("-fx-text-fill: red"));
+			return null;
+		});
+	}
 
-	private void graph (LineChart<Number, Number> chart, Expression expression, boolean clear) {
-		final XYChart.Series series = new XYChart.Series();
-		for (double x = MIN_X; x <= MAX_X; x += DELTA_X) {
-			final double y = expression.evaluate(x);
-			series.getData().add(new XYChart.Data(x, y));
+	/**
+	 * Writes the tree of the expression to standard output, streaming it rather than building one String.
+	 */
+	private static void print (Expression expression) {
+		final Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+		try {
+			expression.appendTo(out, 0);
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		if (clear) {
-			chart.getData().clear();
+	}
+
+	/**
+	 * @return the chart's current axis bounds and the size of its plot area in pixels
+	 */
+	private static Viewport viewportOf (LineChart<Number, Number> chart) {
+		final NumberAxis xAxis = (NumberAxis) chart.getXAxis();
+		final NumberAxis yAxis = (NumberAxis) chart.getYAxis();
+		return new Viewport(xAxis.getLowerBound(), xAxis.getUpperBound(), yAxis.getLowerBound(), yAxis.getUpperBound(),
+				xAxis.getWidth() > 0 ? xAxis.getWidth() : WINDOW_WIDTH,
+				yAxis.getHeight() > 0 ? yAxis.getHeight() : WINDOW_HEIGHT);
+	}
+
+	/**
+	 * Sets the y-axis bounds to the range of the curves being drawn. The expression is fitted to its interval
+	 * bounds when it has them, which hold the whole curve rather than just the sampled points; the derivative,
+	 * and an expression without finite bounds, are fitted to their samples.
+	 * @param range the bounds of the expression over the x-range, or null if they were not computed
+	 */
+	private static void fitYAxis (LineChart<Number, Number> chart, CurveCanvas canvas, Interval range) {
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		final SampledCurve[] curves = canvas.getCurves();
+		final boolean bounded = range != null && range.isBounded();
+		if (bounded) {
+			min = range.getLo();
+			max = range.getHi();
 		}
-		chart.getData().addAll(series);
+		for (int i = bounded ? 1 : 0; i < curves.length; i++) {
+			for (double y : curves[i].getYs()) {
+				if (Double.isFinite(y)) {
+					min = Math.min(min, y);
+					max = Math.max(max, y);
+				}
+			}
+		}
+		if (min > max) {
+			return;
+		}
+		final double margin = min < max ? (max - min) * 0.05 : 1;
+		((NumberAxis) chart.getYAxis()).setLowerBound(min - margin);
+		((NumberAxis) chart.getYAxis()).setUpperBound(max + margin);
 	}
 
 	@Override
@@ -58,6 +210,8 @@ public class GraphingCalculator extends Application {
 		final CheckBox diffBox = new CheckBox("Show Derivative");
 		final CheckBox autoScaleBox = new CheckBox("Auto Scale");
 		final CheckBox toggleNavigationBox = new CheckBox("Enable Click Navigation");
+		final CheckBox markBox = new CheckBox("Mark Roots & Extrema");
+		final CheckBox shadeBox = new CheckBox("Shade Area");
 		queryPane.getChildren().add(label);
 		queryPane.getChildren().add(textField);
 
@@ -69,17 +223,16 @@ public class GraphingCalculator extends Application {
 		chart.setTranslateX(0);
 		chart.setTranslateY(0);
 		graphPane.getChildren().add(chart);
+		final CurveCanvas canvas = new CurveCanvas(chart);
+		graphPane.getChildren().add(canvas);
 
 		graphButton.setOnMouseClicked(new EventHandler<MouseEvent>() {
 			public void handle (MouseEvent e) {
 				try {
-					final Expression expression = expressionParser.parse(textField.getText());
-					graph(chart, expression, true);
-					System.out.println(expression.convertToString(0));
-					if (diffBox.isSelected()) {
-						final Expression derivative = expression.differentiate();
-						graph(chart, derivative, false);
-					}
+					final String source = textField.getText();
+					final Expression expression = expressionParser.parse(source);
+					graph(chart, canvas, expression, source, diffBox.isSelected(), textField);
+					print(expression);
 				} catch (ExpressionParseException epe) {
 					textField.setStyle("-fx-text-fill: red");
 				} catch (UnsupportedOperationException epe) {
@@ -92,22 +245,51 @@ public class GraphingCalculator extends Application {
 
 		////////////////////////////////////Extra Credit/////////////////////////////////////
 		/*
-		 * Sets autoscaling on and off when the box is ticked.
+		 * Sets autoscaling on and off when the box is ticked. The chart itself holds no data
+		 * (the curves are drawn on the canvas), so the graph is resampled, which fits the y-axis to the curves.
 		 */
 		autoScaleBox.setOnMouseClicked(new EventHandler<MouseEvent>() {
 			@Override
 			public void handle (MouseEvent event) {
-				if (autoScaleBox.isSelected()) {
-					chart.getXAxis().setAutoRanging(true);
-					chart.getYAxis().setAutoRanging(true);
-				} else {
-					chart.getXAxis().setAutoRanging(false);
-					chart.getYAxis().setAutoRanging(false);
+				isAutoScaleEnabled = autoScaleBox.isSelected();
+				if (isAutoScaleEnabled && graphedExpression != null) {
+					resample(chart, canvas, textField);
 				}
 			}
 		});
 		queryPane.getChildren().add(autoScaleBox);
 
+		/*
+		 * Marks the roots and extrema in the visible range when the box is ticked; they are found again
+		 * with every resample, so they follow the view.
+		 */
+		markBox.setOnMouseClicked(new EventHandler<MouseEvent>() {
+			@Override
+			public void handle (MouseEvent event) {
+				isMarkingEnabled = markBox.isSelected();
+				if (graphedExpression != null) {
+					resample(chart, canvas, textField);
+				}
+			}
+		});
+		queryPane.getChildren().add(markBox);
+
+		/*
+		 * Shades the area between the curve and the x-axis when the box is ticked, and shows its integral
+		 * over the visible range, which is computed again with every resample.
+		 */
+		shadeBox.setOnMouseClicked(new EventHandler<MouseEvent>() {
+			@Override
+			public void handle (MouseEvent event) {
+				isShadingEnabled = shadeBox.isSelected();
+				if (graphedExpression != null) {
+					resample(chart, canvas, textField);
+				}
+			}
+		});
+		queryPane.getChildren().add(shadeBox);
+		queryPane.getChildren().add(areaLabel);
+
 		/*
 		 * Enables and disables the drag feature when the box is ticked.
 		 */
@@ -119,6 +301,29 @@ public class GraphingCalculator extends Application {
 		});
 		queryPane.getChildren().add(toggleNavigationBox);
 
+		/*
+		 * Resamples the graphed expression whenever the visible range or the size of the chart changes,
+		 * which covers zooming, dragging, recentering and resetting. Rapid changes are debounced so that
+		 * only the last one of a burst of scroll or drag events triggers a resample, and the tile cache
+		 * means a resample after a pan only evaluates the newly exposed strip. Until then the canvas
+		 * redraws the curves it already has at the new bounds.
+		 */
+		final PauseTransition resampleDelay = new PauseTransition(Duration.millis(RESAMPLE_DELAY_MILLIS));
+		resampleDelay.setOnFinished(event -> {
+			if (graphedExpression != null) {
+				resample(chart, canvas, textField);
+			}
+		});
+		final ChangeListener<Number> viewportListener = (observable, oldValue, newValue) -> {
+			canvas.redraw();
+			resampleDelay.playFromStart();
+		};
+		((NumberAxis) chart.getXAxis()).lowerBoundProperty().addListener(viewportListener);
+		((NumberAxis) chart.getXAxis()).upperBoundProperty().addListener(viewportListener);
+		((NumberAxis) chart.getYAxis()).lowerBoundProperty().addListener(viewportListener);
+		((NumberAxis) chart.getYAxis()).upperBoundProperty().addListener(viewportListener);
+		chart.getXAxis().widthProperty().addListener(viewportListener);
+
 		/*
 		 * Allows the graph to zoom in and out when the mouse is scrolled
 		 */
@@ -0,0 +1,100 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates an expression of two variables over an nx by ny grid, as for a surface z = f(x, y).
+ * The grid is cut into bands of rows that are evaluated in parallel on a ForkJoinPool; each band
+ * has its own copy of the environment, so the expression is only ever read.
+ * Every point goes through evaluate(double[] env), which reads variables by slot without lookups.
+ */
+public class GridEvaluator {
+    static final int MIN_POINTS_PER_TASK = 4096;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new GridEvaluator that uses the common pool.
+     */
+    public GridEvaluator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new GridEvaluator.
+     * @param pool the pool to evaluate bands of rows on
+     */
+    public GridEvaluator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Evaluates the expression at every point of the grid. The value at column i and row j,
+     * where the variable in xSlot is xFrom + i*xStep and the one in ySlot is yFrom + j*yStep,
+     * is stored in out[j*nx + i].
+     * @param expression the expression to evaluate
+     * @param env the values of the other variables, indexed by slot; it is not modified
+     * @param xSlot the slot of the variable that changes along a row
+     * @param xFrom the value of that variable in the first column
+     * @param xStep the distance between columns
+     * @param nx how many columns there are
+     * @param ySlot the slot of the variable that changes from row to row
+     * @param yFrom the value of that variable in the first row
+     * @param yStep the distance between rows
+     * @param ny how many rows there are
+     * @param out where to store the results. Must be at least nx*ny long.
+     */
+    public void evaluate(Expression expression, double[] env, int xSlot, double xFrom, double xStep, int nx,
+                         int ySlot, double yFrom, double yStep, int ny, double[] out) {
+        final int rowsPerTask = Math.max(1, MIN_POINTS_PER_TASK / Math.max(1, nx));
+        pool.invoke(new BandTask(expression, env, xSlot, xFrom, xStep, nx, ySlot, yFrom, yStep, 0, ny, rowsPerTask, out));
+    }
+
+    /**
+     * Evaluates the rows [from, to), splitting the range in half until it is no more than rowsPerTask rows.
+     */
+    private static class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Expression expression;
+        private final double[] env;
+        private final int xSlot, ySlot, nx, from, to, rowsPerTask;
+        private final double xFrom, xStep, yFrom, yStep;
+        private final double[] out;
+
+        BandTask(Expression expression, double[] env, int xSlot, double xFrom, double xStep, int nx,
+                 int ySlot, double yFrom, double yStep, int from, int to, int rowsPerTask, double[] out) {
+            this.expression = expression;
+            this.env = env;
+            this.xSlot = xSlot;
+            this.xFrom = xFrom;
+            this.xStep = xStep;
+            this.nx = nx;
+            this.ySlot = ySlot;
+            this.yFrom = yFrom;
+            this.yStep = yStep;
+            this.from = from;
+            this.to = to;
+            this.rowsPerTask = rowsPerTask;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > rowsPerTask) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new BandTask(expression, env, xSlot, xFrom, xStep, nx, ySlot, yFrom, yStep, from, middle, rowsPerTask, out),
+                        new BandTask(expression, env, xSlot, xFrom, xStep, nx, ySlot, yFrom, yStep, middle, to, rowsPerTask, out));
+                return;
+            }
+            final double[] local = env.clone();
+            for (int j = from; j < to; j++) {
+                local[ySlot] = yFrom + j * yStep;
+                final int row = j * nx;
+                for (int i = 0; i < nx; i++) {
+                    local[xSlot] = xFrom + i * xStep;
+                    out[row + i] = expression.evaluate(local);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * The value of a definite integral as computed by Integrator, with an estimate of its error
+ * and the number of times the expression was evaluated to get it.
+ */
+public class IntegrationResult {
+    private final double value;
+    private final double errorEstimate;
+    private final long evaluations;
+    private final boolean converged;
+
+    /**
+     * Creates a new IntegrationResult.
+     * @param value the value of the integral
+     * @param errorEstimate an estimate of the absolute error of value
+     * @param evaluations how many times the expression was evaluated
+     * @param converged whether every part of the range met the tolerance
+     */
+    public IntegrationResult(double value, double errorEstimate, long evaluations, boolean converged) {
+        this.value = value;
+        this.errorEstimate = errorEstimate;
+        this.evaluations = evaluations;
+        this.converged = converged;
+    }
+
+    /**
+     * @return the value of the integral
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * @return an estimate of the absolute error of getValue(), the sum of the estimates for each part of the range
+     */
+    public double getErrorEstimate() {
+        return errorEstimate;
+    }
+
+    /**
+     * @return how many times the expression was evaluated
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * @return whether every part of the range met the tolerance; if not, the expression is undefined or
+     *         infinite somewhere in the range, or too rough to integrate within the maximum number of splits
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    @Override
+    public String toString() {
+        return value + " +/- " + errorEstimate + " (" + evaluations + " evaluations" + (converged ? ")" : ", not converged)");
+    }
+}
@@ -0,0 +1,205 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes definite integrals by adaptive Gauss-Kronrod quadrature. The range is cut into INITIAL_SEGMENTS
+ * segments, and each is integrated by the 15-point Kronrod rule. Its error is estimated, as in QUADPACK,
+ * from the difference to the 7-point Gauss rule on the same nodes, scaled up where that difference is
+ * large next to the variation of the expression over the segment, since the two rules can agree by chance
+ * on a segment neither resolves. A segment whose error is more than its share of the tolerance,
+ * in proportion to its width, is halved, so the work goes where the expression is steep or curved.
+ * The nodes of all initial segments, and those of both halves of a split segment, are evaluated
+ * together with the batch evaluate API. Segments are refined in parallel on a ForkJoinPool.
+ * Splitting stops at MAX_DEPTH halvings, or once a call has used MAX_EVALUATIONS evaluations.
+ */
+public class Integrator {
+    static final int INITIAL_SEGMENTS = 16;
+    static final double DEFAULT_ABSOLUTE_TOLERANCE = 1e-10;
+    static final double DEFAULT_RELATIVE_TOLERANCE = 1e-10;
+    static final int MAX_DEPTH = 30;
+    static final long MAX_EVALUATIONS = 1 << 20;
+    static final int NODES = 15;
+
+    // the non-negative Kronrod nodes on [-1, 1]; the odd ones are the Gauss nodes
+    private static final double[] KRONROD_NODES = {
+            0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+            0.864864423359769072789712788640926, 0.741531185599394439863864773280788,
+            0.586087235467691130294144845693013, 0.405845151377397166906606412076961,
+            0.207784955007898467600689403773245, 0 };
+    private static final double[] KRONROD_WEIGHTS = {
+            0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+            0.104790010322250183839876322541518, 0.140653259715525918745189590510238,
+            0.169004726639267902826583426598550, 0.190350578064785409913256402421014,
+            0.204432940075298892414161999234649, 0.209482141084727828012999174891714 };
+    private static final double[] GAUSS_WEIGHTS = {
+            0.129484966168869693270611432679082, 0.279705391489276667901467771423780,
+            0.381830050505118944950369775488975, 0.417959183673469387755102040816327 };
+
+    private final double absoluteTolerance;
+    private final double relativeTolerance;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new Integrator with the default tolerances, using the common pool.
+     */
+    public Integrator() {
+        this(DEFAULT_ABSOLUTE_TOLERANCE, DEFAULT_RELATIVE_TOLERANCE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new Integrator. The estimated error of a result is within the larger of the two tolerances
+     * unless the result is reported as not converged.
+     * @param absoluteTolerance the largest acceptable absolute error
+     * @param relativeTolerance the largest acceptable error relative to the value of the integral
+     * @param pool the pool to refine segments on
+     */
+    public Integrator(double absoluteTolerance, double relativeTolerance, ForkJoinPool pool) {
+        this.absoluteTolerance = absoluteTolerance;
+        this.relativeTolerance = relativeTolerance;
+        this.pool = pool;
+    }
+
+    /**
+     * Integrates the expression over [from, to], or minus the integral over [to, from] if to is less than from.
+     * The expression is never evaluated at from or to themselves, so it may be infinite there.
+     * @param expression the expression to integrate
+     * @param from the lower limit
+     * @param to the upper limit
+     * @return the integral, its estimated error and how many evaluations it took
+     */
+    public IntegrationResult integrate(Expression expression, double from, double to) {
+        if (from > to) {
+            final IntegrationResult reversed = integrate(expression, to, from);
+            return new IntegrationResult(-reversed.getValue(), reversed.getErrorEstimate(), reversed.getEvaluations(),
+                    reversed.isConverged());
+        }
+        if (from == to) {
+            return new IntegrationResult(0, 0, 0, true);
+        }
+        final double step = (to - from) / INITIAL_SEGMENTS;
+        final double[] xs = new double[INITIAL_SEGMENTS * NODES];
+        for (int i = 0; i < INITIAL_SEGMENTS; i++) {
+            nodes(from + i * step, i == INITIAL_SEGMENTS - 1 ? to : from + (i + 1) * step, xs, i * NODES);
+        }
+        final double[] ys = new double[xs.length];
+        expression.evaluate(xs, ys);
+
+        double estimate = 0; // of the parts where the expression is finite, for the relative tolerance
+        for (int i = 0; i < INITIAL_SEGMENTS; i++) {
+            final double segment = rule(KRONROD_WEIGHTS, ys, i * NODES) * 0.5 * step;
+            estimate += Double.isFinite(segment) ? segment : 0;
+        }
+        // the tolerance is shared out in proportion to width, so the errors of the segments add up to at most it
+        final double tolerancePerUnit = Math.max(absoluteTolerance, relativeTolerance * Math.abs(estimate)) / (to - from);
+        final AtomicLong budget = new AtomicLong(MAX_EVALUATIONS - xs.length);
+        final SegmentTask[] tasks = new SegmentTask[INITIAL_SEGMENTS];
+        for (int i = 0; i < INITIAL_SEGMENTS; i++) {
+            tasks[i] = new SegmentTask(expression, from + i * step, i == INITIAL_SEGMENTS - 1 ? to : from + (i + 1) * step,
+                    ys, i * NODES, 0, tolerancePerUnit, budget);
+        }
+        final IntegrationResult result = pool.invoke(new RecursiveTask<IntegrationResult>() {
+            @Override
+            protected IntegrationResult compute() {
+                invokeAll(tasks);
+                IntegrationResult sum = tasks[0].join();
+                for (int i = 1; i < tasks.length; i++) {
+                    sum = add(sum, tasks[i].join(), 0);
+                }
+                return sum;
+            }
+        });
+        return new IntegrationResult(result.getValue(), result.getErrorEstimate(), result.getEvaluations() + xs.length,
+                result.isConverged());
+    }
+
+    /**
+     * Stores the 15 Kronrod nodes of [a, b] in xs from offset on, in increasing order.
+     */
+    private static void nodes(double a, double b, double[] xs, int offset) {
+        final double center = 0.5 * (a + b), half = 0.5 * (b - a);
+        for (int j = 0; j < 7; j++) {
+            xs[offset + j] = center - half * KRONROD_NODES[j];
+            xs[offset + NODES - 1 - j] = center + half * KRONROD_NODES[j];
+        }
+        xs[offset + 7] = center;
+    }
+
+    /**
+     * @return the weighted sum of the values at the 15 nodes from offset on, for the Kronrod weights, or for the
+     *         Gauss weights, which only apply to every other node; times half the width, it is the integral
+     */
+    private static double rule(double[] weights, double[] ys, int offset) {
+        final int stride = weights == GAUSS_WEIGHTS ? 2 : 1;
+        double sum = weights[weights.length - 1] * ys[offset + 7];
+        for (int j = stride - 1, w = 0; j < 7; j += stride, w++) {
+            sum += weights[w] * (ys[offset + j] + ys[offset + NODES - 1 - j]);
+        }
+        return sum;
+    }
+
+    /**
+     * @return QUADPACK's error estimate for the 15 nodes from offset on, given both rules, to be scaled by half the width:
+     *         the difference of the rules, grown towards the mean deviation of the values from their mean as it nears that
+     */
+    private static double error(double[] ys, int offset, double kronrod, double gauss) {
+        final double mean = 0.5 * kronrod; // the Kronrod weights add up to 2
+        double deviation = KRONROD_WEIGHTS[7] * Math.abs(ys[offset + 7] - mean);
+        for (int j = 0; j < 7; j++) {
+            deviation += KRONROD_WEIGHTS[j] * (Math.abs(ys[offset + j] - mean) + Math.abs(ys[offset + NODES - 1 - j] - mean));
+        }
+        final double difference = Math.abs(kronrod - gauss);
+        return deviation == 0 ? difference : deviation * Math.min(1, Math.pow(200 * difference / deviation, 1.5));
+    }
+
+    private static IntegrationResult add(IntegrationResult a, IntegrationResult b, long evaluations) {
+        return new IntegrationResult(a.getValue() + b.getValue(), a.getErrorEstimate() + b.getErrorEstimate(),
+                a.getEvaluations() + b.getEvaluations() + evaluations, a.isConverged() && b.isConverged());
+    }
+
+    /**
+     * Integrates one segment, whose nodes have already been evaluated, halving it if it is not accurate enough.
+     */
+    private static class SegmentTask extends RecursiveTask<IntegrationResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final Expression expression;
+        private final double a, b;
+        private final double kronrod, error;
+        private final int depth;
+        private final double tolerancePerUnit;
+        private final AtomicLong budget; // evaluations left for the whole call
+
+        SegmentTask(Expression expression, double a, double b, double[] ys, int offset, int depth, double tolerancePerUnit,
+                    AtomicLong budget) {
+            this.expression = expression;
+            this.a = a;
+            this.b = b;
+            this.depth = depth;
+            this.tolerancePerUnit = tolerancePerUnit;
+            this.budget = budget;
+            final double k = rule(KRONROD_WEIGHTS, ys, offset);
+            this.kronrod = k * 0.5 * (b - a);
+            this.error = error(ys, offset, k, rule(GAUSS_WEIGHTS, ys, offset)) * 0.5 * (b - a);
+        }
+
+        @Override
+        protected IntegrationResult compute() {
+            final boolean accurate = error <= tolerancePerUnit * (b - a);
+            // splitting does not help where the expression is undefined or infinite at a node
+            if (accurate || depth == MAX_DEPTH || !Double.isFinite(kronrod) || budget.addAndGet(-2 * NODES) < 0) {
+                return new IntegrationResult(kronrod, error, 0, accurate);
+            }
+            final double middle = 0.5 * (a + b);
+            final double[] xs = new double[2 * NODES];
+            nodes(a, middle, xs, 0);
+            nodes(middle, b, xs, NODES);
+            final double[] ys = new double[xs.length];
+            expression.evaluate(xs, ys);
+            final SegmentTask left = new SegmentTask(expression, a, middle, ys, 0, depth + 1, tolerancePerUnit, budget);
+            final SegmentTask right = new SegmentTask(expression, middle, b, ys, NODES, depth + 1, tolerancePerUnit, budget);
+            invokeAll(left, right);
+            return add(left.join(), right.join(), xs.length);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks adaptive integration against closed forms.
+ */
+public class IntegratorTester {
+	private ExpressionParser _parser;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser();
+	}
+
+	/**
+	 * Verifies smooth integrals, reversed limits, and that the error estimate bounds the actual error.
+	 */
+	@Test
+	public void testSmooth () throws ExpressionParseException {
+		final Integrator integrator = new Integrator();
+		final IntegrationResult cubic = integrator.integrate(_parser.parse("x^3 - 2*x + 1"), 0, 2);
+		assertEquals(2, cubic.getValue(), 1e-12);
+		assertTrue(cubic.isConverged());
+		assertEquals(Integrator.INITIAL_SEGMENTS * Integrator.NODES, cubic.getEvaluations());
+
+		final IntegrationResult log = integrator.integrate(_parser.parse("log(x)"), 1, 100);
+		final double exact = 100 * Math.log(100) - 99;
+		assertEquals(exact, log.getValue(), Math.max(log.getErrorEstimate(), 1e-9 * exact));
+		assertTrue(log.getErrorEstimate() <= Integrator.DEFAULT_RELATIVE_TOLERANCE * exact);
+
+		assertEquals(-2, integrator.integrate(_parser.parse("x^3 - 2*x + 1"), 2, 0).getValue(), 1e-12);
+		assertEquals(0, integrator.integrate(_parser.parse("x"), 3, 3).getValue());
+	}
+
+	/**
+	 * Verifies that steep regions and integrable singularities are refined where needed, with far fewer
+	 * evaluations than uniform sampling would take for the same accuracy, and that an undefined
+	 * integrand is reported as not converged.
+	 */
+	@Test
+	public void testSteep () throws ExpressionParseException {
+		final Integrator integrator = new Integrator();
+		final IntegrationResult peak = integrator.integrate(_parser.parse("1/(1 + 10000*x^2)"), -1, 1);
+		assertEquals(Math.atan(100) / 50, peak.getValue(), 1e-12);
+		assertTrue(peak.isConverged());
+		assertTrue(peak.getEvaluations() < 5000, peak.toString());
+
+		final IntegrationResult singular = integrator.integrate(_parser.parse("x^-0.5"), 0, 1);
+		assertEquals(2, singular.getValue(), 1e-6);
+
+		final IntegrationResult wide = integrator.integrate(_parser.parse("1/x"), 1, 1e6);
+		assertEquals(Math.log(1e6), wide.getValue(), 1e-8);
+
+		final IntegrationResult undefined = integrator.integrate(_parser.parse("log(x)"), -2, 1);
+		assertFalse(undefined.isConverged());
+		assertTrue(Double.isNaN(undefined.getValue()));
+	}
+}
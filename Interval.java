@@ -0,0 +1,303 @@
+import java.util.ArrayDeque;
+
+/**
+ * A closed range [lo, hi] that contains every value an expression takes over a range of x,
+ * as computed by Expression.evaluateInterval. Points where the expression is undefined (NaN)
+ * are left out, so the interval bounds the part of the curve that can be drawn. The bounds may
+ * be infinite, and an expression that is undefined everywhere in the range has the empty interval.
+ * Every bound computed here is rounded outwards by one ulp, which covers the rounding of the
+ * arithmetic and of Math.log and Math.pow, so the bounds hold for the values evaluate computes.
+ */
+public class Interval {
+    /**
+     * The interval holding no values.
+     */
+    public static final Interval EMPTY = new Interval(Double.NaN, Double.NaN);
+
+    /**
+     * The interval holding every value.
+     */
+    public static final Interval ENTIRE = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    static final double RANGE_TOLERANCE = 0.01;
+    static final int MAX_RANGE_DEPTH = 10;
+
+    private final double lo;
+    private final double hi;
+
+    /**
+     * Creates a new Interval.
+     * @param lo the lower bound
+     * @param hi the upper bound, at least lo
+     */
+    public Interval(double lo, double hi) {
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    /**
+     * @return the interval holding only value, or EMPTY if it is NaN
+     */
+    public static Interval of(double value) {
+        return Double.isNaN(value) ? EMPTY : new Interval(value, value);
+    }
+
+    /**
+     * @return the lower bound, NaN if the interval is empty
+     */
+    public double getLo() {
+        return lo;
+    }
+
+    /**
+     * @return the upper bound, NaN if the interval is empty
+     */
+    public double getHi() {
+        return hi;
+    }
+
+    /**
+     * @return whether the interval holds no values
+     */
+    public boolean isEmpty() {
+        return Double.isNaN(lo);
+    }
+
+    /**
+     * @return whether both bounds are finite; the empty interval is not bounded
+     */
+    public boolean isBounded() {
+        return Double.isFinite(lo) && Double.isFinite(hi);
+    }
+
+    /**
+     * @return whether value lies in the interval
+     */
+    public boolean contains(double value) {
+        return lo <= value && value <= hi;
+    }
+
+    /**
+     * @return the smallest interval holding both this one and other
+     */
+    public Interval hull(Interval other) {
+        if (isEmpty()) {
+            return other;
+        }
+        if (other.isEmpty()) {
+            return this;
+        }
+        return new Interval(Math.min(lo, other.lo), Math.max(hi, other.hi));
+    }
+
+    /**
+     * Bounds an expression over [from, to] by cutting the range into pieces and taking the hull of
+     * the bounds of those pieces that are bounded, which leaves out the pieces holding a pole, as a
+     * plot clips those anyway. Interval arithmetic overestimates when x appears more than once, by an
+     * amount that shrinks with the width of a piece, so a piece whose bounds reach further than
+     * RANGE_TOLERANCE of the range beyond the values seen at the midpoints of the pieces so far is halved,
+     * up to MAX_RANGE_DEPTH times. Only the pieces at the extremes of the curve are ever split.
+     * @param expression the expression to bound
+     * @param from the smallest x
+     * @param to the largest x
+     * @param pieces how many pieces to cut [from, to] into at first
+     * @return bounds of the expression everywhere in [from, to] but in the pieces whose bounds are infinite;
+     *         EMPTY if every piece is unbounded or empty
+     */
+    public static Interval rangeOf(Expression expression, double from, double to, int pieces) {
+        final double step = (to - from) / pieces;
+        final ArrayDeque<double[]> stack = new ArrayDeque<>(); // pieces as { a, b, depth }
+        double seenLo = Double.POSITIVE_INFINITY, seenHi = Double.NEGATIVE_INFINITY;
+        for (int i = pieces - 1; i >= 0; i--) {
+            final double a = from + i * step, b = i == pieces - 1 ? to : from + (i + 1) * step;
+            final double y = expression.evaluate(0.5 * (a + b));
+            if (Double.isFinite(y)) {
+                seenLo = Math.min(seenLo, y);
+                seenHi = Math.max(seenHi, y);
+            }
+            stack.push(new double[] { a, b, 0 });
+        }
+        Interval range = EMPTY;
+        while (!stack.isEmpty()) {
+            final double[] piece = stack.pop();
+            final Interval bounds = expression.evaluateInterval(piece[0], piece[1]);
+            if (!bounds.isBounded()) {
+                continue;
+            }
+            final double slack = seenLo > seenHi ? 0 : RANGE_TOLERANCE * (seenHi - seenLo);
+            if (piece[2] < MAX_RANGE_DEPTH && (bounds.lo < seenLo - slack || bounds.hi > seenHi + slack)) {
+                final double middle = 0.5 * (piece[0] + piece[1]);
+                for (double x : new double[] { 0.5 * (piece[0] + middle), 0.5 * (middle + piece[1]) }) {
+                    final double y = expression.evaluate(x);
+                    if (Double.isFinite(y)) {
+                        seenLo = Math.min(seenLo, y);
+                        seenHi = Math.max(seenHi, y);
+                    }
+                }
+                stack.push(new double[] { middle, piece[1], piece[2] + 1 });
+                stack.push(new double[] { piece[0], middle, piece[2] + 1 });
+            } else {
+                range = range.hull(bounds);
+            }
+        }
+        return range;
+    }
+
+    /**
+     * Applies a binary operator to two intervals, like OperationHandler.apply to two values.
+     */
+    static Interval apply(char op, Interval l, Interval r) {
+        switch (op) {
+            case '+':
+                return add(l, r);
+            case '-':
+                return subtract(l, r);
+            case '*':
+                return multiply(l, r);
+            case '/':
+                return divide(l, r);
+            case '^':
+                return pow(l, r);
+            default:
+                throw new IllegalArgumentException("Invalid operator: " + op);
+        }
+    }
+
+    static Interval add(Interval l, Interval r) {
+        if (l.isEmpty() || r.isEmpty()) {
+            return EMPTY;
+        }
+        return outward(l.lo + r.lo, l.hi + r.hi);
+    }
+
+    static Interval subtract(Interval l, Interval r) {
+        if (l.isEmpty() || r.isEmpty()) {
+            return EMPTY;
+        }
+        return outward(l.lo - r.hi, l.hi - r.lo);
+    }
+
+    /**
+     * The extremes of a product are among the products of the bounds. An infinite bound is only
+     * approached, and 0 times any finite value is 0, so a product of 0 and an infinite bound counts as 0.
+     */
+    static Interval multiply(Interval l, Interval r) {
+        if (l.isEmpty() || r.isEmpty()) {
+            return EMPTY;
+        }
+        return corners(times(l.lo, r.lo), times(l.lo, r.hi), times(l.hi, r.lo), times(l.hi, r.hi));
+    }
+
+    private static double times(double a, double b) {
+        return a == 0 || b == 0 ? 0 : a * b;
+    }
+
+    /**
+     * A divisor that may be zero makes the quotient unbounded on both sides, since a divisor of
+     * -0.0 turns +infinity into -infinity, unless the dividend is always zero.
+     */
+    static Interval divide(Interval l, Interval r) {
+        if (l.isEmpty() || r.isEmpty()) {
+            return EMPTY;
+        }
+        if (r.contains(0)) {
+            return l.lo == 0 && l.hi == 0 ? new Interval(0, 0) : ENTIRE;
+        }
+        return corners(l.lo / r.lo, l.lo / r.hi, l.hi / r.lo, l.hi / r.hi);
+    }
+
+    /**
+     * Math.pow is defined for negative bases only at whole exponents, where the sign of the result
+     * follows the parity of the exponent. A constant exponent is bounded exactly: the non-negative and
+     * the negative parts of the base are each mapped monotonically. Otherwise x^y is monotone in x and in y
+     * for positive x, so the bounds come from the corners, and a negative base with a whole exponent
+     * in range could give anything.
+     */
+    static Interval pow(Interval l, Interval r) {
+        if (r.lo == 0 && r.hi == 0) {
+            return new Interval(1, 1); // Math.pow(x, 0) is 1 even for NaN
+        }
+        if (l.isEmpty() || r.isEmpty()) {
+            return !l.isEmpty() || !r.contains(0) ? EMPTY : new Interval(1, 1);
+        }
+        if (r.lo == r.hi) {
+            return pow(l, r.lo);
+        }
+        Interval result = EMPTY;
+        if (l.hi >= 0) {
+            final double lo = Math.max(l.lo, 0);
+            result = corners(Math.pow(lo, r.lo), Math.pow(lo, r.hi), Math.pow(l.hi, r.lo), Math.pow(l.hi, r.hi));
+        }
+        if (l.lo < 0 && Math.floor(r.hi) >= r.lo) {
+            return ENTIRE;
+        }
+        if (l.lo == 0 && r.lo <= -1) {
+            result = result.hull(new Interval(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY)); // -0.0 to an odd negative power
+        }
+        return r.contains(0) ? result.hull(new Interval(1, 1)) : result;
+    }
+
+    /**
+     * @return the bounds of x^exponent for x in base
+     */
+    private static Interval pow(Interval base, double exponent) {
+        Interval result = EMPTY;
+        if (base.hi >= 0) {
+            result = monotonePow(Math.max(base.lo, 0), base.hi, exponent);
+        }
+        if (base.lo <= 0 && Math.rint(exponent) == exponent) {
+            // |x|^exponent over the negative part, negated for odd exponents; a zero bound may be -0.0
+            final Interval magnitude = monotonePow(Math.max(0, -base.hi), 0 - base.lo, exponent);
+            result = result.hull(Math.abs(exponent % 2) == 1 ? new Interval(-magnitude.hi, -magnitude.lo) : magnitude);
+        }
+        return result;
+    }
+
+    /**
+     * @return the bounds of x^exponent for x in [lo, hi], where 0 <= lo <= hi
+     */
+    private static Interval monotonePow(double lo, double hi, double exponent) {
+        final double atLo = Math.pow(lo, exponent), atHi = Math.pow(hi, exponent);
+        if (Double.isNaN(atLo) || Double.isNaN(atHi)) {
+            return ENTIRE; // |x| = 1 to an infinite power
+        }
+        return exponent > 0 ? outward(atLo, atHi) : outward(atHi, atLo);
+    }
+
+    /**
+     * log is undefined below zero and -infinity at zero.
+     */
+    static Interval log(Interval l) {
+        if (l.isEmpty() || l.hi < 0) {
+            return EMPTY;
+        }
+        return outward(Math.log(Math.max(l.lo, 0)), Math.log(l.hi));
+    }
+
+    /**
+     * @return the interval from the least to the greatest of the values that are not NaN, rounded outwards
+     */
+    private static Interval corners(double a, double b, double c, double d) {
+        double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+        for (double value : new double[] { a, b, c, d }) {
+            if (!Double.isNaN(value)) {
+                lo = Math.min(lo, value);
+                hi = Math.max(hi, value);
+            }
+        }
+        return lo > hi ? EMPTY : outward(lo, hi);
+    }
+
+    /**
+     * @return [lo, hi] widened by one ulp on each side; a NaN bound, from infinity minus infinity, is unbounded
+     */
+    private static Interval outward(double lo, double hi) {
+        return new Interval(Double.isNaN(lo) ? Double.NEGATIVE_INFINITY : Math.nextDown(lo),
+                Double.isNaN(hi) ? Double.POSITIVE_INFINITY : Math.nextUp(hi));
+    }
+
+    @Override
+    public String toString() {
+        return isEmpty() ? "[]" : "[" + lo + ", " + hi + "]";
+    }
+}
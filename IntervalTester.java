@@ -0,0 +1,102 @@
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks interval evaluation: that the bounds hold every value evaluate computes, and that they are
+ * tight where interval arithmetic can be exact.
+ */
+public class IntervalTester {
+	private ExpressionParser _parser;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser();
+	}
+
+	/**
+	 * Verifies on random ranges, across poles, log domains and negative bases, that every defined value
+	 * of the expression in the range lies within its bounds.
+	 */
+	@Test
+	public void testBoundsHold () throws ExpressionParseException {
+		final String[] expressions = {
+				"10*x^3 + 2*(15+x) - 4*x^2 + 7", "(x^2 - 1)/(x^2 + 1) + 1/(x - 3)", "log(x*x + 1)*2^x - x^x/(1 + 5^(-1*x))",
+				"1/x", "x^-2 - x^-3", "x^0.5 + log(x)", "log(x - 5)", "(x-1)^x", "x^(x-2)", "2^(1/x)", "0/x", "x^0" };
+		final Random random = new Random(19);
+		for (String string : expressions) {
+			final Expression expression = _parser.parse(string);
+			for (int trial = 0; trial < 200; trial++) {
+				final double a = random.nextDouble() * 20 - 10;
+				final double b = a + random.nextDouble() * (trial % 2 == 0 ? 0.1 : 10);
+				final Interval bounds = expression.evaluateInterval(a, b);
+				for (int i = 0; i <= 100; i++) {
+					final double y = expression.evaluate(i == 100 ? b : a + i * (b - a) / 100);
+					if (!Double.isNaN(y)) {
+						assertTrue(bounds.contains(y), string + " over [" + a + ", " + b + "]: " + y + " not in " + bounds);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Verifies the bounds of single operations, which interval arithmetic gets exactly up to rounding.
+	 */
+	@Test
+	public void testSingleOperations () throws ExpressionParseException {
+		assertBounds(0, 4, _parser.parse("x^2").evaluateInterval(-1, 2));
+		assertBounds(-8, 1, _parser.parse("x^3").evaluateInterval(-2, 1));
+		assertBounds(-1, -0.5, _parser.parse("x^-1").evaluateInterval(-2, -1));
+		assertBounds(0, 2, _parser.parse("x^0.5").evaluateInterval(-4, 4));
+		assertBounds(1, 4, _parser.parse("x^x").evaluateInterval(1, 2));
+		assertBounds(0.5, 1, _parser.parse("1/x").evaluateInterval(1, 2));
+		assertBounds(Double.NEGATIVE_INFINITY, 0, _parser.parse("log(x)").evaluateInterval(0, 1));
+		assertBounds(-3, 5, _parser.parse("2*x - 1").evaluateInterval(-1, 3));
+
+		final Interval pole = _parser.parse("1/x").evaluateInterval(-1, 1);
+		assertTrue(pole.getLo() == Double.NEGATIVE_INFINITY && pole.getHi() == Double.POSITIVE_INFINITY);
+		assertTrue(_parser.parse("log(x)").evaluateInterval(-2, -1).isEmpty());
+		assertTrue(_parser.parse("x^0.5").evaluateInterval(-2, -1).isEmpty());
+		assertBounds(1, 1, _parser.parse("log(x)^0").evaluateInterval(-2, -1));
+
+		// 0 times an unbounded factor is 0 wherever the factor is defined
+		assertBounds(0, 0, Interval.multiply(new Interval(0, 0), Interval.ENTIRE));
+		assertBounds(0, 0, _parser.parse("0*(1/x)").evaluateInterval(-1, 1));
+		assertBounds(Double.NEGATIVE_INFINITY, 0, Interval.multiply(new Interval(0, 1), new Interval(Double.NEGATIVE_INFINITY, 0)));
+	}
+
+	/**
+	 * Verifies that the range of a curve found by subdivision holds every sample and is close to their range,
+	 * that pieces with a pole are left out, and that deep trees are bounded without recursion.
+	 */
+	@Test
+	public void testRangeOf () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x^3 - 6*x*x + 4*x");
+		final Interval range = Interval.rangeOf(expression, -2, 6, 128);
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for (double x = -2; x <= 6; x += 0.001) {
+			min = Math.min(min, expression.evaluate(x));
+			max = Math.max(max, expression.evaluate(x));
+		}
+		assertTrue(range.getLo() <= min && range.getHi() >= max);
+		assertTrue(min - range.getLo() < 0.05 * (max - min) && range.getHi() - max < 0.05 * (max - min));
+
+		final Interval hyperbola = Interval.rangeOf(_parser.parse("1/x"), -10, 10, 128);
+		assertTrue(hyperbola.isBounded() && hyperbola.getHi() < 10 && hyperbola.getLo() > -10);
+		assertTrue(Interval.rangeOf(_parser.parse("log(x)"), -10, -1, 16).isEmpty());
+
+		final Expression deep = _parser.parse("(".repeat(100000) + "x^2" + ")".repeat(100000));
+		assertBounds(0, 4, deep.evaluateInterval(-1, 2));
+	}
+
+	private static void assertBounds (double lo, double hi, Interval bounds) {
+		assertTrue(bounds.contains(lo) && bounds.contains(hi), lo + ", " + hi + " not in " + bounds);
+		assertEquals(lo, bounds.getLo(), 1e-12);
+		assertEquals(hi, bounds.getHi(), 1e-12);
+	}
+}
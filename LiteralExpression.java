@@ -1,9 +1,50 @@
+import java.io.IOException;
+import java.util.Arrays;
+
 public class LiteralExpression extends OperationHandler implements Expression {
-    private final float value;
+    private final double value; // a float for parsed literals, and kept in double when folded from constants
     public LiteralExpression (String value) {
         this.value = Float.parseFloat(value);
     }
 
+    /**
+     * Creates a literal holding a computed value, such as a folded constant. The value is kept in double,
+     * so folding does not round it to float as parsing would.
+     * @param value the value
+     */
+    LiteralExpression (double value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the value of this literal
+     */
+    double getValue() {
+        return value;
+    }
+
+    /**
+     * Computes the value of this expression at each of the given values of x.
+     * @param xs the values of the independent variable x
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double[] xs, double[] out) {
+        Arrays.fill(out, 0, xs.length, value);
+    }
+
+    /**
+     * Computes the value of this expression at the n evenly spaced values x = from + i*step.
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double from, double step, int n, double[] out) {
+        Arrays.fill(out, 0, n, value);
+    }
+
     /**
      Creates and returns a deep copy of the expression.
      The entire tree rooted at the target node is copied, i.e.,
@@ -12,7 +53,7 @@ public class LiteralExpression extends OperationHandler implements Expression {
      */
     @Override
     public Expression deepCopy() {
-        return new LiteralExpression(Float.toString(value));
+        return new LiteralExpression(value);
     }
 
     /**
@@ -25,7 +66,27 @@ public class LiteralExpression extends OperationHandler implements Expression {
      */
     @Override
     public String convertToString(int indentLevel) {
-        return "\t".repeat(indentLevel) + value + "\n";
+        return convertToString(this, indentLevel);
+    }
+
+    /**
+     * Appends the String representation of this expression to out, as convertToString would produce it.
+     *
+     * @param out where to append the String representation
+     * @param indentLevel how many tab characters should appear at the beginning of each line.
+     * @throws IOException if out throws it
+     */
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        appendIndent(out, indentLevel);
+        out.append(toString(value)).append('\n');
+    }
+
+    /**
+     * @return the value as a float prints if it is one, as every parsed literal is, and otherwise as a double prints
+     */
+    static String toString(double value) {
+        return (float) value == value || Double.isNaN(value) ? String.valueOf((float) value) : String.valueOf(value);
     }
 
     /**
@@ -38,6 +99,55 @@ public class LiteralExpression extends OperationHandler implements Expression {
         return value;
     }
 
+    /**
+     * Computes the value of this expression with the variables read from env.
+     * @param env the value of every variable, indexed by slot
+     * @return the value of this expression.
+     */
+    @Override
+    public double evaluate(double[] env) {
+        return value;
+    }
+
+    /**
+     * Given the value of the independent variable x, compute the value of this expression
+     * and of its derivative together.
+     *
+     * @param x the value of the independent variable x
+     * @return the value of this expression and of its derivative
+     */
+    @Override
+    public DualNumber evaluateWithDerivative(double x) {
+        return new DualNumber(value, 0);
+    }
+
+    /**
+     * Computes the value of this expression and of its derivative at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param values where to store the values of the expression
+     * @param derivatives where to store the values of the derivative
+     */
+    @Override
+    public void evaluateWithDerivative(double from, double step, int n, double[] values, double[] derivatives) {
+        Arrays.fill(values, 0, n, value);
+        Arrays.fill(derivatives, 0, n, 0);
+    }
+
+    /**
+     * Computes bounds of the values of this expression for every x in [lo, hi].
+     *
+     * @param lo the smallest value of the independent variable x
+     * @param hi the largest value of the independent variable x
+     * @return bounds of the values of this expression
+     */
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        return Interval.of(value);
+    }
+
     /**
      * Produce a new, fully independent (i.e., there should be no shared subtrees) Expression
      * representing the derivative of this expression.
@@ -48,4 +158,32 @@ public class LiteralExpression extends OperationHandler implements Expression {
     public Expression differentiate() {
         return new LiteralExpression("0");
     }
+
+    /**
+     * The partial derivative of a constant is 0 whatever the variable.
+     * @param slot the slot of the variable to differentiate by
+     * @return the derivative of this expression
+     */
+    @Override
+    public Expression differentiate(int slot) {
+        return new LiteralExpression("0");
+    }
+
+    /**
+     * Two literals are equal if they hold the same value.
+     * @param o the object to compare with
+     * @return whether o is a literal with the same value
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LiteralExpression && Double.compare(value, ((LiteralExpression) o).value) == 0;
+    }
+
+    /**
+     * @return a hash code consistent with equals
+     */
+    @Override
+    public int hashCode() {
+        return Double.hashCode(value);
+    }
 }
@@ -0,0 +1,96 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks expressions in several named variables: parsing into slots, evaluation from an environment,
+ * partial derivatives and grid evaluation.
+ */
+public class MultivariateTester {
+	private SimpleExpressionParser _parser;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser("x", "y", "logistic");
+	}
+
+	/**
+	 * Verifies that variables are resolved to their slots and printed by name, and that
+	 * the longest of a variable name, log and a number is the token.
+	 */
+	@Test
+	public void testParse () throws ExpressionParseException {
+		assertEquals(1, _parser.slotOf("y"));
+		assertEquals(3, _parser.variableCount());
+		final Expression expression = _parser.parse("x*y + logistic - log(y)");
+		assertEquals("-\n\t+\n\t\t*\n\t\t\tx\n\t\t\ty\n\t\tlogistic\n\tl\n\t\t()\n\t\t\ty\n", expression.convertToString(0));
+		assertEquals(2 * 3 + 4 - Math.log(3), expression.evaluate(new double[] { 2, 3, 4 }), 1e-12);
+
+		assertThrows(ExpressionParseException.class, () -> new SimpleExpressionParser().parse("x*y"));
+		assertThrows(IllegalArgumentException.class, () -> new SimpleExpressionParser("x", "log"));
+		assertThrows(IllegalArgumentException.class, () -> new SimpleExpressionParser("x", "x"));
+	}
+
+	/**
+	 * Verifies that evaluate(double[]) agrees with evaluate(double) for expressions in x alone,
+	 * and that only x can be bound by evaluate(double).
+	 */
+	@Test
+	public void testSingleVariable () throws ExpressionParseException {
+		final Expression expression = _parser.parse("10*x^3 + 2*(15+x) - log(x)/x");
+		for (double x = 0.5; x < 5; x += 0.5) {
+			assertEquals(expression.evaluate(x), expression.evaluate(new double[] { x, 100, 100 }));
+			assertEquals(expression.evaluate(x), ExpressionCompiler.compile(expression).evaluate(new double[] { x }));
+		}
+		final Expression withY = _parser.parse("x + y");
+		assertThrows(UnsupportedOperationException.class, () -> withY.evaluate(1));
+		assertEquals(3, new DagExpression(withY).evaluate(new double[] { 1, 2 }));
+	}
+
+	/**
+	 * Verifies partial derivatives against closed forms.
+	 */
+	@Test
+	public void testPartialDerivatives () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x^2*y + y^3 - 4*x + log(x*y)");
+		final Expression byX = expression.differentiate(0);
+		final Expression byY = expression.differentiate(_parser.slotOf("y"));
+		final Expression byLogistic = expression.differentiate(2);
+		for (double x = 0.5; x < 3; x += 0.5) {
+			for (double y = 0.5; y < 3; y += 0.5) {
+				final double[] env = { x, y, 0 };
+				assertEquals(2 * x * y - 4 + 1 / x, byX.evaluate(env), 1e-9);
+				assertEquals(x * x + 3 * y * y + 1 / y, byY.evaluate(env), 1e-9);
+				assertEquals(0, byLogistic.evaluate(env));
+			}
+		}
+		// y is a constant exponent as far as x is concerned, so the power rule applies even where x < 0
+		final Expression power = _parser.parse("x^y");
+		assertEquals(-4, power.differentiate(0).evaluate(new double[] { -2, 2, 0 }), 1e-12);
+		assertEquals(-4, power.differentiate().evaluate(new double[] { -2, 2, 0 }), 1e-12);
+		assertEquals(4 * Math.log(2), power.differentiate(1).evaluate(new double[] { 2, 2, 0 }), 1e-12);
+		final Expression tallPower = _parser.parse("(".repeat(5000) + "x" + ")".repeat(5000) + "^y");
+		assertEquals(-4, tallPower.differentiate(0).evaluate(new double[] { -2, 2, 0 }), 1e-12);
+		final Expression deep = _parser.parse("y" + "+x*y".repeat(50000));
+		assertEquals(50001, deep.differentiate(1).evaluate(new double[] { 1, 2, 0 }));
+	}
+
+	/**
+	 * Verifies that the grid holds the value at each point, in row-major order.
+	 */
+	@Test
+	public void testGrid () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x^2 - y*logistic + log(x+y)");
+		final int nx = 37, ny = 300;
+		final double[] grid = new double[nx * ny];
+		new GridEvaluator().evaluate(expression, new double[] { 0, 0, 1.5 }, 0, 0.25, 0.1, nx, 1, 1, 0.05, ny, grid);
+		for (int j = 0; j < ny; j++) {
+			for (int i = 0; i < nx; i++) {
+				final double[] env = { 0.25 + i * 0.1, 1 + j * 0.05, 1.5 };
+				assertEquals(expression.evaluate(env), grid[j * nx + i]);
+			}
+		}
+	}
+}
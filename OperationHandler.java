@@ -1,4 +1,77 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 public class OperationHandler {
+    private static final String TABS = "\t".repeat(32);
+    static final int MAX_SCRATCH_DEPTH = 32;
+    static final int MAX_SCRATCH_LENGTH = 1 << 16;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int height;
+    private final long variables;
+
+    /**
+     * For leaves, which are literals and so hold no variable.
+     */
+    OperationHandler() {
+        this.height = 1;
+        this.variables = 0;
+    }
+
+    /**
+     * For nodes with children; the height is recorded so that trees too deep to recurse over
+     * can be handed to ExpressionTraversal, and the variables below so that the differentiation
+     * rules can tell constant children without walking them.
+     * @param l the left or only child
+     * @param r the right child, or null
+     */
+    OperationHandler(Expression l, Expression r) {
+        this.height = 1 + Math.max(ExpressionTraversal.heightOf(l), r == null ? 0 : ExpressionTraversal.heightOf(r));
+        this.variables = ExpressionTraversal.variablesOf(l) | (r == null ? 0 : ExpressionTraversal.variablesOf(r));
+    }
+
+    /**
+     * @return the number of nodes on the longest path from this node down to a leaf
+     */
+    final int height() {
+        return height;
+    }
+
+    /**
+     * @return the slots of the variables in the tree below this node, as ExpressionTraversal.variablesOf describes them
+     */
+    final long variables() {
+        return variables;
+    }
+
+    /**
+     * @return whether the tree below this node is too deep for the recursive methods
+     */
+    final boolean isDeep() {
+        return height > ExpressionTraversal.MAX_RECURSION_HEIGHT;
+    }
+
+    /**
+     * Applies a binary operator to two values.
+     */
+    static double apply(char op, double l, double r) {
+        switch (op) {
+            case '+':
+                return l + r;
+            case '-':
+                return l - r;
+            case '*':
+                return l * r;
+            case '/':
+                return l / r;
+            case '^':
+                return Math.pow(l, r);
+            default:
+                throw new IllegalArgumentException("Invalid operator: " + op);
+        }
+    }
+
     /**
      * Given two expressions and an operator, compute the result of the operation.
      *
@@ -28,20 +101,366 @@ public class OperationHandler {
     }
 
     /**
-     * coverts the operation into a string
+     * Given two expressions and an operator, compute the result of the operation with the variables read from env.
+     *
+     * @param l  the left child of the operation
+     * @param r the right child of the operation
+     * @param op the operator
+     * @param env the value of every variable, indexed by slot
+     * @return the result of the operation
+     */
+    double operation(Expression l, Expression r, char op, double[] env) {
+        if (op == 'l') {
+            return Math.log(l.evaluate(env));
+        }
+        return apply(op, l.evaluate(env), r.evaluate(env));
+    }
+
+    /**
+     * Given two expressions and an operator, compute the result of the operation at each of the given values of x.
+     *
+     * @param l  the left child of the operation
+     * @param r the right child of the operation
+     * @param op the operator
+     * @param xs the values of the independent variable x
+     * @param out where to store the results
+     */
+    void operation(Expression l, Expression r, char op, double[] xs, double[] out) {
+        final int n = xs.length;
+        l.evaluate(xs, out);
+        if (op == 'l') {
+            combine(op, out, 0, n);
+        } else if (r instanceof LiteralExpression) {
+            combine(op, out, r.evaluate(0), n);
+        } else {
+            final Scratch scratch = SCRATCH.get();
+            try {
+                final double[] right = scratch.take(n);
+                r.evaluate(xs, right);
+                combine(op, out, right, n);
+            } finally {
+                scratch.release(1);
+            }
+        }
+    }
+
+    /**
+     * Given two expressions and an operator, compute the result of the operation at the
+     * n evenly spaced values x = from + i*step.
+     *
+     * @param l  the left child of the operation
+     * @param r the right child of the operation
+     * @param op the operator
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param out where to store the results
+     */
+    void operation(Expression l, Expression r, char op, double from, double step, int n, double[] out) {
+        l.evaluate(from, step, n, out);
+        if (op == 'l') {
+            combine(op, out, 0, n);
+        } else if (r instanceof LiteralExpression) {
+            combine(op, out, r.evaluate(0), n);
+        } else {
+            final Scratch scratch = SCRATCH.get();
+            try {
+                final double[] right = scratch.take(n);
+                r.evaluate(from, step, n, right);
+                combine(op, out, right, n);
+            } finally {
+                scratch.release(1);
+            }
+        }
+    }
+
+    /**
+     * Buffers for the right operands of the batch operations, one per level of nesting, kept per thread
+     * so that evaluating a tree again over as many points allocates nothing. Operands nested deeper than
+     * MAX_SCRATCH_DEPTH or longer than MAX_SCRATCH_LENGTH get arrays of their own, which bounds what
+     * each thread keeps.
+     */
+    private static final class Scratch {
+        private final double[][] buffers = new double[MAX_SCRATCH_DEPTH][];
+        private int depth;
+
+        /**
+         * @return an array of at least n elements, not used by any operation in progress on this thread
+         */
+        double[] take(int n) {
+            final int level = depth++;
+            if (level >= MAX_SCRATCH_DEPTH || n > MAX_SCRATCH_LENGTH) {
+                return new double[n];
+            }
+            if (buffers[level] == null || buffers[level].length < n) {
+                buffers[level] = new double[n];
+            }
+            return buffers[level];
+        }
+
+        /**
+         * Hands back the arrays of the last count calls to take.
+         */
+        void release(int count) {
+            depth -= count;
+        }
+    }
+
+    /**
+     * Applies an operator element by element: out[i] = out[i] op right[i].
+     * Each operator has its own simple loop so that the JIT can vectorize + - * and /.
+     */
+    static void combine(char op, double[] out, double[] right, int n) {
+        switch (op) {
+            case '+':
+                for (int i = 0; i < n; i++) {
+                    out[i] += right[i];
+                }
+                break;
+            case '-':
+                for (int i = 0; i < n; i++) {
+                    out[i] -= right[i];
+                }
+                break;
+            case '*':
+                for (int i = 0; i < n; i++) {
+                    out[i] *= right[i];
+                }
+                break;
+            case '/':
+                for (int i = 0; i < n; i++) {
+                    out[i] /= right[i];
+                }
+                break;
+            case '^':
+                for (int i = 0; i < n; i++) {
+                    out[i] = Math.pow(out[i], right[i]);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid operator: " + op);
+        }
+    }
+
+    /**
+     * Applies an operator with a constant right operand element by element: out[i] = out[i] op right.
+     * For log the right operand is ignored.
+     */
+    static void combine(char op, double[] out, double right, int n) {
+        switch (op) {
+            case '+':
+                for (int i = 0; i < n; i++) {
+                    out[i] += right;
+                }
+                break;
+            case '-':
+                for (int i = 0; i < n; i++) {
+                    out[i] -= right;
+                }
+                break;
+            case '*':
+                for (int i = 0; i < n; i++) {
+                    out[i] *= right;
+                }
+                break;
+            case '/':
+                for (int i = 0; i < n; i++) {
+                    out[i] /= right;
+                }
+                break;
+            case '^':
+                for (int i = 0; i < n; i++) {
+                    out[i] = Math.pow(out[i], right);
+                }
+                break;
+            case 'l':
+                for (int i = 0; i < n; i++) {
+                    out[i] = Math.log(out[i]);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid operator: " + op);
+        }
+    }
+
+    /**
+     * Given two expressions and an operator, compute the value and derivative of the operation
+     * in one pass, with the same rules as the differentiate methods use.
+     *
+     * @param l  the left child of the operation
+     * @param r the right child of the operation
+     * @param op the operator
+     * @param x the value of the independent variable x
+     * @return the value and derivative of the operation
+     */
+    DualNumber dualOperation(Expression l, Expression r, char op, double x) {
+        final DualNumber left = l.evaluateWithDerivative(x);
+        final double g = left.getValue(), dg = left.getDerivative();
+        if (op == 'l') {
+            return new DualNumber(Math.log(g), dg / g);
+        }
+        final DualNumber right = r.evaluateWithDerivative(x);
+        final double h = right.getValue(), dh = right.getDerivative();
+        switch (op) {
+            case '+':
+                return new DualNumber(g + h, dg + dh);
+            case '-':
+                return new DualNumber(g - h, dg - dh);
+            case '*':
+                return new DualNumber(g * h, dg * h + g * dh);
+            case '/':
+                return new DualNumber(g / h, dg / h - g * dh / Math.pow(h, 2));
+            case '^':
+                final double power = Math.pow(g, h);
+                return new DualNumber(power, powerDerivative(l, g, dg, h, dh, power));
+            default:
+                throw new IllegalArgumentException("Invalid operator: " + op);
+        }
+    }
+
+    /**
+     * Given two expressions and an operator, compute the value and derivative of the operation
+     * at the n evenly spaced values x = from + i*step.
+     *
+     * @param l  the left child of the operation
+     * @param r the right child of the operation
+     * @param op the operator
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param values where to store the values
+     * @param derivatives where to store the derivatives
+     */
+    void dualOperation(Expression l, Expression r, char op, double from, double step, int n,
+                       double[] values, double[] derivatives) {
+        l.evaluateWithDerivative(from, step, n, values, derivatives);
+        if (op == 'l') {
+            for (int i = 0; i < n; i++) {
+                derivatives[i] /= values[i];
+                values[i] = Math.log(values[i]);
+            }
+            return;
+        }
+        final Scratch scratch = SCRATCH.get();
+        try {
+            final double[] rightValues = scratch.take(n);
+            final double[] rightDerivatives = scratch.take(n);
+            r.evaluateWithDerivative(from, step, n, rightValues, rightDerivatives);
+            switch (op) {
+                case '+':
+                    combine('+', values, rightValues, n);
+                    combine('+', derivatives, rightDerivatives, n);
+                    break;
+                case '-':
+                    combine('-', values, rightValues, n);
+                    combine('-', derivatives, rightDerivatives, n);
+                    break;
+                case '*':
+                    for (int i = 0; i < n; i++) {
+                        derivatives[i] = derivatives[i] * rightValues[i] + values[i] * rightDerivatives[i];
+                        values[i] *= rightValues[i];
+                    }
+                    break;
+                case '/':
+                    for (int i = 0; i < n; i++) {
+                        final double h = rightValues[i];
+                        derivatives[i] = derivatives[i] / h - values[i] * rightDerivatives[i] / Math.pow(h, 2);
+                        values[i] /= h;
+                    }
+                    break;
+                case '^':
+                    for (int i = 0; i < n; i++) {
+                        final double power = Math.pow(values[i], rightValues[i]);
+                        derivatives[i] = powerDerivative(l, values[i], derivatives[i], rightValues[i], rightDerivatives[i], power);
+                        values[i] = power;
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid operator: " + op);
+            }
+        } finally {
+            scratch.release(2);
+        }
+    }
+
+    /**
+     * Given two expressions and an operator, compute bounds of the operation for every x in [lo, hi].
+     *
+     * @param l  the left child of the operation
+     * @param r the right child of the operation
+     * @param op the operator
+     * @param lo the smallest value of the independent variable x
+     * @param hi the largest value of the independent variable x
+     * @return bounds of the values of the operation
+     */
+    Interval intervalOperation(Expression l, Expression r, char op, double lo, double hi) {
+        if (op == 'l') {
+            return Interval.log(l.evaluateInterval(lo, hi));
+        }
+        return Interval.apply(op, l.evaluateInterval(lo, hi), r.evaluateInterval(lo, hi));
+    }
+
+    /**
+     * The derivative of g^h, chosen by the same cases as ExponentialExpression.differentiate
+     * so that both ways of computing a derivative agree.
+     */
+    static double powerDerivative(Expression l, double g, double dg, double h, double dh, double power) {
+        if (l instanceof LiteralExpression) { // (log C) C^h(x) h'(x)
+            return Math.log(g) * power * dh;
+        }
+        if (dh == 0) { // C*g(x)^(C-1) g'(x), for every exponent without x as in differentiate, and wherever h'(x) is 0
+            return h == 0 ? 0 : h * Math.pow(g, h - 1) * dg; // g^0 is 1 even where g is 0
+        }
+        return power * (dh * Math.log(g) + h * dg / g); // g^h (h' log g + h g'/g)
+    }
+
+    /**
+     * Appends the operation to out, one node per line, each indented by its depth.
+     * @param out where to append the String representation
      * @param indentLevel how many tab characters should appear at the beginning of each line.
      * @param op the operator
      * @param l the left child
      * @param r the right child
-     * @return the String representing this expression.
+     * @throws IOException if out throws it
      */
-    String opToString(int indentLevel, char op, Expression l, Expression r) {
+    static void appendOperation(Appendable out, int indentLevel, char op, Expression l, Expression r) throws IOException {
+        appendIndent(out, indentLevel);
         if (op == '(') {
-            return "\t".repeat(indentLevel) + "()" + "\n"
-                    + l.convertToString(indentLevel+1);
+            out.append("()").append('\n');
+            l.appendTo(out, indentLevel + 1);
+            return;
+        }
+        out.append(op).append('\n');
+        l.appendTo(out, indentLevel + 1);
+        if (op != 'l') { // log only has one child
+            r.appendTo(out, indentLevel + 1);
+        }
+    }
+
+    /**
+     * Appends indentLevel tab characters to out.
+     */
+    static void appendIndent(Appendable out, int indentLevel) throws IOException {
+        for (; indentLevel > TABS.length(); indentLevel -= TABS.length()) {
+            out.append(TABS);
+        }
+        out.append(TABS, 0, indentLevel);
+    }
+
+    /**
+     * Builds the String representation of an expression with its appendTo method,
+     * so that each character is copied once instead of once per ancestor node.
+     * @param expression the expression to convert
+     * @param indentLevel how many tab characters should appear at the beginning of each line.
+     * @return the String representing the expression.
+     */
+    static String convertToString(Expression expression, int indentLevel) {
+        final StringBuilder builder = new StringBuilder();
+        try {
+            expression.appendTo(builder, indentLevel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder never throws
         }
-        return "\t".repeat(indentLevel) + op + "\n"
-                + l.convertToString(indentLevel+1)
-                + (op != 'l' ? r.convertToString(indentLevel+1) : ""); // log only has one child
+        return builder.toString();
     }
 }
@@ -1,8 +1,20 @@
+import java.io.IOException;
+
 public class ParentheticalExpression extends OperationHandler implements Expression {
     private final Expression child;
+    private final int hash;
 
     public ParentheticalExpression(Expression child) {
+        super(child, null);
         this.child = child;
+        this.hash = '(' * 31 + child.hashCode();
+    }
+
+    /**
+     * @return the expression inside the parentheses
+     */
+    Expression getChild() {
+        return child;
     }
 
     /**
@@ -14,6 +26,9 @@ public class ParentheticalExpression extends OperationHandler implements Express
      */
     @Override
     public Expression deepCopy() {
+        if (isDeep()) {
+            return ExpressionTraversal.deepCopy(this);
+        }
         return new ParentheticalExpression(child.deepCopy());
     }
 
@@ -28,7 +43,23 @@ public class ParentheticalExpression extends OperationHandler implements Express
      */
     @Override
     public String convertToString(int indentLevel) {
-        return opToString(indentLevel, '(', child, null);
+        return convertToString(this, indentLevel);
+    }
+
+    /**
+     * Appends the String representation of this expression to out, as convertToString would produce it.
+     *
+     * @param out where to append the String representation
+     * @param indentLevel how many tab characters should appear at the beginning of each line.
+     * @throws IOException if out throws it
+     */
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        if (isDeep()) {
+            ExpressionTraversal.appendTo(this, out, indentLevel);
+            return;
+        }
+        appendOperation(out, indentLevel, '(', child, null);
     }
 
     /**
@@ -39,9 +70,106 @@ public class ParentheticalExpression extends OperationHandler implements Express
      */
     @Override
     public double evaluate(double x) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluate(this, x);
+        }
         return child.evaluate(x);
     }
 
+    /**
+     * Computes the value of this expression with the variables read from env.
+     *
+     * @param env the value of every variable, indexed by slot
+     * @return the value of this expression.
+     */
+    @Override
+    public double evaluate(double[] env) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluate(this, env);
+        }
+        return child.evaluate(env);
+    }
+
+    /**
+     * Computes the value of this expression at each of the given values of x.
+     *
+     * @param xs the values of the independent variable x
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double[] xs, double[] out) {
+        if (isDeep()) {
+            ExpressionTraversal.evaluate(this, xs, out);
+            return;
+        }
+        child.evaluate(xs, out);
+    }
+
+    /**
+     * Computes the value of this expression at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double from, double step, int n, double[] out) {
+        if (isDeep()) {
+            ExpressionTraversal.evaluate(this, from, step, n, out);
+            return;
+        }
+        child.evaluate(from, step, n, out);
+    }
+
+    /**
+     * Given the value of the independent variable x, compute the value of this expression
+     * and of its derivative together.
+     *
+     * @param x the value of the independent variable x
+     * @return the value of this expression and of its derivative
+     */
+    @Override
+    public DualNumber evaluateWithDerivative(double x) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluateWithDerivative(this, x);
+        }
+        return child.evaluateWithDerivative(x);
+    }
+
+    /**
+     * Computes the value of this expression and of its derivative at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param values where to store the values of the expression
+     * @param derivatives where to store the values of the derivative
+     */
+    @Override
+    public void evaluateWithDerivative(double from, double step, int n, double[] values, double[] derivatives) {
+        if (isDeep()) {
+            ExpressionTraversal.evaluateWithDerivative(this, from, step, n, values, derivatives);
+            return;
+        }
+        child.evaluateWithDerivative(from, step, n, values, derivatives);
+    }
+
+    /**
+     * Computes bounds of the values of this expression for every x in [lo, hi].
+     *
+     * @param lo the smallest value of the independent variable x
+     * @param hi the largest value of the independent variable x
+     * @return bounds of the values of this expression
+     */
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        if (isDeep()) {
+            return ExpressionTraversal.evaluateInterval(this, lo, hi);
+        }
+        return child.evaluateInterval(lo, hi);
+    }
+
     /**
      * Produce a new, fully independent (i.e., there should be no shared subtrees) Expression
      * representing the derivative of this expression.
@@ -50,6 +178,63 @@ public class ParentheticalExpression extends OperationHandler implements Express
      */
     @Override
     public Expression differentiate() {
-        return new ParentheticalExpression(child.differentiate());
+        if (isDeep()) {
+            return ExpressionTraversal.differentiate(this);
+        }
+        return differentiate(ExpressionTraversal.operandsOf(this, 0));
+    }
+
+    /**
+     * The rule of differentiate(), reading the child and its derivative from operands.
+     * @param operands the child of this node and its derivative
+     * @return the derivative of this expression
+     */
+    Expression differentiate(ExpressionTraversal.Operands operands) {
+        return new ParentheticalExpression(operands.derivative(0));
+    }
+
+    /**
+     * Produce a new, fully independent Expression representing the partial derivative of this
+     * expression with respect to the variable in the given slot, by the same rules as differentiate().
+     *
+     * @param slot the slot of the variable to differentiate by
+     * @return the partial derivative of this expression
+     */
+    @Override
+    public Expression differentiate(int slot) {
+        if (isDeep()) {
+            return ExpressionTraversal.differentiate(this, slot);
+        }
+        return differentiate(ExpressionTraversal.operandsOf(this, slot));
+    }
+
+    /**
+     * Two parenthetical expressions are equal if their children are equal.
+     *
+     * @param o the object to compare with
+     * @return whether o is structurally equal to this expression
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ParentheticalExpression) || hash != o.hashCode()) {
+            return false;
+        }
+        if (isDeep()) {
+            return ExpressionTraversal.equals(this, o);
+        }
+        return child.equals(((ParentheticalExpression) o).child);
+    }
+
+    /**
+     * Computed when the node is built, from the hash code its child holds, so it costs the same for any tree.
+     *
+     * @return a hash code consistent with equals
+     */
+    @Override
+    public int hashCode() {
+        return hash;
     }
 }
@@ -0,0 +1,234 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the roots and the local minima and maxima of an expression over a range of x.
+ * The range is cut into a grid of equal cells and the expression is evaluated at every grid point
+ * with the batch evaluate API; each cell over which it changes sign brackets a root, which is then
+ * refined by Brent's method. That converges about as fast as Newton's method but, needing no slope,
+ * runs on evaluate alone, which a compiled expression does far faster than evaluateWithDerivative.
+ * Extrema are the roots of the derivative, told apart by the direction in which it changes sign.
+ * Cells are split into ranges that are scanned and refined in parallel on a ForkJoinPool.
+ * Only sign changes are found: two roots within one cell cancel out, and a root where the expression
+ * touches zero without crossing it is found as an extremum rather than as a root, unless it lies on the grid.
+ * A sign change across a pole is not a root; it is recognized by the value growing while the bracket shrinks.
+ */
+public class RootFinder {
+    static final double DEFAULT_TOLERANCE = 1e-12;
+    static final int MIN_CELLS_PER_TASK = 2048;
+    static final int MAX_ITERATIONS = 100;
+
+    private final double tolerance;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new RootFinder with the default tolerance, using the common pool.
+     */
+    public RootFinder() {
+        this(DEFAULT_TOLERANCE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new RootFinder.
+     * @param tolerance how closely to locate each point, relative to the width of the range searched
+     * @param pool the pool to scan and refine cells on
+     */
+    public RootFinder(double tolerance, ForkJoinPool pool) {
+        this.tolerance = tolerance;
+        this.pool = pool;
+    }
+
+    /**
+     * Finds the roots of the expression in [from, to].
+     * @param expression the expression to solve
+     * @param from the smallest x to search
+     * @param to the largest x to search
+     * @param cells how many cells to cut the range into; no more than one root per cell is found
+     * @return the roots, in increasing order of x
+     */
+    public List<CurvePoint> findRoots(Expression expression, double from, double to, int cells) {
+        return pool.invoke(new CellTask(expression, null, from, to, cells, 0, cells));
+    }
+
+    /**
+     * Finds the local minima and maxima of the expression in (from, to), as the roots of its derivative.
+     * @param expression the expression
+     * @param from the smallest x to search
+     * @param to the largest x to search
+     * @param cells how many cells to cut the range into; no more than one extremum per cell is found
+     * @return the extrema, in increasing order of x
+     */
+    public List<CurvePoint> findExtrema(Expression expression, double from, double to, int cells) {
+        return findExtrema(expression, ExpressionSimplifier.simplify(expression.differentiate()), from, to, cells);
+    }
+
+    /**
+     * Finds the local minima and maxima of the expression in (from, to), given its derivative,
+     * so that a caller searching the same expression again need not differentiate it again.
+     * @param expression the expression
+     * @param derivative the derivative of the expression
+     * @param from the smallest x to search
+     * @param to the largest x to search
+     * @param cells how many cells to cut the range into; no more than one extremum per cell is found
+     * @return the extrema, in increasing order of x
+     */
+    public List<CurvePoint> findExtrema(Expression expression, Expression derivative, double from, double to, int cells) {
+        return pool.invoke(new CellTask(derivative, expression, from, to, cells, 0, cells));
+    }
+
+    /**
+     * Scans the cells [start, end) for sign changes of f and refines each, splitting the range
+     * in half until it is no more than MIN_CELLS_PER_TASK cells.
+     */
+    private class CellTask extends RecursiveTask<List<CurvePoint>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Expression f;
+        private final Expression antiderivative; // the expression whose extrema are the roots of f, or null for roots
+        private final double from, to;
+        private final int cells, start, end;
+
+        CellTask(Expression f, Expression antiderivative, double from, double to, int cells, int start, int end) {
+            this.f = f;
+            this.antiderivative = antiderivative;
+            this.from = from;
+            this.to = to;
+            this.cells = cells;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<CurvePoint> compute() {
+            if (end - start > MIN_CELLS_PER_TASK) {
+                final int middle = (start + end) >>> 1;
+                final CellTask left = new CellTask(f, antiderivative, from, to, cells, start, middle);
+                final CellTask right = new CellTask(f, antiderivative, from, to, cells, middle, end);
+                invokeAll(left, right);
+                final List<CurvePoint> points = left.join();
+                points.addAll(right.join());
+                return points;
+            }
+            // grid points start-1 to end+1, so that a zero on a grid point can look at both neighbours;
+            // every task computes x the same way, so neighbouring tasks agree on the values they share
+            final int first = Math.max(0, start - 1), last = Math.min(cells, end + 1);
+            final double[] xs = new double[last - first + 1];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = gridPoint(first + i);
+            }
+            final double[] ys = new double[xs.length];
+            f.evaluate(xs, ys);
+
+            final List<CurvePoint> points = new ArrayList<>();
+            final double xTolerance = tolerance * (to - from);
+            for (int i = start; i < end; i++) {
+                final int k = i - first;
+                final double fa = ys[k], fb = ys[k + 1];
+                if (fa == 0) {
+                    // a zero on the grid belongs to the cell to its right
+                    final double before = k > 0 ? ys[k - 1] : Double.NaN, after = ys[k + 1];
+                    if (antiderivative == null) {
+                        points.add(new CurvePoint(CurvePoint.Kind.ROOT, xs[k], 0, 0));
+                    } else if (before < 0 && after > 0 || before > 0 && after < 0) {
+                        points.add(extremum(xs[k], 0, before < 0));
+                    }
+                } else if (fa < 0 && fb > 0 || fa > 0 && fb < 0) {
+                    final double[] root = refine(xs[k], fa, xs[k + 1], fb, xTolerance);
+                    if (root != null) {
+                        points.add(antiderivative == null
+                                ? new CurvePoint(CurvePoint.Kind.ROOT, root[0], f.evaluate(root[0]), root[1])
+                                : extremum(root[0], root[1], fa < 0));
+                    }
+                }
+            }
+            if (end == cells && antiderivative == null && ys[ys.length - 1] == 0) {
+                points.add(new CurvePoint(CurvePoint.Kind.ROOT, to, 0, 0));
+            }
+            return points;
+        }
+
+        private double gridPoint(int i) {
+            return i == cells ? to : from + i * ((to - from) / cells);
+        }
+
+        /**
+         * @param rising whether the derivative goes from negative to positive, which makes the point a minimum
+         */
+        private CurvePoint extremum(double x, double xError, boolean rising) {
+            return new CurvePoint(rising ? CurvePoint.Kind.MINIMUM : CurvePoint.Kind.MAXIMUM, x, antiderivative.evaluate(x), xError);
+        }
+
+        /**
+         * Narrows the bracket [a, b], over which f changes sign, by Brent's method: inverse quadratic
+         * interpolation or secant steps while they shrink the bracket quickly enough, and bisection otherwise.
+         * The bracket [b, c] always holds the sign change, so its width bounds the error.
+         * @return the point and how far the sign change may be from it, or null if the sign change is a pole
+         */
+        private double[] refine(double a, double fa, double b, double fb, double xTolerance) {
+            final double limit = Math.max(Math.abs(fa), Math.abs(fb));
+            double c = b, fc = fb, d = b - a, e = d;
+            for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+                if ((fb > 0) == (fc > 0)) {
+                    c = a;
+                    fc = fa;
+                    d = b - a;
+                    e = d;
+                }
+                if (Math.abs(fc) < Math.abs(fb)) { // b is the best estimate so far
+                    a = b;
+                    b = c;
+                    c = a;
+                    fa = fb;
+                    fb = fc;
+                    fc = fa;
+                }
+                final double tolerance = 2 * Math.ulp(b) + 0.5 * xTolerance;
+                final double middle = 0.5 * (c - b);
+                if (Math.abs(middle) <= tolerance || fb == 0) {
+                    break;
+                }
+                if (Math.abs(e) < tolerance || Math.abs(fa) <= Math.abs(fb)) {
+                    d = middle;
+                    e = middle;
+                } else {
+                    final double s = fb / fa;
+                    double p, q;
+                    if (a == c) { // secant
+                        p = 2 * middle * s;
+                        q = 1 - s;
+                    } else { // inverse quadratic
+                        final double r = fb / fc;
+                        q = fa / fc;
+                        p = s * (2 * middle * q * (q - r) - (b - a) * (r - 1));
+                        q = (q - 1) * (r - 1) * (s - 1);
+                    }
+                    if (p > 0) {
+                        q = -q;
+                    } else {
+                        p = -p;
+                    }
+                    if (2 * p < Math.min(3 * middle * q - Math.abs(tolerance * q), Math.abs(e * q))) {
+                        e = d;
+                        d = p / q;
+                    } else {
+                        d = middle;
+                        e = middle;
+                    }
+                }
+                a = b;
+                fa = fb;
+                b += Math.abs(d) > tolerance ? d : Math.copySign(tolerance, middle);
+                fb = f.evaluate(b);
+                if (Double.isNaN(fb)) {
+                    return null; // undefined inside the bracket
+                }
+            }
+            if (Math.abs(fb) > limit) {
+                return null; // the value grew as the bracket shrank: a pole
+            }
+            return new double[] { b, fb == 0 ? 0 : Math.abs(c - b) };
+        }
+    }
+}
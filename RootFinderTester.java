@@ -0,0 +1,79 @@
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the roots and extrema found by RootFinder against closed forms.
+ */
+public class RootFinderTester {
+	private ExpressionParser _parser;
+
+	@BeforeEach
+	public void setUp () {
+		_parser = new SimpleExpressionParser();
+	}
+
+	/**
+	 * Verifies the roots and extrema of a cubic, that each lies within its reported error,
+	 * and that a pole is not taken for a root.
+	 */
+	@Test
+	public void testPolynomial () throws ExpressionParseException {
+		final RootFinder finder = new RootFinder();
+		final Expression cubic = _parser.parse("(x - 1)*(x + 2)*(x - 3.5)"); // x^3 - 2.5x^2 - 5.5x + 7
+		final List<CurvePoint> roots = finder.findRoots(cubic, -10, 10, 1000);
+		assertEquals(3, roots.size());
+		final double[] expected = { -2, 1, 3.5 };
+		for (int i = 0; i < 3; i++) {
+			assertEquals(CurvePoint.Kind.ROOT, roots.get(i).getKind());
+			assertEquals(expected[i], roots.get(i).getX(), roots.get(i).getXError() + 1e-15);
+			assertTrue(roots.get(i).getXError() <= 20 * RootFinder.DEFAULT_TOLERANCE);
+		}
+
+		final List<CurvePoint> extrema = finder.findExtrema(cubic, -10, 10, 1000);
+		assertEquals(2, extrema.size());
+		final double discriminant = Math.sqrt(2.5 * 2.5 + 3 * 5.5);
+		assertEquals(CurvePoint.Kind.MAXIMUM, extrema.get(0).getKind());
+		assertEquals((2.5 - discriminant) / 3, extrema.get(0).getX(), extrema.get(0).getXError() + 1e-15);
+		assertEquals(CurvePoint.Kind.MINIMUM, extrema.get(1).getKind());
+		assertEquals((2.5 + discriminant) / 3, extrema.get(1).getX(), extrema.get(1).getXError() + 1e-15);
+		assertEquals(cubic.evaluate(extrema.get(1).getX()), extrema.get(1).getY());
+
+		assertEquals(List.of(), finder.findRoots(_parser.parse("1/x"), -1, 1, 1001));
+		final List<CurvePoint> sqrt2 = finder.findRoots(_parser.parse("x^2 - 2"), -3, 2, 7);
+		assertEquals(2, sqrt2.size());
+		assertEquals(Math.sqrt(2), sqrt2.get(1).getX(), sqrt2.get(1).getXError() + 1e-15);
+		assertEquals(List.of(), finder.findExtrema(_parser.parse("x^3"), -1, 1, 100));
+	}
+
+	/**
+	 * Verifies that all 1024 roots and 1023 extrema of the Chebyshev polynomial T_1024, built as
+	 * T_2 composed with itself ten times, are found in [-1, 1], whose roots crowd together near the ends.
+	 */
+	@Test
+	public void testManyRoots () throws ExpressionParseException {
+		String chebyshev = "x";
+		for (int i = 0; i < 10; i++) {
+			chebyshev = "(2*(" + chebyshev + ")^2 - 1)";
+		}
+		final Expression expression = ExpressionCompiler.compile(_parser.parse(chebyshev));
+		final RootFinder finder = new RootFinder();
+		final List<CurvePoint> roots = finder.findRoots(expression, -1, 1, 1 << 18);
+		assertEquals(1024, roots.size());
+		for (int j = 0; j < 1024; j++) {
+			final double exact = -Math.cos((2 * j + 1) * Math.PI / 2048);
+			assertEquals(exact, roots.get(j).getX(), roots.get(j).getXError() + 1e-12);
+		}
+		final List<CurvePoint> extrema = finder.findExtrema(expression, -1, 1, 1 << 18);
+		assertEquals(1023, extrema.size());
+		for (int j = 0; j < 1023; j++) {
+			assertEquals(j % 2 == 0 ? CurvePoint.Kind.MINIMUM : CurvePoint.Kind.MAXIMUM, extrema.get(j).getKind());
+			assertEquals(-Math.cos((j + 1) * Math.PI / 1024), extrema.get(j).getX(), 1e-9);
+			assertEquals(j % 2 == 0 ? -1 : 1, extrema.get(j).getY(), 1e-9);
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/**
+ * The result of sampling an expression: parallel arrays of x values and the corresponding y values.
+ * The x values are in increasing order.
+ */
+public class SampledCurve {
+    private final double[] xs;
+    private final double[] ys;
+
+    /**
+     * Creates a new SampledCurve. The arrays are used as-is, not copied.
+     * @param xs the x values, in increasing order
+     * @param ys the value of the expression at each x
+     */
+    public SampledCurve(double[] xs, double[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    /**
+     * @return the number of points in the curve
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * @return the x values; the array is shared, not copied
+     */
+    public double[] getXs() {
+        return xs;
+    }
+
+    /**
+     * @return the y values; the array is shared, not copied
+     */
+    public double[] getYs() {
+        return ys;
+    }
+}
@@ -1,4 +1,61 @@
+import java.util.Arrays;
+
 public class SimpleExpressionParser implements ExpressionParser {
+	private final String[] variables;
+
+	/*
+	 * Creates a parser for expressions in the single variable x.
+	 */
+	public SimpleExpressionParser () {
+		this("x");
+	}
+
+	/*
+	 * Creates a parser for expressions in the given variables. Each variable is resolved to its
+	 * slot, its index here, while parsing, and evaluate(double[] env) reads it from env[slot].
+	 * The first variable is the independent variable that evaluate(double x) binds.
+	 * @param variables the variable names: letters, digits and underscores, not starting with a digit,
+	 *                  and none of log, NaN or Infinity
+	 */
+	public SimpleExpressionParser (String... variables) {
+		if (variables.length == 0) {
+			throw new IllegalArgumentException("At least one variable is needed");
+		}
+		for (int i = 0; i < variables.length; i++) {
+			final String name = variables[i];
+			if (!name.matches("[A-Za-z_][A-Za-z_0-9]*") || name.equals("log") || name.equals("NaN")
+					|| name.equals("Infinity")) {
+				throw new IllegalArgumentException("Invalid variable name: " + name);
+			}
+			for (int j = 0; j < i; j++) {
+				if (variables[j].equals(name)) {
+					throw new IllegalArgumentException("Duplicate variable name: " + name);
+				}
+			}
+		}
+		this.variables = variables.clone();
+	}
+
+	/*
+	 * @param name the name of a variable
+	 * @return the slot that evaluate(double[] env) reads the variable from
+	 */
+	public int slotOf (String name) {
+		for (int i = 0; i < variables.length; i++) {
+			if (variables[i].equals(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown variable: " + name);
+	}
+
+	/*
+	 * @return how many variables there are, which is how long an env must be
+	 */
+	public int variableCount () {
+		return variables.length;
+	}
+
         /*
          * Attempts to create an expression tree from the specified String.
          * Throws a ExpressionParseException if the specified string cannot be parsed.
@@ -9,194 +66,190 @@ public class SimpleExpressionParser implements ExpressionParser {
 	 * E -> P^E | P | log(P)
 	 * P -> (S) | L | V
 	 * L -> <float>
-	 * V -> x
+	 * V -> x, or any of the parser's variables
+	 * The string is tokenized once and then parsed with explicit operand and operator stacks,
+	 * so parsing takes linear time and nesting depth is limited only by the heap.
          * @param str the string to parse into an expression tree
          * @return the Expression object representing the parsed expression tree
          */
 	public Expression parse (String str) throws ExpressionParseException {
-		str = str.replaceAll(" ", "");
-		Expression expression = parseAdditiveExpression(str);
-		if (expression == null) {
-			expression = parseParentheticalExpression(str);
-			if (expression == null) {
-				throw new ExpressionParseException("Cannot parse expression: " + str);
+		final ExpressionTokenizer tokens = new ExpressionTokenizer(str, variables);
+		final ParseStack stack = new ParseStack();
+		while (true) {
+			// an operand: any number of opening parentheses, each optionally preceded by log, then L or V
+			int token = tokens.peek();
+			while (token == ExpressionTokenizer.LEFT_PAREN
+					|| (token == ExpressionTokenizer.LOG && stack.peekOperator() != ExpressionTokenizer.LOG)) {
+				stack.pushOperator(token);
+				tokens.next();
+				token = tokens.peek();
 			}
-		}
+			stack.pushOperand(parseAtom(tokens));
+			stack.closeLog();
 
-		return expression;
-	}
-	// * A -> A+M | A-M | M
-	protected Expression parseAdditiveExpression (String str) {
-		for(int i = 0; i < str.length(); i++){
-			char op = str.charAt(i);
-			if (op == '+') {
-				Expression left = parseAdditiveExpression(str.substring(0, i));
-				Expression right = parseMultiplicativeExpression(str.substring(i + 1));
-				if (left != null && right != null){
-					return new AdditiveExpression(left, right, op);
+			// then as many closing parentheses as there are, and the operator after them
+			while (tokens.peek() == ExpressionTokenizer.RIGHT_PAREN) {
+				stack.reduce(ADDITIVE);
+				if (stack.peekOperator() != ExpressionTokenizer.LEFT_PAREN) {
+					throw unexpected(tokens);
 				}
+				stack.popOperator();
+				tokens.next();
+				stack.pushOperand(new ParentheticalExpression(stack.popOperand()));
+				stack.closeLog();
 			}
-		}
-		for(int i = 0; i < str.length(); i++){
-			char op = str.charAt(i);
-			if (op == '-') {
-				Expression left = parseAdditiveExpression(str.substring(0, i));
-				Expression right = parseMultiplicativeExpression(str.substring(i + 1));
-				if (left != null && right != null){
-					return new AdditiveExpression(left, right, op);
+			final int op = tokens.peek();
+			final int precedence = PRECEDENCE[op];
+			if (precedence < 0) {
+				if (op != ExpressionTokenizer.END) {
+					throw unexpected(tokens);
+				}
+				stack.reduce(ADDITIVE);
+				if (stack.peekOperator() != ExpressionTokenizer.END) {
+					throw unexpected(tokens);
 				}
+				return stack.popOperand();
 			}
+			// ^ is right-associative, so only + - * / first apply the operators of equal precedence before them
+			stack.reduce(op == ExpressionTokenizer.POWER ? precedence + 1 : precedence);
+			stack.pushOperator(op);
+			tokens.next();
 		}
-		return parseMultiplicativeExpression(str);
 	}
 
+	private static final int ADDITIVE = 1, MULTIPLICATIVE = 2, EXPONENTIAL = 3;
+
 	/*
-	 * Attempts to create an expression tree from the specified String.`
-	 * Throw an ExpressionParseException if the specified string cannot be parsed.
-	 * @param str the string to parse into an expression tree
-	 * @return the Expression object representing the parsed expression tree
-	 * M -> M*E | M/E | E
+	 * The precedence of each kind of token, -1 for those that are not binary operators.
 	 */
-	protected Expression parseMultiplicativeExpression (String str) {
-		for(int i = 0; i < str.length(); i++){
-			char op = str.charAt(i);
-			if (op == '*') {
-				Expression left = parseMultiplicativeExpression(str.substring(0, i));
-				Expression right = parseExponentialExpression(str.substring(i + 1));
-				if (left != null && right != null){
-					return new MultiplicativeExpression(left, right, op);
-				}
-			}
-			if (op == '/') {
-				Expression left = parseMultiplicativeExpression(str.substring(0, i));
-				Expression right = parseExponentialExpression(str.substring(i + 1));
-				if (left != null && right != null){
-					return new MultiplicativeExpression(left, right, op);
-				}
-			}
-		}
-		return parseExponentialExpression(str);
+	private static final int[] PRECEDENCE = new int[ExpressionTokenizer.END + 1];
+
+	static {
+		Arrays.fill(PRECEDENCE, -1);
+		PRECEDENCE[ExpressionTokenizer.PLUS] = ADDITIVE;
+		PRECEDENCE[ExpressionTokenizer.MINUS] = ADDITIVE;
+		PRECEDENCE[ExpressionTokenizer.TIMES] = MULTIPLICATIVE;
+		PRECEDENCE[ExpressionTokenizer.DIVIDE] = MULTIPLICATIVE;
+		PRECEDENCE[ExpressionTokenizer.POWER] = EXPONENTIAL;
 	}
 
 	/*
-	 * Attempts to create an expression tree from the specified String.
-	 * Throws an ExpressionParseException if the specified string cannot be parsed.
-	 * @param str the string to parse into an expression tree
-	 * @return the Expression object representing the parsed expression tree
-	 * E -> P^E | P | log(P)
+	 * The operands parsed so far, and the pending operators, open parentheses and logs as token kinds.
 	 */
-	protected Expression parseExponentialExpression (String str) {
-		for(int i = 0; i < str.length(); i++){
-			char op = str.charAt(i);
-			if (op == '^') {
-				Expression left = parseAdditiveExpression(str.substring(0, i));
-				Expression right = parseAdditiveExpression(str.substring(i + 1));
-				if (left != null && right != null){
-					return new ExponentialExpression(left, right);
-				}
+	private static class ParseStack {
+		private Expression[] operands = new Expression[16];
+		private int operandCount;
+		private int[] operators = new int[16];
+		private int operatorCount;
+
+		void pushOperand (Expression operand) {
+			if (operandCount == operands.length) {
+				operands = Arrays.copyOf(operands, operandCount * 2);
 			}
+			operands[operandCount++] = operand;
 		}
-		Expression expression = parseParentheticalExpression(str);
-		if (expression != null) {
-			return expression;
+
+		Expression popOperand () {
+			final Expression operand = operands[--operandCount];
+			operands[operandCount] = null;
+			return operand;
 		}
-		for (int i = 0; i < str.length(); i++) {
-			char op = str.charAt(i);
-			if (op == 'l') {
-				Expression right = parseParentheticalExpression(str.substring(i + 3));
-				if (right != null){
-					return new ExponentialExpression(right);
-				}
+
+		void pushOperator (int token) {
+			if (operatorCount == operators.length) {
+				operators = Arrays.copyOf(operators, operatorCount * 2);
 			}
+			operators[operatorCount++] = token;
 		}
-		return null;
-	}
 
-	/*
-	 * Attempts to create an expression tree from the specified String.
-	 * Throws an ExpressionParseException if the specified string cannot be parsed.
-	 * @param str the string to parse into an expression tree
-	 * @return the Expression object representing the parsed expression tree
-	 * P -> (S) | L | V
-	 */
-	protected Expression parseParentheticalExpression (String str) {
-		if (str.startsWith("(") && str.endsWith(")")) {
-			String sub = str.substring(1, str.length() - 1);
-			return new ParentheticalExpression(parseAdditiveExpression(sub));
+		int popOperator () {
+			return operators[--operatorCount];
 		}
-		Expression endPoint = parseLiteralExpression(str);
-		if (endPoint == null) {
-			endPoint = parseVariableExpression(str);
+
+		/*
+		 * @return the top operator, or END if there is none
+		 */
+		int peekOperator () {
+			return operatorCount == 0 ? ExpressionTokenizer.END : operators[operatorCount - 1];
 		}
-		return endPoint;
-	}
 
-	/*
-	 * Attempts to create an expression tree from the specified String.
-	 * Throws an ExpressionParseException if the specified string cannot be parsed.
-	 * @param str the string to parse into an expression tree
-	 * @return the Expression object representing the parsed expression tree
-	 * V -> x
-	 */
-	protected VariableExpression parseVariableExpression (String str) {
-			if (str.equals("x")) {
-					return new VariableExpression();
+		/*
+		 * Applies the binary operators on top of the stack, down to the innermost open parenthesis,
+		 * while their precedence is at least minPrecedence. This makes + - * / left-associative.
+		 * A -> A+M | A-M | M
+		 * M -> M*E | M/E | E
+		 * E -> P^E | P | log(P)
+		 */
+		void reduce (int minPrecedence) {
+			while (PRECEDENCE[peekOperator()] >= minPrecedence) {
+				final Expression right = popOperand();
+				final Expression left = popOperand();
+				switch (popOperator()) {
+					case ExpressionTokenizer.PLUS:
+						pushOperand(AdditiveExpression.create(left, right, '+'));
+						break;
+					case ExpressionTokenizer.MINUS:
+						pushOperand(AdditiveExpression.create(left, right, '-'));
+						break;
+					case ExpressionTokenizer.TIMES:
+						pushOperand(MultiplicativeExpression.create(left, right, '*'));
+						break;
+					case ExpressionTokenizer.DIVIDE:
+						pushOperand(MultiplicativeExpression.create(left, right, '/'));
+						break;
+					default:
+						pushOperand(ExponentialExpression.create(left, right));
+				}
+			}
+		}
+
+		/*
+		 * Takes the log of the operand just completed, if it was preceded by log.
+		 * log applies to P only, so this happens before any ^ after it.
+		 */
+		void closeLog () {
+			if (peekOperator() == ExpressionTokenizer.LOG) {
+				popOperator();
+				pushOperand(ExponentialExpression.createLog(popOperand()));
 			}
-			return null;
+		}
 	}
 
 	/*
-	 * Attempts to create an expression tree from the specified String.
-	 * Throws an ExpressionParseException if the specified string cannot be parsed.
-	 * @param str the string to parse into an expression tree
+	 * Attempts to create a variable or literal from the tokens at the current position.
+	 * A + or - directly before a number is part of the literal, as in 2*-3 or 5^-1.
+	 * Throws an ExpressionParseException if they cannot be parsed.
+	 * @param tokens the tokens of the expression, positioned at the operand
 	 * @return the Expression object representing the parsed expression tree
+	 * P -> L | V
 	 * L -> <float>
 	 */
-	protected LiteralExpression parseLiteralExpression (String str) {
-		// From https://stackoverflow.com/questions/3543729/how-to-check-that-a-string-is-parseable-to-a-double/22936891:
-		final String Digits     = "(\\p{Digit}+)";
-		final String HexDigits  = "(\\p{XDigit}+)";
-		// an exponent is 'e' or 'E' followed by an optionally 
-		// signed decimal integer.
-		final String Exp        = "[eE][+-]?"+Digits;
-		final String fpRegex    =
-		    ("[\\x00-\\x20]*"+ // Optional leading "whitespace"
-		    "[+-]?(" +         // Optional sign character
-		    "NaN|" +           // "NaN" string
-		    "Infinity|" +      // "Infinity" string
-
-		    // A decimal floating-point string representing a finite positive
-		    // number without a leading sign has at most five basic pieces:
-		    // Digits . Digits ExponentPart FloatTypeSuffix
-		    // 
-		    // Since this method allows integer-only strings as input
-		    // in addition to strings of floating-point literals, the
-		    // two sub-patterns below are simplifications of the grammar
-		    // productions from the Java Language Specification, 2nd 
-		    // edition, section 3.10.2.
-
-		    // Digits ._opt Digits_opt ExponentPart_opt FloatTypeSuffix_opt
-		    "((("+Digits+"(\\.)?("+Digits+"?)("+Exp+")?)|"+
-
-		    // . Digits ExponentPart_opt FloatTypeSuffix_opt
-		    "(\\.("+Digits+")("+Exp+")?)|"+
-
-		    // Hexadecimal strings
-		    "((" +
-		    // 0[xX] HexDigits ._opt BinaryExponent FloatTypeSuffix_opt
-		    "(0[xX]" + HexDigits + "(\\.)?)|" +
-
-		    // 0[xX] HexDigits_opt . HexDigits BinaryExponent FloatTypeSuffix_opt
-		    "(0[xX]" + HexDigits + "?(\\.)" + HexDigits + ")" +
-
-		    ")[pP][+-]?" + Digits + "))" +
-		    "[fFdD]?))" +
-		    "[\\x00-\\x20]*");// Optional trailing "whitespace"
-
-		if (str.matches(fpRegex)) {
-			return new LiteralExpression(str);
+	protected Expression parseAtom (ExpressionTokenizer tokens) throws ExpressionParseException {
+		if (tokens.peek() == ExpressionTokenizer.VARIABLE) {
+			final int slot = tokens.variable();
+			tokens.next();
+			return new VariableExpression(variables[slot], slot);
+		}
+		String sign = "";
+		if ((tokens.peek() == ExpressionTokenizer.PLUS || tokens.peek() == ExpressionTokenizer.MINUS)
+				&& tokens.peek(1) == ExpressionTokenizer.NUMBER) {
+			sign = tokens.next() == ExpressionTokenizer.MINUS ? "-" : "";
+		}
+		if (tokens.peek() != ExpressionTokenizer.NUMBER) {
+			throw unexpected(tokens);
+		}
+		final LiteralExpression literal = new LiteralExpression(sign + tokens.text());
+		tokens.next();
+		return literal;
+	}
+
+	private static ExpressionParseException unexpected (ExpressionTokenizer tokens) {
+		if (tokens.peek() == ExpressionTokenizer.END) {
+			return new ExpressionParseException("Cannot parse expression: " + tokens.source()
+					+ " (unexpected end of input)");
 		}
-		return null;
+		return new ExpressionParseException("Cannot parse expression: " + tokens.source()
+				+ " (unexpected '" + tokens.text() + "' at " + tokens.offset() + ")");
 	}
 
 	public static void main (String[] args) throws ExpressionParseException {
@@ -0,0 +1,196 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Computes an expression's derivatives up to a given order at a point, without building any
+ * derivative trees. Each node is evaluated to the first n+1 coefficients of its Taylor series
+ * around the point, f(x+t) = c0 + c1 t + ... + cn t^n, which the operators combine with the usual
+ * truncated power series recurrences in O(n^2) operations per node. The k-th derivative is then k! ck.
+ * Nodes shared within a DAG are evaluated once.
+ * g(x)^h(x) is expanded as exp(h log g) unless h is constant. The results agree, up to rounding,
+ * with evaluating ExpressionInterner.differentiate(expression, n).
+ */
+public class TaylorEvaluator {
+    private TaylorEvaluator() {
+    }
+
+    /**
+     * Computes the value of the expression and its derivatives at x.
+     * @param expression the expression to evaluate
+     * @param x the value of the independent variable x
+     * @param order the highest derivative wanted
+     * @return an array of length order+1 whose element k is the k-th derivative at x
+     */
+    public static double[] derivatives(Expression expression, double x, int order) {
+        if (order < 0) {
+            throw new IllegalArgumentException("Negative derivative order: " + order);
+        }
+        final double[] coefficients = series(expression, x, order + 1, new IdentityHashMap<>()).clone();
+        double factorial = 1;
+        for (int k = 1; k <= order; k++) {
+            factorial *= k;
+            coefficients[k] *= factorial;
+        }
+        return coefficients;
+    }
+
+    /**
+     * @return the first n Taylor coefficients of the expression around x; the array must not be modified
+     */
+    private static double[] series(Expression expression, double x, int n, Map<Expression, double[]> done) {
+        double[] result = done.get(expression);
+        if (result == null) {
+            result = computeSeries(expression, x, n, done);
+            done.put(expression, result);
+        }
+        return result;
+    }
+
+    private static double[] computeSeries(Expression expression, double x, int n, Map<Expression, double[]> done) {
+        if (expression instanceof LiteralExpression) {
+            final double[] result = new double[n];
+            result[0] = ((LiteralExpression) expression).getValue();
+            return result;
+        }
+        if (VariableExpression.isIndependent(expression)) {
+            final double[] result = new double[n];
+            result[0] = x;
+            if (n > 1) {
+                result[1] = 1;
+            }
+            return result;
+        }
+        if (expression instanceof ParentheticalExpression) {
+            return series(((ParentheticalExpression) expression).getChild(), x, n, done);
+        }
+        if (expression instanceof AdditiveExpression) {
+            final AdditiveExpression additive = (AdditiveExpression) expression;
+            final double[] a = series(additive.getLeftChild(), x, n, done);
+            final double[] b = series(additive.getRightChild(), x, n, done);
+            final double[] result = new double[n];
+            for (int k = 0; k < n; k++) {
+                result[k] = additive.getOperator() == '+' ? a[k] + b[k] : a[k] - b[k];
+            }
+            return result;
+        }
+        if (expression instanceof MultiplicativeExpression) {
+            final MultiplicativeExpression multiplicative = (MultiplicativeExpression) expression;
+            final double[] a = series(multiplicative.getLeftChild(), x, n, done);
+            final double[] b = series(multiplicative.getRightChild(), x, n, done);
+            return multiplicative.getOperator() == '*' ? multiply(a, b) : divide(a, b);
+        }
+        if (expression instanceof ExponentialExpression) {
+            final ExponentialExpression exponential = (ExponentialExpression) expression;
+            final double[] a = series(exponential.getLeftChild(), x, n, done);
+            if (exponential.getOperator() == 'l') {
+                return log(a);
+            }
+            return pow(a, series(exponential.getRightChild(), x, n, done));
+        }
+        // an unknown node type: only its value is known
+        final double[] result = new double[n];
+        Arrays.fill(result, Double.NaN);
+        result[0] = expression.evaluate(x);
+        return result;
+    }
+
+    private static double[] multiply(double[] a, double[] b) {
+        final double[] result = new double[a.length];
+        for (int k = 0; k < a.length; k++) {
+            double sum = 0;
+            for (int j = 0; j <= k; j++) {
+                sum += a[j] * b[k - j];
+            }
+            result[k] = sum;
+        }
+        return result;
+    }
+
+    private static double[] divide(double[] a, double[] b) {
+        final double[] result = new double[a.length];
+        for (int k = 0; k < a.length; k++) {
+            double sum = a[k];
+            for (int j = 1; j <= k; j++) {
+                sum -= b[j] * result[k - j];
+            }
+            result[k] = k == 0 ? a[0] / b[0] : sum / b[0];
+        }
+        return result;
+    }
+
+    private static double[] log(double[] a) {
+        final double[] result = new double[a.length];
+        result[0] = Math.log(a[0]);
+        for (int k = 1; k < a.length; k++) {
+            double sum = 0;
+            for (int j = 1; j < k; j++) {
+                sum += j * result[j] * a[k - j];
+            }
+            result[k] = (a[k] - sum / k) / a[0];
+        }
+        return result;
+    }
+
+    private static double[] pow(double[] a, double[] b) {
+        if (isConstant(b)) {
+            return a[0] != 0 ? powConstant(a, b[0]) : powAtZero(a, b[0]);
+        }
+        // a^b = exp(b log a); only the coefficients of b log a past the constant term are needed
+        final double[] exponent = multiply(b, log(a));
+        final double[] result = new double[a.length];
+        result[0] = Math.pow(a[0], b[0]);
+        for (int k = 1; k < a.length; k++) {
+            double sum = 0;
+            for (int j = 1; j <= k; j++) {
+                sum += j * exponent[j] * result[k - j];
+            }
+            result[k] = sum / k;
+        }
+        return result;
+    }
+
+    /**
+     * a^r for a constant r and a[0] != 0.
+     */
+    private static double[] powConstant(double[] a, double r) {
+        final double[] result = new double[a.length];
+        result[0] = Math.pow(a[0], r);
+        for (int k = 1; k < a.length; k++) {
+            double sum = 0;
+            for (int j = 1; j <= k; j++) {
+                sum += ((r + 1) * j - k) * a[j] * result[k - j];
+            }
+            result[k] = sum / (k * a[0]);
+        }
+        return result;
+    }
+
+    /**
+     * a^r for a constant r and a[0] == 0, where the usual recurrence divides by zero.
+     * Small natural powers are multiplied out; otherwise the derivatives are not finite.
+     */
+    private static double[] powAtZero(double[] a, double r) {
+        if (r == Math.rint(r) && r >= 0 && r <= 64) {
+            double[] result = new double[a.length];
+            result[0] = 1;
+            for (int i = 0; i < r; i++) {
+                result = multiply(result, a);
+            }
+            return result;
+        }
+        final double[] result = new double[a.length];
+        Arrays.fill(result, Double.NaN);
+        result[0] = Math.pow(a[0], r);
+        return result;
+    }
+
+    private static boolean isConstant(double[] a) {
+        for (int k = 1; k < a.length; k++) {
+            if (a[k] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,258 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A cache of sampled curve tiles, so that panning a graph only evaluates the newly exposed strip
+ * and returning to an earlier zoom level is free.
+ * At zoom level z the x-axis is sampled every 2^z units and cut into tiles of TILE_SAMPLES points;
+ * tile i of level z covers x = (i*TILE_SAMPLES + k) * 2^z for k in [0, TILE_SAMPLES).
+ * Tiles are keyed by expression identity, zoom level and tile index, and the least recently used
+ * tiles are evicted once the cache holds more than its memory budget. Missing tiles are evaluated
+ * in parallel with the batch evaluate API. The cache is thread-safe.
+ */
+public class TileCache {
+    static final int TILE_SAMPLES = 256;
+    static final long DEFAULT_MAX_BYTES = 64L << 20;
+    private static final long TILE_OVERHEAD_BYTES = 96; // key, map entry and array headers
+
+    private final long maxBytes;
+    private final ForkJoinPool pool;
+    private final LinkedHashMap<TileKey, double[]> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits, misses, evictions;
+
+    /**
+     * Creates a new TileCache with the default memory budget, evaluating on the common ForkJoinPool.
+     */
+    public TileCache() {
+        this(DEFAULT_MAX_BYTES, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new TileCache.
+     * @param maxBytes roughly how much memory the cached tiles may use
+     * @param pool the pool to evaluate missing tiles on
+     */
+    public TileCache(long maxBytes, ForkJoinPool pool) {
+        this.maxBytes = maxBytes;
+        this.pool = pool;
+    }
+
+    /**
+     * Samples the expression over [from, to] at the coarsest zoom level whose spacing is at most maxStep,
+     * using cached tiles where possible. The curve extends one point past each end of the range.
+     * @param expression the expression to sample; tiles are shared by callers passing the same object
+     * @param from the smallest x to cover
+     * @param to the largest x to cover
+     * @param maxStep the largest allowed distance between consecutive x values
+     * @return the sampled curve
+     */
+    public SampledCurve sample(Expression expression, double from, double to, double maxStep) {
+        return sample(expression, from, to, maxStep, false)[0];
+    }
+
+    /**
+     * Samples the expression and its derivative together, like sample, evaluating both in one pass
+     * with evaluateWithDerivative. Their tiles are cached separately from those of sample.
+     * @param expression the expression to sample; tiles are shared by callers passing the same object
+     * @param from the smallest x to cover
+     * @param to the largest x to cover
+     * @param maxStep the largest allowed distance between consecutive x values
+     * @return the sampled curve of the expression, then that of its derivative
+     */
+    public SampledCurve[] sampleWithDerivative(Expression expression, double from, double to, double maxStep) {
+        return sample(expression, from, to, maxStep, true);
+    }
+
+    private SampledCurve[] sample(Expression expression, double from, double to, double maxStep, boolean withDerivative) {
+        final int level = (int) Math.floor(Math.log(maxStep) / Math.log(2));
+        final double step = Math.scalb(1.0, level);
+        final double tileWidth = step * TILE_SAMPLES;
+        final long firstTile = (long) Math.floor(from / tileWidth);
+        final long lastTile = (long) Math.floor(to / tileWidth);
+
+        final double[][] row = new double[(int) (lastTile - firstTile + 1)][];
+        final List<TileTask> missing = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = tiles.get(new TileKey(expression, withDerivative, level, firstTile + i));
+                if (row[i] == null) {
+                    missing.add(new TileTask(expression, withDerivative, (firstTile + i) * tileWidth, step, row, i));
+                    misses++;
+                } else {
+                    hits++;
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(missing);
+                }
+            });
+            synchronized (this) {
+                for (TileTask task : missing) {
+                    put(new TileKey(expression, withDerivative, level, firstTile + task.index), row[task.index]);
+                }
+            }
+        }
+
+        // keep only the points from just before `from` to just after `to`
+        final long firstSample = Math.max(firstTile * TILE_SAMPLES, (long) Math.floor(from / step) - 1);
+        final long lastSample = Math.min((lastTile + 1) * TILE_SAMPLES - 1, (long) Math.ceil(to / step) + 1);
+        final int n = (int) (lastSample - firstSample + 1);
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        final double[] slopes = withDerivative ? new double[n] : null;
+        for (int i = 0; i < n; i++) {
+            final long sample = firstSample + i;
+            final double[] tile = row[(int) (Math.floorDiv(sample, TILE_SAMPLES) - firstTile)];
+            final int offset = Math.floorMod(sample, TILE_SAMPLES);
+            xs[i] = sample * step;
+            ys[i] = tile[offset];
+            if (withDerivative) {
+                slopes[i] = tile[TILE_SAMPLES + offset];
+            }
+        }
+        return withDerivative
+                ? new SampledCurve[] { new SampledCurve(xs, ys), new SampledCurve(xs, slopes) }
+                : new SampledCurve[] { new SampledCurve(xs, ys) };
+    }
+
+    private void put(TileKey key, double[] tile) {
+        if (tiles.put(key, tile) == null) {
+            bytes += sizeOf(tile);
+        }
+        final Iterator<Map.Entry<TileKey, double[]>> eldest = tiles.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= sizeOf(eldest.next().getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(double[] tile) {
+        return tile.length * 8L + TILE_OVERHEAD_BYTES;
+    }
+
+    /**
+     * @return how many tile lookups found the tile in the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return how many tile lookups had to evaluate the tile
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return how many tiles have been evicted to stay within the memory budget
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return roughly how much memory the cached tiles use
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Removes every tile, keeping the counters.
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        bytes = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TileCache[tiles=" + tiles.size() + ", bytes=" + bytes + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    /**
+     * Identifies a tile. Expressions are compared by identity, not structure.
+     */
+    private static class TileKey {
+        private final Expression expression;
+        private final boolean withDerivative;
+        private final int level;
+        private final long index;
+
+        TileKey(Expression expression, boolean withDerivative, int level, long index) {
+            this.expression = expression;
+            this.withDerivative = withDerivative;
+            this.level = level;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            final TileKey other = (TileKey) o;
+            return expression == other.expression && withDerivative == other.withDerivative
+                    && level == other.level && index == other.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(expression) * 31 + Boolean.hashCode(withDerivative)) * 31 + level) * 31
+                    + Long.hashCode(index);
+        }
+    }
+
+    /**
+     * Evaluates one missing tile into its slot of the row. A tile with derivatives holds
+     * the TILE_SAMPLES values followed by the TILE_SAMPLES derivatives.
+     */
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Expression expression;
+        private final boolean withDerivative;
+        private final double from, step;
+        private final double[][] row;
+        private final int index;
+
+        TileTask(Expression expression, boolean withDerivative, double from, double step, double[][] row, int index) {
+            this.expression = expression;
+            this.withDerivative = withDerivative;
+            this.from = from;
+            this.step = step;
+            this.row = row;
+            this.index = index;
+        }
+
+        @Override
+        protected void compute() {
+            if (withDerivative) {
+                final double[] values = new double[TILE_SAMPLES];
+                final double[] derivatives = new double[TILE_SAMPLES];
+                expression.evaluateWithDerivative(from, step, TILE_SAMPLES, values, derivatives);
+                final double[] tile = new double[2 * TILE_SAMPLES];
+                System.arraycopy(values, 0, tile, 0, TILE_SAMPLES);
+                System.arraycopy(derivatives, 0, tile, TILE_SAMPLES, TILE_SAMPLES);
+                row[index] = tile;
+            } else {
+                final double[] tile = new double[TILE_SAMPLES];
+                expression.evaluate(from, step, TILE_SAMPLES, tile);
+                row[index] = tile;
+            }
+        }
+    }
+}
@@ -1,4 +1,56 @@
+import java.io.IOException;
+import java.util.Arrays;
+
 public class VariableExpression implements Expression{
+    private final String name;
+    private final int slot;
+
+    /**
+     * Creates the independent variable x.
+     */
+    public VariableExpression() {
+        this("x", 0);
+    }
+
+    /**
+     * Creates a named variable.
+     * @param name the name the variable is printed with
+     * @param slot where evaluate(double[]) reads its value; slot 0 is the independent variable
+     */
+    public VariableExpression(String name, int slot) {
+        this.name = name;
+        this.slot = slot;
+    }
+
+    /**
+     * @return the name of the variable
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return where evaluate(double[]) reads the value of the variable
+     */
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * @return whether expression is the independent variable, the one evaluate(double x) binds
+     */
+    static boolean isIndependent(Expression expression) {
+        return expression instanceof VariableExpression && ((VariableExpression) expression).slot == 0;
+    }
+
+    /**
+     * The methods taking a value of x only bind slot 0; any other variable is unbound there.
+     */
+    private void checkIndependent() {
+        if (slot != 0) {
+            throw new UnsupportedOperationException("Variable " + name + " needs evaluate(double[])");
+        }
+    }
 
     /**
      * Creates and returns a deep copy of the expression.
@@ -9,7 +61,7 @@ public class VariableExpression implements Expression{
      */
     @Override
     public Expression deepCopy() {
-        return new VariableExpression();
+        return new VariableExpression(name, slot);
     }
 
     /**
@@ -23,7 +75,20 @@ public class VariableExpression implements Expression{
      */
     @Override
     public String convertToString(int indentLevel) {
-        return "\t".repeat(indentLevel) + "x" + "\n";
+        return OperationHandler.convertToString(this, indentLevel);
+    }
+
+    /**
+     * Appends the String representation of this expression to out, as convertToString would produce it.
+     *
+     * @param out where to append the String representation
+     * @param indentLevel how many tab characters should appear at the beginning of each line.
+     * @throws IOException if out throws it
+     */
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        OperationHandler.appendIndent(out, indentLevel);
+        out.append(name).append('\n');
     }
 
     /**
@@ -34,17 +99,136 @@ public class VariableExpression implements Expression{
      */
     @Override
     public double evaluate(double x) {
+        checkIndependent();
         return x;
     }
 
+    /**
+     * Reads the value of this variable from env.
+     *
+     * @param env the value of every variable, indexed by slot
+     * @return the value of this variable
+     */
+    @Override
+    public double evaluate(double[] env) {
+        return env[slot];
+    }
+
+    /**
+     * Computes the value of this expression at each of the given values of x.
+     *
+     * @param xs the values of the independent variable x
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double[] xs, double[] out) {
+        checkIndependent();
+        System.arraycopy(xs, 0, out, 0, xs.length);
+    }
+
+    /**
+     * Computes the value of this expression at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param out where to store the results
+     */
+    @Override
+    public void evaluate(double from, double step, int n, double[] out) {
+        checkIndependent();
+        double index = 0; // counting in a double avoids a slow int-to-double conversion per element
+        for (int i = 0; i < n; i++) {
+            out[i] = from + index * step;
+            index++;
+        }
+    }
+
+    /**
+     * Given the value of the independent variable x, compute the value of this expression
+     * and of its derivative together.
+     *
+     * @param x the value of the independent variable x
+     * @return the value of this expression and of its derivative
+     */
+    @Override
+    public DualNumber evaluateWithDerivative(double x) {
+        checkIndependent();
+        return new DualNumber(x, 1);
+    }
+
+    /**
+     * Computes the value of this expression and of its derivative at the n evenly spaced values x = from + i*step.
+     *
+     * @param from the first value of x
+     * @param step the distance between consecutive values of x
+     * @param n how many values to compute
+     * @param values where to store the values of the expression
+     * @param derivatives where to store the values of the derivative
+     */
+    @Override
+    public void evaluateWithDerivative(double from, double step, int n, double[] values, double[] derivatives) {
+        evaluate(from, step, n, values);
+        Arrays.fill(derivatives, 0, n, 1);
+    }
+
+    /**
+     * Computes bounds of the values of this expression for every x in [lo, hi].
+     *
+     * @param lo the smallest value of the independent variable x
+     * @param hi the largest value of the independent variable x
+     * @return bounds of the values of this expression
+     */
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        checkIndependent();
+        return new Interval(lo, hi);
+    }
+
     /**
      * Produce a new, fully independent (i.e., there should be no shared subtrees) Expression
-     * representing the derivative of this expression.
+     * representing the derivative of this expression with respect to x.
+     * Any other variable is a constant as far as x is concerned.
      *
      * @return the derivative of this expression
      */
     @Override
     public Expression differentiate() {
-        return new LiteralExpression("1");
+        return new LiteralExpression(slot == 0 ? "1" : "0");
+    }
+
+    /**
+     * Produce a new Expression representing the partial derivative of this variable with respect to
+     * the variable in the given slot: 1 for this variable and 0 for any other.
+     *
+     * @param slot the slot of the variable to differentiate by
+     * @return the partial derivative of this expression
+     */
+    @Override
+    public Expression differentiate(int slot) {
+        return new LiteralExpression(this.slot == slot ? "1" : "0");
+    }
+
+    /**
+     * Two variable expressions are equal if they are the same variable.
+     *
+     * @param o the object to compare with
+     * @return whether o is the same variable
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof VariableExpression)) {
+            return false;
+        }
+        final VariableExpression other = (VariableExpression) o;
+        return slot == other.slot && name.equals(other.name);
+    }
+
+    /**
+     * @return a hash code consistent with equals
+     */
+    @Override
+    public int hashCode() {
+        return 'x' + 31 * slot;
     }
 }
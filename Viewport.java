@@ -0,0 +1,64 @@
+/**
+ * The visible part of the plane and the size in pixels of the surface it is drawn on.
+ * Used to turn tolerances given in pixels into tolerances in x and y.
+ */
+public class Viewport {
+    private final double minX, maxX, minY, maxY;
+    private final double width, height;
+
+    /**
+     * Creates a new Viewport.
+     * @param minX the smallest visible x
+     * @param maxX the largest visible x
+     * @param minY the smallest visible y
+     * @param maxY the largest visible y
+     * @param width the width of the drawing surface in pixels
+     * @param height the height of the drawing surface in pixels
+     */
+    public Viewport(double minX, double maxX, double minY, double maxY, double width, double height) {
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+        this.width = width;
+        this.height = height;
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    /**
+     * @return how many pixels one unit of x spans
+     */
+    public double pixelsPerX() {
+        return width / (maxX - minX);
+    }
+
+    /**
+     * @return how many pixels one unit of y spans
+     */
+    public double pixelsPerY() {
+        return height / (maxY - minY);
+    }
+}
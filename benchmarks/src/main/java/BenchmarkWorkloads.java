@@ -0,0 +1,233 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * The operations the JMH benchmarks measure, wrapped in java.util.function types.
+ * JMH refuses benchmark classes in the default package, and classes in a named package cannot
+ * refer to the calculator's classes, so the benchmarks look these methods up by reflection once
+ * per trial and then only call the returned functions.
+ */
+public class BenchmarkWorkloads {
+    /**
+     * Typical expressions, by name.
+     */
+    public static final String POLYNOMIAL = "10*x^3 + 2*(15+x) - 4*x^2 + 7";
+    public static final String RATIONAL = "(x^2 - 1)/(x^2 + 1) + 1/(x - 3)";
+    public static final String TRANSCENDENTAL = "log(x*x + 1)*2^x - x^x/(1 + 5^(-1*x))";
+
+    private BenchmarkWorkloads() {
+    }
+
+    /**
+     * @param name "polynomial", "rational" or "transcendental", or a shape:size pair for ExpressionGenerator
+     * @return the expression string
+     */
+    public static String expression(String name) {
+        switch (name) {
+            case "polynomial":
+                return POLYNOMIAL;
+            case "rational":
+                return RATIONAL;
+            case "transcendental":
+                return TRANSCENDENTAL;
+            default:
+                final int colon = name.indexOf(':');
+                return ExpressionGenerator.generate(name.substring(0, colon), Integer.parseInt(name.substring(colon + 1)));
+        }
+    }
+
+    /**
+     * @param shape the ExpressionGenerator shape
+     * @param size the ExpressionGenerator size
+     * @return the generated expression string
+     */
+    public static String generate(String shape, int size) {
+        return ExpressionGenerator.generate(shape, size);
+    }
+
+    /**
+     * @param input the string to parse
+     * @return a function parsing the input with a new SimpleExpressionParser
+     */
+    public static Supplier<Object> parse(String input) {
+        final ExpressionParser parser = new SimpleExpressionParser();
+        return () -> parse(parser, input);
+    }
+
+    /**
+     * @param input the expression to evaluate
+     * @param mode "tree", "generic" for the same tree built from the public constructors, whose nodes
+     *             switch on their operator at every evaluation, "compiled", "program" or "dag"
+     * @return a function evaluating the expression at x
+     */
+    public static DoubleUnaryOperator evaluate(String input, String mode) {
+        final Expression expression = parse(new SimpleExpressionParser(), input);
+        switch (mode) {
+            case "tree":
+                return expression::evaluate;
+            case "generic":
+                return generic(expression)::evaluate;
+            case "compiled":
+                return ExpressionCompiler.compile(expression)::evaluate;
+            case "program":
+                final EvaluationProgram program = EvaluationProgram.compile(expression);
+                final double[] stack = program.newStack();
+                return x -> program.evaluate(x, stack);
+            case "dag":
+                return new DagExpression(new ExpressionInterner().intern(expression))::evaluate;
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    /**
+     * @param input the expression to evaluate
+     * @param points how many evenly spaced points of [-10, 10) to evaluate it at
+     * @param mode "tree", "compiled" or "dag" for the values, "pointwise" for the values by the compiled
+     *             handle one point at a time, or "dual" for the values and slopes together by dual numbers
+     * @return a function evaluating the expression at all the points in one call, returning the values,
+     *         or the slopes for "dual"
+     */
+    public static Supplier<Object> evaluateBatch(String input, int points, String mode) {
+        final Expression expression = parse(new SimpleExpressionParser(), input);
+        final double step = 20.0 / points;
+        final double[] out = new double[points];
+        final Expression evaluated;
+        switch (mode) {
+            case "tree":
+                evaluated = expression;
+                break;
+            case "compiled":
+                evaluated = ExpressionCompiler.compile(expression);
+                break;
+            case "dag":
+                evaluated = new DagExpression(new ExpressionInterner().intern(expression));
+                break;
+            case "pointwise":
+                final Expression compiled = ExpressionCompiler.compile(expression);
+                return () -> {
+                    for (int i = 0; i < points; i++) {
+                        out[i] = compiled.evaluate(-10 + i * step);
+                    }
+                    return out;
+                };
+            case "dual":
+                final double[] values = new double[points];
+                return () -> {
+                    expression.evaluateWithDerivative(-10, step, points, values, out);
+                    return out;
+                };
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        return () -> {
+            evaluated.evaluate(-10, step, points, out);
+            return out;
+        };
+    }
+
+    /**
+     * @param input the expression to differentiate
+     * @param order how many times to differentiate
+     * @param mode "chained" for repeated differentiate(), "memoized" for ExpressionInterner.differentiate,
+     *             or "taylor" for the derivatives at x=0.5 from TaylorEvaluator
+     * @return a function computing the derivative
+     */
+    public static Supplier<Object> differentiate(String input, int order, String mode) {
+        final Expression expression = parse(new SimpleExpressionParser(), input);
+        switch (mode) {
+            case "chained":
+                return () -> {
+                    Expression derivative = expression;
+                    for (int i = 0; i < order; i++) {
+                        derivative = derivative.differentiate();
+                    }
+                    return derivative;
+                };
+            case "memoized":
+                return () -> new ExpressionInterner().differentiate(expression, order);
+            case "taylor":
+                return () -> TaylorEvaluator.derivatives(expression, 0.5, order);
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    /**
+     * @param input the expression to print
+     * @return a function printing the expression at the given indent level
+     */
+    public static IntFunction<String> convertToString(String input) {
+        final Expression expression = parse(new SimpleExpressionParser(), input);
+        return expression::convertToString;
+    }
+
+    /**
+     * Sampling as the graph does it, without any JavaFX: the curve over [-10, 10] for a 600 pixel wide plot.
+     * @param input the expression to sample
+     * @param mode "fixed" for CurveSampler at 2001 points, "adaptive" for AdaptiveSampler,
+     *             "tiles" for a fresh TileCache every time, or "pan" for one TileCache with the view
+     *             moving a little each time, as when dragging the graph
+     * @return a function sampling the curve
+     */
+    public static Supplier<Object> sample(String input, String mode) {
+        final Expression expression = ExpressionCompiler.compile(
+                ExpressionSimplifier.simplify(parse(new SimpleExpressionParser(), input)));
+        final Viewport viewport = new Viewport(-10, 10, -10, 10, 600, 500);
+        final double maxStep = 20.0 / 600;
+        switch (mode) {
+            case "fixed":
+                final CurveSampler sampler = new CurveSampler();
+                return () -> sampler.sample(expression, -10, 0.01, 2001);
+            case "adaptive":
+                final AdaptiveSampler adaptive = AdaptiveSampler.forViewport(viewport, 1, ForkJoinPool.commonPool());
+                return () -> adaptive.sample(expression, null, viewport);
+            case "tiles":
+                return () -> new TileCache().sample(expression, -10, 10, maxStep);
+            case "pan":
+                final TileCache cache = new TileCache();
+                final double[] offset = { 0 };
+                return () -> {
+                    offset[0] += 0.1;
+                    return cache.sample(expression, -10 + offset[0], 10 + offset[0], maxStep);
+                };
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    /**
+     * @return a copy of the tree made with the public constructors instead of the specialized factories
+     */
+    static Expression generic(Expression expression) {
+        if (expression instanceof ParentheticalExpression) {
+            return new ParentheticalExpression(generic(((ParentheticalExpression) expression).getChild()));
+        }
+        if (expression instanceof AdditiveExpression) {
+            final AdditiveExpression additive = (AdditiveExpression) expression;
+            return new AdditiveExpression(generic(additive.getLeftChild()), generic(additive.getRightChild()), additive.getOperator());
+        }
+        if (expression instanceof MultiplicativeExpression) {
+            final MultiplicativeExpression multiplicative = (MultiplicativeExpression) expression;
+            return new MultiplicativeExpression(generic(multiplicative.getLeftChild()), generic(multiplicative.getRightChild()),
+                    multiplicative.getOperator());
+        }
+        if (expression instanceof ExponentialExpression) {
+            final ExponentialExpression exponential = (ExponentialExpression) expression;
+            return exponential.getOperator() == 'l'
+                    ? new ExponentialExpression(generic(exponential.getLeftChild()))
+                    : new ExponentialExpression(generic(exponential.getLeftChild()), generic(exponential.getRightChild()));
+        }
+        return expression;
+    }
+
+    private static Expression parse(ExpressionParser parser, String input) {
+        try {
+            return parser.parse(input);
+        } catch (ExpressionParseException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+}
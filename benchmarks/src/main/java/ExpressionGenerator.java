@@ -0,0 +1,92 @@
+import java.util.Random;
+
+/**
+ * Generates expression strings for the benchmarks. Each shape grows with a size parameter,
+ * and the same shape and size always give the same string, so results are comparable between runs.
+ */
+public class ExpressionGenerator {
+    private static final String[] OPERATORS = { "+", "-", "*", "/" };
+
+    private ExpressionGenerator() {
+    }
+
+    /**
+     * @param shape one of "sum", "nested", "power" or "mixed"
+     * @param size how many terms or levels the expression has
+     * @return the generated expression
+     */
+    public static String generate(String shape, int size) {
+        switch (shape) {
+            case "sum":
+                return sum(size);
+            case "nested":
+                return nested(size);
+            case "power":
+                return power(size);
+            case "mixed":
+                return mixed(size);
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+    }
+
+    /**
+     * @return a polynomial-like sum of size terms such as 3*x^2
+     */
+    static String sum(int size) {
+        final Random random = new Random(size);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(random.nextBoolean() ? " + " : " - ");
+            }
+            builder.append(1 + random.nextInt(9)).append("*x^").append(random.nextInt(5));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return size levels of parentheses, each adding and multiplying once: ((x+1)*2+1)*2...
+     */
+    static String nested(int size) {
+        String expression = "x";
+        for (int i = 0; i < size; i++) {
+            expression = "(" + expression + "+" + (i % 7 + 1) + ")*" + (i % 3 + 1) / 2.0;
+        }
+        return expression;
+    }
+
+    /**
+     * @return a right-associative tower of size exponents, x^1.01^1.01...
+     */
+    static String power(int size) {
+        final StringBuilder builder = new StringBuilder("x");
+        for (int i = 0; i < size; i++) {
+            builder.append("^1.01");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return random operators and operands, including logs and parentheses, with size operators in all
+     */
+    static String mixed(int size) {
+        return mixed(new Random(size), size);
+    }
+
+    private static String mixed(Random random, int size) {
+        if (size == 0) {
+            return random.nextBoolean() ? "x" : String.valueOf(1 + random.nextInt(9));
+        }
+        final int left = random.nextInt(size);
+        final String l = mixed(random, left), r = mixed(random, size - 1 - left);
+        switch (random.nextInt(6)) {
+            case 0:
+                return "log(" + l + "+" + r + ")";
+            case 1:
+                return "(" + l + ")^2";
+            default:
+                return "(" + l + OPERATORS[random.nextInt(OPERATORS.length)] + r + ")";
+        }
+    }
+}
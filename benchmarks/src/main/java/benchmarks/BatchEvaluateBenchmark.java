@@ -0,0 +1,52 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluating expressions at many evenly spaced points in one call with the batch methods,
+ * and with their derivatives by dual numbers. The pointwise mode loops over the compiled handle
+ * instead, which the batch methods of compiled expressions must beat to be worth delegating to.
+ * Scores are per point, comparable to EvaluateBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchEvaluateBenchmark {
+    private static final int POINTS = 1000;
+
+    @Param({ "polynomial", "rational", "transcendental", "mixed:50" })
+    public String expression;
+
+    @Param({ "tree", "compiled", "pointwise", "dag", "dual" })
+    public String mode;
+
+    private Supplier<Object> evaluate;
+
+    @Setup
+    public void setUp() {
+        evaluate = Workloads.call("evaluateBatch", (String) Workloads.call("expression", expression), POINTS, mode);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public Object evaluate() {
+        return evaluate.get();
+    }
+}
@@ -0,0 +1,45 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Printing trees of growing size and depth with convertToString.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertToStringBenchmark {
+    @Param({ "sum", "nested", "mixed" })
+    public String shape;
+
+    @Param({ "10", "100", "1000" })
+    public int size;
+
+    private IntFunction<String> convertToString;
+
+    @Setup
+    public void setUp() {
+        convertToString = Workloads.call("convertToString", (String) Workloads.call("generate", shape, size));
+    }
+
+    @Benchmark
+    public String convertToString() {
+        return convertToString.apply(0);
+    }
+}
@@ -0,0 +1,49 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Chains of derivatives: repeated differentiate(), the memoized DAG differentiation,
+ * and Taylor-mode derivatives at a point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DifferentiateBenchmark {
+    @Param({ "polynomial", "rational", "transcendental" })
+    public String expression;
+
+    @Param({ "1", "2", "4" })
+    public int order;
+
+    @Param({ "chained", "memoized", "taylor" })
+    public String mode;
+
+    private Supplier<Object> differentiate;
+
+    @Setup
+    public void setUp() {
+        differentiate = Workloads.call("differentiate", (String) Workloads.call("expression", expression), order, mode);
+    }
+
+    @Benchmark
+    public Object differentiate() {
+        return differentiate.get();
+    }
+}
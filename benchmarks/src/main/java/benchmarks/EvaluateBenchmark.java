@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluating representative and generated expressions at many points, with each evaluation strategy.
+ * Scores are per point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+    private static final int POINTS = 1000;
+
+    @Param({ "polynomial", "rational", "transcendental", "mixed:50", "mixed:500", "nested:200" })
+    public String expression;
+
+    @Param({ "tree", "generic", "compiled", "program", "dag" })
+    public String mode;
+
+    private DoubleUnaryOperator evaluate;
+
+    @Setup
+    public void setUp() {
+        evaluate = Workloads.call("evaluate", (String) Workloads.call("expression", expression), mode);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double evaluate() {
+        double sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+            sum += evaluate.applyAsDouble(-10 + i * 0.02);
+        }
+        return sum;
+    }
+}
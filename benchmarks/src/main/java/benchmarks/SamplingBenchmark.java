@@ -0,0 +1,45 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sampling a curve the way the graph does, without JavaFX: fixed-step, adaptive, and through the tile cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplingBenchmark {
+    @Param({ "polynomial", "rational", "transcendental" })
+    public String expression;
+
+    @Param({ "fixed", "adaptive", "tiles", "pan" })
+    public String mode;
+
+    private Supplier<Object> sample;
+
+    @Setup
+    public void setUp() {
+        sample = Workloads.call("sample", (String) Workloads.call("expression", expression), mode);
+    }
+
+    @Benchmark
+    public Object sample() {
+        return sample.get();
+    }
+}
@@ -0,0 +1,35 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls the static methods of BenchmarkWorkloads, which lives in the default package with the
+ * calculator and so cannot be referred to by name from here.
+ */
+final class Workloads {
+    private Workloads() {
+    }
+
+    /**
+     * Calls the static BenchmarkWorkloads method with the given name and number of arguments.
+     * @param name the method name
+     * @param args the arguments
+     * @return whatever the method returns
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T call(String name, Object... args) {
+        try {
+            for (Method method : Class.forName("BenchmarkWorkloads").getMethods()) {
+                if (method.getName().equals(name) && method.getParameterCount() == args.length) {
+                    return (T) method.invoke(null, args);
+                }
+            }
+            throw new IllegalArgumentException("No workload " + name + " taking " + args.length + " arguments");
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}